@@ -0,0 +1,280 @@
+package hotelapp;
+
+import com.google.gson.JsonObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * Singleton write-behind counter for link clicks. Clicks are counted in memory per (user, link)
+ * and flushed to the user_link_clicks table in aggregated batches, on a timer, when enough clicks
+ * are pending, and on shutdown, so /click can redirect without waiting on the DB.
+ * If a batch fails, its rows are written one at a time; rows that still fail go back to pending for the
+ * next flush, and are dropped (and logged) once they have failed clicks.maxAttempts flushes.
+ *
+ * Settings (database.properties):
+ *   clicks.flushIntervalMs  - period of the background flush
+ *   clicks.flushThreshold   - pending clicks that trigger an early flush
+ *   clicks.maxPendingKeys   - (user, link) pairs held before new pairs are dropped
+ *   clicks.maxAttempts      - flushes a (user, link) row may fail before its clicks are dropped
+ */
+public class ClickCounter {
+    private static final ClickCounter instance = new ClickCounter();
+
+    private final int flushThreshold;
+    private final int maxPendingKeys;
+    private final int maxAttempts;
+
+    // username -> (link -> pending clicks); each user's map is only touched inside pending.compute*
+    private final ConcurrentHashMap<String, Map<String, Long>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingKeys = new AtomicInteger();
+    private final LongAdder pendingEvents = new LongAdder();
+    private final AtomicLong oldestPending = new AtomicLong();
+    // username -> (link -> failed flushes) of pending rows that have failed; only touched under the write lock
+    private final Map<String, Map<String, Integer>> failedAttempts = new HashMap<>();
+
+    // readers hold the read lock across DB read + pending merge, flush / clear hold the write lock,
+    // so a read never sees a batch both in the DB and in memory, or in neither
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean earlyFlushQueued = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final LongAdder failedDropped = new LongAdder();
+    private final AtomicLong lastFlushLagNanos = new AtomicLong();
+    private final AtomicLong maxFlushLagNanos = new AtomicLong();
+
+    private ClickCounter() {
+        DBConfig config = DBConfig.get();
+        long flushIntervalMs = config.getLong("clicks.flushIntervalMs", 1000);
+        this.flushThreshold = Math.max(1, config.getInt("clicks.flushThreshold", 500));
+        this.maxPendingKeys = Math.max(1, config.getInt("clicks.maxPendingKeys", 10000));
+        this.maxAttempts = Math.max(1, config.getInt("clicks.maxAttempts", 5));
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "click-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+    public static ClickCounter get() { return instance; }
+
+    /**
+     * Counts one click in memory; it reaches the DB on the next flush
+     * @param username String name of user who clicked
+     * @param link String link clicked
+     * @return boolean false if the click was dropped because too many (user, link) pairs are pending
+     */
+    public boolean record(String username, String link) {
+        if (pendingKeys.get() >= maxPendingKeys) {
+            Map<String, Long> m = pending.get(username);
+            if (m == null || !m.containsKey(link)) {
+                dropped.increment();
+                return false;
+            }
+        }
+
+        pending.compute(username, (k, m) -> {
+            if (m == null) m = new HashMap<>();
+            if (m.merge(link, 1L, Long::sum) == 1L)
+                pendingKeys.incrementAndGet();
+            return m;
+        });
+        oldestPending.compareAndSet(0, System.nanoTime());
+        pendingEvents.increment();
+        recorded.increment();
+
+        if (pendingEvents.sum() >= flushThreshold && earlyFlushQueued.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                earlyFlushQueued.set(false);
+                flush();
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Gets a user's link click counts, flushed (from the DB) plus still pending
+     * @param username String name of user
+     * @return Map of link to number of clicks
+     */
+    public Map<String, Integer> getLinkClicks(String username) {
+        flushLock.readLock().lock();
+        try {
+            Map<String, Integer> clicks = DBQueriesHandler.get().getLinkClicks(username);
+            pending.computeIfPresent(username, (k, m) -> {
+                m.forEach((link, n) -> clicks.merge(link, n.intValue(), Integer::sum));
+                return m;
+            });
+            return clicks;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops a user's pending clicks and clears their flushed link history
+     * @param username String name of user
+     * @return boolean success of DB clear query
+     */
+    public boolean clear(String username) {
+        flushLock.writeLock().lock();
+        try {
+            Map<String, Long> m = pending.remove(username);
+            failedAttempts.remove(username);
+            if (m != null) {
+                pendingKeys.addAndGet(-m.size());
+                pendingEvents.add(-m.values().stream().mapToLong(Long::longValue).sum());
+            }
+            return DBQueriesHandler.get().clearLinkHistory(username);
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drains all pending clicks and writes them to the DB in one batch. If the batch fails, the rows
+     * are written one at a time; those that still fail are merged back in to be retried on the next flush,
+     * unless they have failed clicks.maxAttempts flushes, in which case they are dropped
+     */
+    public void flush() {
+        flushLock.writeLock().lock();
+        try {
+            long oldest = oldestPending.getAndSet(0);
+            Map<String, Map<String, Long>> batch = new HashMap<>();
+            for (String username : pending.keySet()) {
+                pending.computeIfPresent(username, (k, m) -> {
+                    batch.put(k, m);
+                    return null;
+                });
+            }
+            if (batch.isEmpty()) return;
+
+            int keys = 0;
+            long events = 0;
+            for (Map<String, Long> m : batch.values()) {
+                keys += m.size();
+                for (long n : m.values())
+                    events += n;
+            }
+            pendingKeys.addAndGet(-keys);
+            pendingEvents.add(-events);
+
+            flushes.incrementAndGet();
+            Map<String, Map<String, Long>> failed = Map.of();
+            if (!DBQueriesHandler.get().addLinkClicks(batch)) {
+                flushFailures.incrementAndGet();
+                failed = DBQueriesHandler.get().addLinkClicksEach(batch);
+            }
+
+            long failedEvents = 0;
+            boolean retried = false;
+            for (Map.Entry<String, Map<String, Long>> user : batch.entrySet()) {
+                Map<String, Long> failedLinks = failed.get(user.getKey());
+                for (Map.Entry<String, Long> e : user.getValue().entrySet()) {
+                    if (failedLinks != null && failedLinks.containsKey(e.getKey())) {
+                        failedEvents += e.getValue();
+                        retried |= retryOrDrop(user.getKey(), e.getKey(), e.getValue());
+                    } else {
+                        clearAttempts(user.getKey(), e.getKey());
+                    }
+                }
+            }
+
+            flushed.add(events - failedEvents);
+            if (failedEvents == 0 && oldest != 0) {
+                long lag = System.nanoTime() - oldest;
+                lastFlushLagNanos.set(lag);
+                maxFlushLagNanos.accumulateAndGet(lag, Math::max);
+            } else if (retried) {
+                oldestPending.compareAndSet(0, (oldest != 0) ? oldest : System.nanoTime());
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges a row that failed this flush back into pending, or drops it once it has failed clicks.maxAttempts flushes;
+     * only called by flush, under the write lock
+     * @param username String name of user who clicked
+     * @param link String link clicked
+     * @param clicks long clicks the row held
+     * @return boolean true if the row was merged back, false if it was dropped
+     */
+    private boolean retryOrDrop(String username, String link, long clicks) {
+        Map<String, Integer> attempts = failedAttempts.computeIfAbsent(username, k -> new HashMap<>());
+        int failures = attempts.merge(link, 1, Integer::sum);
+        if (failures >= maxAttempts) {
+            clearAttempts(username, link);
+            failedDropped.add(clicks);
+            System.out.println("Dropping " + clicks + " clicks by " + username + " on " + link
+                    + " after " + failures + " failed flushes");
+            return false;
+        }
+
+        pending.compute(username, (k, m) -> {
+            if (m == null) m = new HashMap<>();
+            if (m.merge(link, clicks, Long::sum) == clicks)
+                pendingKeys.incrementAndGet();
+            return m;
+        });
+        pendingEvents.add(clicks);
+        return true;
+    }
+
+    private void clearAttempts(String username, String link) {
+        Map<String, Integer> attempts = failedAttempts.get(username);
+        if (attempts != null && attempts.remove(link) != null && attempts.isEmpty())
+            failedAttempts.remove(username);
+    }
+
+    /**
+     * Stops the background flusher and writes out whatever is still pending
+     */
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Snapshot of write-behind counter metrics
+     * @return JsonObject of click counter metrics
+     */
+    public JsonObject getMetrics() {
+        JsonObject jo = new JsonObject();
+        jo.addProperty("recorded", recorded.sum());
+        jo.addProperty("dropped", dropped.sum());
+        jo.addProperty("flushed", flushed.sum());
+        jo.addProperty("pendingEvents", pendingEvents.sum());
+        jo.addProperty("pendingKeys", pendingKeys.get());
+        jo.addProperty("flushes", flushes.get());
+        jo.addProperty("flushFailures", flushFailures.get());
+        jo.addProperty("failedDropped", failedDropped.sum());
+
+        long oldest = oldestPending.get();
+        jo.addProperty("currentLagMs", (oldest == 0) ? 0 : (System.nanoTime() - oldest) / 1_000_000.0);
+        jo.addProperty("lastFlushLagMs", lastFlushLagNanos.get() / 1_000_000.0);
+        jo.addProperty("maxFlushLagMs", maxFlushLagNanos.get() / 1_000_000.0);
+        return jo;
+    }
+}
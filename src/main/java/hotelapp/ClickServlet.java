@@ -12,7 +12,7 @@ import java.io.IOException;
  */
 public class ClickServlet extends HttpServlet {
     /**
-     * HTTP GET Request on link click, adds a click to DB and redirects to link
+     * HTTP GET Request on link click, counts the click (flushed to DB in the background) and redirects to link
      */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
@@ -31,8 +31,7 @@ public class ClickServlet extends HttpServlet {
         }
 
         String username = (String) req.getSession(false).getAttribute("username");
-        LinkHistory lh = LinkHistory.of(username);
-        lh.addClick(link);
+        ClickCounter.get().record(username, link);
 
         res.sendRedirect("https://www." + link);
     }
@@ -0,0 +1,95 @@
+package hotelapp;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Properties;
+
+
+/**
+ * Singleton class that loads database.properties once and hands out typed settings
+ * to the DB handlers, the connection pool, and the caches built on top of them
+ */
+public class DBConfig {
+    private static final DBConfig instance = new DBConfig();
+    private final Properties config;
+    private final String uri;
+
+    private DBConfig() {
+        Properties p = new Properties();
+        try (FileReader fr = new FileReader("database.properties")) {
+            p.load(fr);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        this.config = p;
+        this.uri = "jdbc:mysql://"+ config.getProperty("hostname") + "/" + config.getProperty("username") + "?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC"
+                + "&rewriteBatchedStatements=true"
+                + (getBoolean("pool.serverPrepare", true) ? "&useServerPrepStmts=true" : "");
+    }
+    public static DBConfig get() { return instance; }
+
+    /**
+     * JDBC uri of the configured MySQL database
+     * @return String jdbc uri
+     */
+    public String uri() { return uri; }
+
+    /**
+     * Database login username
+     * @return String username
+     */
+    public String username() { return config.getProperty("username"); }
+
+    /**
+     * Database login password
+     * @return String password
+     */
+    public String password() { return config.getProperty("password"); }
+
+    /**
+     * Gets an int setting, falling back to a default if missing or malformed
+     * @param key String property name
+     * @param def int default value
+     * @return int setting
+     */
+    public int getInt(String key, int def) {
+        String v = config.getProperty(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Bad value for " + key + " in database.properties, using " + def);
+            return def;
+        }
+    }
+
+    /**
+     * Gets a long setting, falling back to a default if missing or malformed
+     * @param key String property name
+     * @param def long default value
+     * @return long setting
+     */
+    public long getLong(String key, long def) {
+        String v = config.getProperty(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Bad value for " + key + " in database.properties, using " + def);
+            return def;
+        }
+    }
+
+    /**
+     * Gets a boolean setting, falling back to a default if missing
+     * @param key String property name
+     * @param def boolean default value
+     * @return boolean setting
+     */
+    public boolean getBoolean(String key, boolean def) {
+        String v = config.getProperty(key);
+        if (v == null || v.isBlank()) return def;
+        return Boolean.parseBoolean(v.trim());
+    }
+}
@@ -0,0 +1,586 @@
+package hotelapp;
+
+import com.google.gson.JsonObject;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Singleton bounded pool of JDBC connections shared by DBQueriesHandler and DBTablesHandler.
+ * Connections handed out are proxies; calling close() returns the physical connection to the pool.
+ *
+ * Settings (database.properties):
+ *   pool.minSize               - connections kept open even when idle
+ *   pool.maxSize               - hard cap on open connections
+ *   pool.acquireTimeoutMs      - how long getConnection() waits for a free connection
+ *   pool.idleTimeoutMs         - idle connections above minSize are closed after this long
+ *   pool.validateAfterIdleMs   - connections idle longer than this are validated on borrow
+ *   pool.validationTimeoutSec  - timeout handed to Connection.isValid
+ *   pool.leakThresholdMs       - borrowed connections held longer than this are reported (0 = off)
+ *   pool.housekeepingMs        - period of the eviction / leak detection task
+ *   pool.statementCacheSize    - prepared statements kept open per connection, LRU (0 = off)
+ *   pool.serverPrepare         - have the driver prepare statements server-side (useServerPrepStmts)
+ *
+ * Each physical connection keeps an LRU cache of its prepared statements keyed by SQL string
+ * (i.e. by PreparedStatements constant). prepareStatement(sql) checks a statement out of the
+ * cache and close() on it checks it back in, so hot queries are only parsed/planned once per
+ * connection; with pool.serverPrepare the driver prepares them server-side.
+ */
+public class DBConnectionPool {
+    private static final DBConnectionPool instance = new DBConnectionPool();
+
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final long validateAfterIdleNanos;
+    private final int validationTimeoutSec;
+    private final long leakThresholdNanos;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> borrowed = new HashSet<>();
+    private int total;
+    private int waiters;
+    private boolean closed;
+
+    private final ScheduledExecutorService housekeeper;
+
+    private final AtomicLong acquires = new AtomicLong();
+    private final AtomicLong acquireNanosTotal = new AtomicLong();
+    private final AtomicLong acquireNanosMax = new AtomicLong();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final AtomicLong statementEvictions = new AtomicLong();
+
+    private DBConnectionPool() {
+        DBConfig config = DBConfig.get();
+        this.maxSize = Math.max(1, config.getInt("pool.maxSize", 10));
+        this.minSize = Math.min(maxSize, Math.max(0, config.getInt("pool.minSize", 2)));
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("pool.acquireTimeoutMs", 5000));
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("pool.idleTimeoutMs", 300000));
+        this.validateAfterIdleNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("pool.validateAfterIdleMs", 500));
+        this.validationTimeoutSec = config.getInt("pool.validationTimeoutSec", 2);
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("pool.leakThresholdMs", 30000));
+        this.statementCacheSize = Math.max(0, config.getInt("pool.statementCacheSize", 32));
+        long housekeepingMs = config.getLong("pool.housekeepingMs", 30000);
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, housekeepingMs, TimeUnit.MILLISECONDS);
+    }
+    public static DBConnectionPool get() { return instance; }
+
+    /**
+     * Hard cap on open connections
+     * @return int pool.maxSize
+     */
+    public int getMaxSize() { return maxSize; }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none are idle and the pool
+     * is below maxSize, otherwise waiting up to pool.acquireTimeoutMs for one to be returned.
+     * Close the returned connection (try-with-resources) to give it back.
+     * @return Connection proxy backed by a pooled physical connection
+     * @throws SQLException if the pool is exhausted past the timeout or a connection can't be opened
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + acquireTimeoutNanos;
+
+        while (true) {
+            PooledConnection pc = null;
+            lock.lock();
+            try {
+                while (!closed && idle.isEmpty() && total >= maxSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        acquireTimeouts.incrementAndGet();
+                        throw new SQLTimeoutException("Timed out after " + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos)
+                                + "ms waiting for a pooled connection (" + total + " open, " + waiters + " waiting)");
+                    }
+
+                    waiters++;
+                    try {
+                        available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a pooled connection", e);
+                    } finally {
+                        waiters--;
+                    }
+                }
+                if (closed)
+                    throw new SQLException("Connection pool is closed");
+
+                if (!idle.isEmpty())
+                    pc = idle.pollFirst();
+                else
+                    total++;
+            } finally {
+                lock.unlock();
+            }
+
+            if (pc == null) {
+                pc = openConnection();
+            } else if (System.nanoTime() - pc.lastReleased > validateAfterIdleNanos && !pc.isValid()) {
+                validationFailures.incrementAndGet();
+                destroy(pc);
+                continue;
+            }
+
+            pc.borrowedAt = System.nanoTime();
+            pc.leakReported = false;
+            pc.borrowTrace = (leakThresholdNanos > 0) ? new Throwable("Connection borrowed by " + Thread.currentThread().getName()) : null;
+            lock.lock();
+            try {
+                borrowed.add(pc);
+            } finally {
+                lock.unlock();
+            }
+
+            long waited = pc.borrowedAt - start;
+            acquires.incrementAndGet();
+            acquireNanosTotal.addAndGet(waited);
+            acquireNanosMax.accumulateAndGet(waited, Math::max);
+
+            return pc.newHandle();
+        }
+    }
+
+    /**
+     * Opens a new physical connection; caller must already have counted it in total
+     * @return PooledConnection wrapping the new physical connection
+     * @throws SQLException if the driver fails to connect
+     */
+    private PooledConnection openConnection() throws SQLException {
+        try {
+            DBConfig config = DBConfig.get();
+            Connection raw = DriverManager.getConnection(config.uri(), config.username(), config.password());
+            created.incrementAndGet();
+            return new PooledConnection(raw);
+        } catch (SQLException e) {
+            lock.lock();
+            try {
+                total--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Puts a connection back into the idle set, or closes it if it is broken or the pool is closed
+     * @param pc PooledConnection being returned by its handle
+     */
+    private void release(PooledConnection pc) {
+        boolean healthy;
+        try {
+            if (!pc.raw.getAutoCommit()) {
+                pc.raw.rollback();
+                pc.raw.setAutoCommit(true);
+            }
+            healthy = !pc.raw.isClosed();
+        } catch (SQLException e) {
+            healthy = false;
+        }
+
+        lock.lock();
+        try {
+            borrowed.remove(pc);
+            if (healthy && !closed) {
+                pc.lastReleased = System.nanoTime();
+                idle.offerFirst(pc);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        destroy(pc);
+    }
+
+    /**
+     * Closes a physical connection and frees its slot in the pool
+     * @param pc PooledConnection to close
+     */
+    private void destroy(PooledConnection pc) {
+        try {
+            pc.raw.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        lock.lock();
+        try {
+            borrowed.remove(pc);
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Periodic task: evicts connections idle past pool.idleTimeoutMs (down to minSize),
+     * reports borrowed connections held past pool.leakThresholdMs, and tops the pool up to minSize
+     */
+    private void housekeep() {
+        long now = System.nanoTime();
+        List<PooledConnection> toClose = new ArrayList<>();
+        List<PooledConnection> leaked = new ArrayList<>();
+        int toOpen;
+
+        lock.lock();
+        try {
+            if (closed) return;
+
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && total - toClose.size() > minSize) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastReleased > idleTimeoutNanos) {
+                    it.remove();
+                    toClose.add(pc);
+                }
+            }
+
+            if (leakThresholdNanos > 0) {
+                for (PooledConnection pc : borrowed) {
+                    if (!pc.leakReported && now - pc.borrowedAt > leakThresholdNanos) {
+                        pc.leakReported = true;
+                        leaked.add(pc);
+                    }
+                }
+            }
+
+            toOpen = Math.max(0, minSize - (total - toClose.size()));
+            total += toOpen;
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledConnection pc : toClose) {
+            evicted.incrementAndGet();
+            destroy(pc);
+        }
+
+        for (PooledConnection pc : leaked) {
+            leaksDetected.incrementAndGet();
+            System.out.println("Possible connection leak: connection held for "
+                    + TimeUnit.NANOSECONDS.toMillis(now - pc.borrowedAt) + "ms");
+            if (pc.borrowTrace != null)
+                pc.borrowTrace.printStackTrace(System.out);
+        }
+
+        for (int i = 0; i < toOpen; i++) {
+            try {
+                PooledConnection pc = openConnection();
+                pc.lastReleased = System.nanoTime();
+                lock.lock();
+                try {
+                    idle.offerLast(pc);
+                    available.signal();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (SQLException e) {
+                System.out.println("Could not pre-open pooled connection: " + e.getMessage());
+                lock.lock();
+                try {
+                    total -= toOpen - i - 1;
+                    available.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones;
+     * borrowed connections are closed as they are returned
+     */
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        housekeeper.shutdownNow();
+        toClose.forEach(this::destroy);
+    }
+
+    /**
+     * Snapshot of pool sizing and acquire latency metrics
+     * @return JsonObject of pool metrics
+     */
+    public JsonObject getMetrics() {
+        JsonObject jo = new JsonObject();
+        lock.lock();
+        try {
+            jo.addProperty("total", total);
+            jo.addProperty("active", borrowed.size());
+            jo.addProperty("idle", idle.size());
+            jo.addProperty("waiters", waiters);
+        } finally {
+            lock.unlock();
+        }
+        jo.addProperty("minSize", minSize);
+        jo.addProperty("maxSize", maxSize);
+
+        long n = acquires.get();
+        jo.addProperty("acquires", n);
+        jo.addProperty("acquireAvgMs", (n == 0) ? 0 : acquireNanosTotal.get() / (double) n / 1_000_000);
+        jo.addProperty("acquireMaxMs", acquireNanosMax.get() / 1_000_000.0);
+        jo.addProperty("acquireTimeouts", acquireTimeouts.get());
+        jo.addProperty("created", created.get());
+        jo.addProperty("evicted", evicted.get());
+        jo.addProperty("validationFailures", validationFailures.get());
+        jo.addProperty("leaksDetected", leaksDetected.get());
+
+        JsonObject sc = new JsonObject();
+        long hits = statementHits.get();
+        long misses = statementMisses.get();
+        sc.addProperty("sizePerConnection", statementCacheSize);
+        sc.addProperty("hits", hits);
+        sc.addProperty("misses", misses);
+        sc.addProperty("evictions", statementEvictions.get());
+        sc.addProperty("hitRate", (hits + misses == 0) ? 0 : hits / (double) (hits + misses));
+        jo.add("statementCache", sc);
+        return jo;
+    }
+
+    /**
+     * A physical connection plus the bookkeeping the pool needs about it
+     */
+    private class PooledConnection {
+        private final Connection raw;
+        private volatile long lastReleased;
+        private volatile long borrowedAt;
+        private volatile boolean leakReported;
+        private volatile Throwable borrowTrace;
+        // idle cached statements; only touched by the thread currently borrowing this connection
+        private final LinkedHashMap<String, PreparedStatement> statements =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() <= statementCacheSize) return false;
+                        statementEvictions.incrementAndGet();
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                };
+
+        private PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.lastReleased = System.nanoTime();
+        }
+
+        /**
+         * Checks a prepared statement for sql out of the cache, preparing it on a miss
+         * @param sql String SQL, one of the PreparedStatements constants
+         * @return PreparedStatement that is not shared with any other open proxy
+         * @throws SQLException if the driver fails to prepare the statement
+         */
+        private PreparedStatement checkOut(String sql) throws SQLException {
+            PreparedStatement ps = statements.remove(sql);
+            if (ps != null && !ps.isClosed()) {
+                statementHits.incrementAndGet();
+                return ps;
+            }
+
+            statementMisses.incrementAndGet();
+            return raw.prepareStatement(sql);
+        }
+
+        /**
+         * Checks a statement back into the cache once its proxy is closed
+         * @param sql String SQL the statement was prepared from
+         * @param ps PreparedStatement to cache or close
+         */
+        private void checkIn(String sql, PreparedStatement ps) {
+            try {
+                if (statementCacheSize == 0 || ps.isClosed() || statements.containsKey(sql)) {
+                    closeQuietly(ps);
+                    return;
+                }
+                ps.clearParameters();
+                ps.clearBatch();
+                statements.put(sql, ps);
+            } catch (SQLException e) {
+                closeQuietly(ps);
+            }
+        }
+
+        private boolean isValid() {
+            try {
+                return raw.isValid(validationTimeoutSec);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Makes a fresh proxy for one borrow, so a stale reference kept after close()
+         * can't touch the connection once someone else has borrowed it
+         * @return Connection proxy
+         */
+        private Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    private static void closeQuietly(Statement s) {
+        try {
+            s.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Invocation handler behind each borrowed connection proxy; close() returns the connection to the pool
+     * and prepareStatement(sql) goes through the connection's statement cache.
+     * Like a JDBC connection, closing it closes the statements still open on it, checking them back in
+     * while this thread still owns the connection
+     */
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private final List<StatementHandle> openStatements = new ArrayList<>();
+        private boolean closed;
+
+        private Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        for (StatementHandle sh : openStatements)
+                            sh.checkIn();
+                        openStatements.clear();
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pc.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pc.raw;
+            }
+
+            if (closed)
+                throw new SQLException("Connection has already been returned to the pool");
+
+            if (method.getName().equals("prepareStatement") && args.length == 1) {
+                String sql = (String) args[0];
+                StatementHandle sh = new StatementHandle(this, sql, pc.checkOut(sql), (Connection) proxy);
+                openStatements.add(sh);
+                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                        new Class<?>[]{PreparedStatement.class}, sh);
+            }
+
+            try {
+                return method.invoke(pc.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Invocation handler behind each cached prepared statement proxy; close() checks the statement back in.
+     * Once the owning connection proxy is closed the statement is closed too, and close() is a no-op
+     */
+    private static class StatementHandle implements InvocationHandler {
+        private final Handle handle;
+        private final String sql;
+        private final PreparedStatement ps;
+        private final Connection connection;
+        private boolean closed;
+
+        private StatementHandle(Handle handle, String sql, PreparedStatement ps, Connection connection) {
+            this.handle = handle;
+            this.sql = sql;
+            this.ps = ps;
+            this.connection = connection;
+        }
+
+        /**
+         * Marks this statement closed and checks it back into its connection's cache;
+         * only called by the thread borrowing the connection, before it is released
+         */
+        private void checkIn() {
+            closed = true;
+            handle.pc.checkIn(sql, ps);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed && !handle.closed) {
+                        handle.openStatements.remove(this);
+                        checkIn();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || handle.closed || ps.isClosed();
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + ps;
+            }
+
+            if (closed || handle.closed)
+                throw new SQLException("Statement has already been closed");
+
+            try {
+                return method.invoke(ps, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package hotelapp;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import hotelreviewsdata.HotelSearch;
+import hotelreviewsdata.Review;
+import hotelreviewsdata.ReviewId;
 
-import java.io.FileReader;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.security.MessageDigest;
 import java.util.Random;
 
@@ -19,21 +26,9 @@ import java.util.Random;
  */
 public class DBQueriesHandler {
     private static final DBQueriesHandler instance = new DBQueriesHandler();
-    private final Properties config;
-    private final String uri;
     private final Random rand = new Random();
 
-    private DBQueriesHandler() {
-        Properties p = new Properties();
-        try (FileReader fr = new FileReader("database.properties")) {
-            p.load(fr);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        this.config = p;
-        this.uri = "jdbc:mysql://"+ config.getProperty("hostname") + "/" + config.getProperty("username") + "?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC";
-    }
+    private DBQueriesHandler() {}
     public static DBQueriesHandler get() { return instance; }
 
     private List<String> reviewString(ResultSet rs, boolean reviewLink) {
@@ -62,8 +57,9 @@ public class DBQueriesHandler {
             if (reviewLink) review.add("<br>");
 
             if (reviewLink) {
-                review.add("<a href=\"/myReviews?id=" + rs.getString(5) + "\"><button class=\"btn btn-default\">Edit</button></a>");
-                review.add("<a href=\"/myReviews?id=" + rs.getString(5) + "&type=delete\"><button class=\"btn btn-default\">Delete</button></a>");
+                ReviewId reviewId = ReviewId.fromBytes(rs.getBytes(5));
+                review.add("<a href=\"/myReviews?id=" + reviewId + "\"><button class=\"btn btn-default\">Edit</button></a>");
+                review.add("<a href=\"/myReviews?id=" + reviewId + "&type=delete\"><button class=\"btn btn-default\">Delete</button></a>");
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -73,206 +69,227 @@ public class DBQueriesHandler {
     }
 
     /**
-     * Find all hotels in the database that have hotelNameFragment in their hotelname
-     * @param hotelNameFragment String hotel name fragment to search on
-     * @return JsonArray of JsonObjects representing hotels
+     * Find hotels that have hotelNameFragment in their hotelname, served from the HotelNameIndex
+     * @param hotelNameFragment String hotel name fragment to search on, blank for all hotels
+     * @param limit int max hotels to return, prefix matches first
+     * @return List of matching HotelRows
      */
-    public JsonArray searchHotels(String hotelNameFragment, String username) {
-        if (hotelNameFragment.isBlank()) return searchAllHotels(username);
+    public List<HotelRow> searchHotels(String hotelNameFragment, int limit) {
+        if (hotelNameFragment.isBlank()) {
+            List<HotelRow> all = HotelNameIndex.get().all();
+            return all.subList(0, Math.min(limit, all.size()));
+        }
 
-        JsonArray ja = new JsonArray();
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SEARCH_HOTEL_BY_STRING);
-            String frag = "%" + hotelNameFragment + "%";
-            ps.setString(1, frag);
+        return HotelNameIndex.get().search(hotelNameFragment, limit);
+    }
 
+    /**
+     * Loads every hotel from the database, for the HotelNameIndex
+     * @return List of HotelRows in hotel id order
+     * @throws SQLException on DB failure
+     */
+    List<HotelRow> loadAllHotels() throws SQLException {
+        List<HotelRow> hotels = new ArrayList<>();
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SEARCH_ALL_HOTELS)) {
             ResultSet rs = ps.executeQuery();
-            FavHotels fh = FavHotels.of(username);
-            while (rs.next()) {
-                JsonObject hotel = new JsonObject();
-                hotel.addProperty("hotelid", rs.getInt(1));
-                hotel.addProperty("hotelname", rs.getString(2));
-                hotel.addProperty("address", rs.getString(3));
-                hotel.addProperty("lat", rs.getFloat(4));
-                hotel.addProperty("lng", rs.getFloat(5));
-                hotel.addProperty("rating", rs.getFloat(6));
-                hotel.addProperty("link", rs.getString(7));
-                hotel.addProperty("fav", fh.contains(rs.getString(1)));
-                ja.add(hotel);
-            }
-
-            ps.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            while (rs.next())
+                hotels.add(HotelRow.of(rs));
         }
-        return ja;
+        return hotels;
     }
 
     /**
-     * Find all hotels in the database
-     * @return JsonArray of JsonObjects representing hotels
+     * Find a hotel with id hotelId, served from the HotelCache
+     * @param hotelId long hotel id to select on
+     * @return HotelRow, or null if there is no such hotel
      */
-    private JsonArray searchAllHotels(String username) {
-        JsonArray ja = new JsonArray();
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SEARCH_ALL_HOTELS);
-
-            ResultSet rs = ps.executeQuery();
-            FavHotels fh = FavHotels.of(username);
-            while (rs.next()) {
-                JsonObject hotel = new JsonObject();
-                hotel.addProperty("hotelid", rs.getInt(1));
-                hotel.addProperty("hotelname", rs.getString(2));
-                hotel.addProperty("address", rs.getString(3));
-                hotel.addProperty("lat", rs.getFloat(4));
-                hotel.addProperty("lng", rs.getFloat(5));
-                hotel.addProperty("rating", rs.getFloat(6));
-                hotel.addProperty("link", rs.getString(7));
-                hotel.addProperty("fav", fh.contains(rs.getString(1)));
-                ja.add(hotel);
-            }
-
-            ps.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return ja;
+    public HotelRow searchHotel(long hotelId) {
+        return HotelCache.get().get(hotelId);
     }
 
     /**
-     * Find a hotel in the database with id hotelId
+     * Loads the hotel with id hotelId from the database, for the HotelCache
      * @param hotelId long hotel id to select on
-     * @return JsonObject containing a hotel
+     * @return HotelRow, or null if there is no such hotel
+     * @throws SQLException on DB failure, so the cache doesn't mistake it for a missing hotel
      */
-    public JsonObject searchHotel(long hotelId, String username) {
-        JsonObject jo = new JsonObject();
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SEARCH_HOTEL_BY_ID);
+    HotelRow loadHotel(long hotelId) throws SQLException {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SEARCH_HOTEL_BY_ID)) {
             ps.setLong(1, hotelId);
 
             ResultSet rs = ps.executeQuery();
-            FavHotels fh = FavHotels.of(username);
-            if (rs.next()) {
-                jo.addProperty("hotelid", rs.getInt(1));
-                jo.addProperty("hotelname", rs.getString(2));
-                jo.addProperty("address", rs.getString(3));
-                jo.addProperty("lat", rs.getFloat(4));
-                jo.addProperty("lng", rs.getFloat(5));
-                jo.addProperty("rating", rs.getFloat(6));
-                jo.addProperty("link", rs.getString(7));
-                jo.addProperty("fav", fh.contains(rs.getString(1)));
-            }
+            return (rs.next()) ? HotelRow.of(rs) : null;
+        }
+    }
 
-            ps.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /**
+     * Loads the hotel with link from the database, for the HotelCache
+     * @param link String link to select on
+     * @return HotelRow, or null if there is no such hotel
+     * @throws SQLException on DB failure, so the cache doesn't mistake it for a missing hotel
+     */
+    HotelRow loadHotelByLink(String link) throws SQLException {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SEARCH_HOTEL_BY_LINK)) {
+            ps.setString(1, link);
+
+            ResultSet rs = ps.executeQuery();
+            return (rs.next()) ? HotelRow.of(rs) : null;
         }
-        return jo;
     }
 
     /**
-     * Gets a slice of the reviews for hotel with hotelId
+     * Writes a slice of the reviews for hotel with hotelId, streamed from the ResultSet
+     * @param out JsonWriter to write a JSON object with a "reviews" array of review objects
+     * and property "len" with the size of the full review set for respective hotel
      * @param hotelId long hotelId of hotel
      * @param limit int number of reviews to return
      * @param offset int index of first review to return
-     * @return JsonObject containing a JsonArray of review JsonObjects and
-     * property "len" with the size of the full review set for respective hotel
+     * @throws IOException on write failure, or on DB failure once the array has been started
      */
-    public JsonObject getReviewsSlice(long hotelId, int limit, int offset) {
+    public void writeReviewsSlice(JsonWriter out, long hotelId, int limit, int offset) throws IOException {
         // username, title, body, dateposted
-        JsonObject jo = new JsonObject();
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            JsonArray ja = new JsonArray();
+        out.beginObject();
+        boolean streaming = false;
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_REVIEWS_SLICE)) {
+            int len = getReviewCount(dbConnection, hotelId);
 
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_REVIEWS_SLICE);
             ps.setLong(1, hotelId);
             ps.setInt(2, limit);
             ps.setInt(3, offset);
-
             ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                JsonObject review = new JsonObject();
-                review.addProperty("username", rs.getString(1));
-                review.addProperty("title", rs.getString(2));
-                review.addProperty("text", rs.getString(3));
-                review.addProperty("dateposted", rs.getString(4));
-                ja.add(review);
-            }
-            jo.add("reviews", ja);
 
-            ps = dbConnection.prepareStatement(PreparedStatements.NUM_REVIEWS_FOR_HOTEL);
-            ps.setLong(1, hotelId);
-
-            rs = ps.executeQuery();
-            int len = 0;
-            if (rs.next())
-                len = rs.getInt(1);
-            jo.addProperty("len", len);
+            out.name("len").value(len);
+            out.name("reviews").beginArray();
+            streaming = true;
+            while (rs.next())
+                ReviewsPage.writeReview(out, rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4));
+            out.endArray();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            if (streaming) throw new IOException("Reviews query failed mid-response", e);
+        }
+        out.endObject();
+    }
 
-            ps.close();
+    /**
+     * Reads a page of the reviews for hotel with hotelId using keyset pagination;
+     * reviews are ordered by date posted (descending), then review id (descending).
+     * At most limit + 1 rows are held, since a previous page is read backwards and must be reversed.
+     * dateposted is NOT NULL from schema version 5; a row without one can't be placed in that order and is skipped
+     * @param hotelId long hotelId of hotel
+     * @param limit int number of reviews to return
+     * @param cursor ReviewCursor to page from, or null for the first page
+     * @param next boolean true for the page after cursor, false for the page before it
+     * @return ReviewsPage, or null if the query failed
+     */
+    public ReviewsPage getReviewsPage(long hotelId, int limit, ReviewCursor cursor, boolean next) {
+        List<String[]> reviews = new ArrayList<>(limit + 1);
+        List<ReviewCursor> cursors = new ArrayList<>(limit + 1);
+        int len;
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            String sql = (cursor == null) ? PreparedStatements.GET_REVIEWS_FIRST_PAGE :
+                    (next) ? PreparedStatements.GET_REVIEWS_AFTER_CURSOR : PreparedStatements.GET_REVIEWS_BEFORE_CURSOR;
+            try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
+                ps.setLong(1, hotelId);
+                if (cursor == null) {
+                    ps.setInt(2, limit + 1);
+                } else {
+                    ps.setDate(2, Date.valueOf(cursor.datePosted()));
+                    ps.setBytes(3, cursor.reviewId().toBytes());
+                    ps.setInt(4, limit + 1);
+                }
+
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    Date datePosted = rs.getDate(4);
+                    if (datePosted == null) continue;
+
+                    reviews.add(new String[] {rs.getString(1), rs.getString(2), rs.getString(3), datePosted.toString()});
+                    cursors.add(new ReviewCursor(datePosted.toLocalDate(), ReviewId.fromBytes(rs.getBytes(5))));
+                }
+            }
+            len = getReviewCount(dbConnection, hotelId);
         } catch (SQLException e) {
             e.printStackTrace();
+            return null;
+        }
+
+        // one extra row is fetched to find out if there is another page past this one
+        boolean more = reviews.size() > limit;
+        if (more) {
+            reviews.remove(limit);
+            cursors.remove(limit);
+        }
+        if (cursor != null && !next) {
+            Collections.reverse(reviews);
+            Collections.reverse(cursors);
+        }
+
+        ReviewCursor nextCursor = null, prevCursor = null;
+        if (!cursors.isEmpty()) {
+            boolean forward = next || cursor == null;
+            if (!forward || more)
+                nextCursor = cursors.get(cursors.size() - 1);
+            if ((forward) ? cursor != null : more)
+                prevCursor = cursors.get(0);
         }
-        return jo;
+        return new ReviewsPage(reviews, len, nextCursor, prevCursor);
     }
 
     /**
-     * Checks if a hotel with id from idString exists in the database
+     * Reads a hotel's review count from the hotel_stats counters
+     * @param dbConnection Connection to query on
+     * @param hotelId long hotelId of hotel
+     * @return int number of reviews for the hotel
+     * @throws SQLException on query failure
+     */
+    private int getReviewCount(Connection dbConnection, long hotelId) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.NUM_REVIEWS_FOR_HOTEL)) {
+            ps.setLong(1, hotelId);
+
+            ResultSet rs = ps.executeQuery();
+            return (rs.next()) ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Checks if a hotel with id from idString exists, served from the HotelCache
      * @param idString String to turn into a long and select on
      * @return true if idString corresponds to a hotel id
      */
     public boolean checkHotelId(String idString) {
-        if (!idString.matches("^\\d+$")) return false;
-
-        boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SEARCH_HOTEL_BY_ID);
-            ps.setLong(1, Long.parseLong(idString));
-
-            if (ps.executeQuery().next())
-                flag = true;
+        // hotelid is MEDIUMINT UNSIGNED, longer strings can't match (and may not parse)
+        if (!idString.matches("^\\d{1,8}$")) return false;
 
-            ps.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return flag;
+        return HotelCache.get().get(Long.parseLong(idString)) != null;
     }
 
     /**
-     * Checks if a hotel with id from idString exists in the database
+     * Checks if any hotel has hotelName in its name, served from the HotelNameIndex
      * @param hotelName String to select on
      * @return true if hotelName corresponds to a hotel name
      */
     public boolean checkHotelName(String hotelName) {
-        boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SEARCH_HOTEL_BY_STRING);
-            ps.setString(1, "%" + hotelName + "%");
-
-            if (ps.executeQuery().next())
-                flag = true;
-
-            ps.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return flag;
+        return HotelNameIndex.get().contains(hotelName);
     }
 
     /**
      * Find a review based on username and review id
      * @param username String username
-     * @param reviewId String review id
+     * @param reviewId ReviewId review id
      * @return List of Strings of a review broken up into lines,
      * or an empty list if no review found
      */
-    public List<String> findMyReview(String username, String reviewId) {
+    public List<String> findMyReview(String username, ReviewId reviewId) {
         List<String> review = new ArrayList<>();
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SEARCH_REVIEW_BY_ID);
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SEARCH_REVIEW_BY_ID)) {
             ps.setString(1, username);
-            ps.setString(2, reviewId);
+            ps.setBytes(2, reviewId.toBytes());
 
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
@@ -280,8 +297,6 @@ public class DBQueriesHandler {
                 if (r != null)
                     review = r;
             }
-
-            ps.close();
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -296,8 +311,8 @@ public class DBQueriesHandler {
      */
     public List<List<String>> getMyReviews(String username) {
         List<List<String>> myReviews = new ArrayList<>();
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_MY_REVIEWS);
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_MY_REVIEWS)) {
             ps.setString(1, username);
 
             ResultSet rs = ps.executeQuery();
@@ -306,8 +321,6 @@ public class DBQueriesHandler {
                 if (review != null)
                     myReviews.add(review);
             }
-
-            ps.close();
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -315,81 +328,318 @@ public class DBQueriesHandler {
     }
 
     /**
-     * Delete a review by username and review id
+     * Adds the change of one review's rating to its hotel's hotel_stats rating counters
+     * @param dbConnection Connection of the open transaction
+     * @param hotelId long hotel id
+     * @param oldRating Integer rating before the change, null if the review was absent or unrated
+     * @param newRating Integer rating after the change, null if the review is gone or unrated
+     * @throws SQLException on query failure
+     */
+    private void adjustHotelRatings(Connection dbConnection, long hotelId, Integer oldRating, Integer newRating)
+            throws SQLException {
+        if (Objects.equals(oldRating, newRating)) return;
+
+        int[] deltas = new int[7]; // ratingcount, ratingsum, stars1-5
+        if (oldRating != null) {
+            deltas[0]--;
+            deltas[1] -= oldRating;
+            if (oldRating >= 1 && oldRating <= 5) deltas[1 + oldRating]--;
+        }
+        if (newRating != null) {
+            deltas[0]++;
+            deltas[1] += newRating;
+            if (newRating >= 1 && newRating <= 5) deltas[1 + newRating]++;
+        }
+
+        try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.ADJUST_HOTEL_RATINGS)) {
+            for (int i = 0; i < deltas.length; i++)
+                ps.setInt(i + 1, deltas[i]);
+            ps.setLong(8, hotelId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.REFRESH_HOTEL_RATING)) {
+            ps.setLong(1, hotelId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Drops what is cached of a hotel after a committed change to its reviews, so its rating is read fresh
+     * @param hotelId long hotel id
+     */
+    private void hotelReviewsChanged(long hotelId) {
+        HotelCache.get().invalidate(hotelId);
+        HotelNameIndex.get().refresh(hotelId);
+    }
+
+    /**
+     * The in-memory HotelSearches the server keeps (live ingestion's and review search's, often the same one),
+     * so committed review writes reach their maps and rating totals as well as the DB
+     * @return List of distinct HotelSearches, empty if neither is running
+     */
+    private static List<HotelSearch> inMemoryReviews() {
+        List<HotelSearch> list = new ArrayList<>(2);
+        HotelSearch live = LiveIngestion.get().hotelSearch();
+        HotelSearch search = ReviewSearch.get().hotelSearch();
+        if (live != null) list.add(live);
+        if (search != null && search != live) list.add(search);
+        return list;
+    }
+
+    /**
+     * Delete a review by username and review id, and take its rating out of the hotel's counters,
+     * in the DB and in memory
      * @param username String username
-     * @param reviewId String review id
+     * @param reviewId ReviewId review id
      * @return true if review found and deleted
      */
-    public boolean deleteReview(String username, String reviewId) {
+    public boolean deleteReview(String username, ReviewId reviewId) {
         boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.DELETE_REVIEW);
-            ps.setString(1, username);
-            ps.setString(2, reviewId);
+        long hotelId = -1;
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            dbConnection.setAutoCommit(false);
+
+            Integer rating = null;
+            try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_REVIEW_HOTEL_RATING)) {
+                ps.setString(1, username);
+                ps.setBytes(2, reviewId.toBytes());
+
+                ResultSet rs = ps.executeQuery();
+                if (rs.next()) {
+                    hotelId = rs.getLong(1);
+                    rating = rs.getObject(2, Integer.class);
+                }
+            }
 
-            if (ps.executeUpdate() > 0)
-                flag = true;
+            if (hotelId >= 0) {
+                try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.DELETE_REVIEW)) {
+                    ps.setString(1, username);
+                    ps.setBytes(2, reviewId.toBytes());
+
+                    if (ps.executeUpdate() > 0)
+                        flag = true;
+                }
+            }
 
-            ps.close();
+            if (flag) {
+                try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.DECREMENT_NUM_REVIEWS)) {
+                    ps.setLong(1, hotelId);
+                    ps.executeUpdate();
+                }
+                adjustHotelRatings(dbConnection, hotelId, rating, null);
+            }
+            dbConnection.commit();
         } catch (SQLException e) {
             e.printStackTrace();
+            flag = false;
+        }
+
+        if (flag) {
+            for (HotelSearch hs : inMemoryReviews())
+                hs.removeReview(hotelId, reviewId);
+            hotelReviewsChanged(hotelId);
         }
         return flag;
     }
 
     /**
-     * Add a review
-     * @param reviewId String review id
+     * Add a review, and count its rating in the hotel's counters, in the DB and in memory
+     * @param reviewId ReviewId review id
      * @param hotelId long hotel id
      * @param username String username
      * @param title String review title
      * @param text String review body
+     * @param rating int review rating, 1-5 stars
      * @return true if review successfully added
      */
-    public boolean insertReview(String reviewId, long hotelId, String username, String title, String text) {
+    public boolean insertReview(ReviewId reviewId, long hotelId, String username, String title, String text, int rating) {
         boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.INSERT_REVIEW_NO_DATE);
-            ps.setString(1, reviewId); // reviewid VARCHAR(24)
-            ps.setLong(2, hotelId); // hotelid MEDIUMINT UNSIGNED
-            ps.setString(3, username); // username VARCHAR(32)
-            ps.setObject(4, title, JDBCType.LONGVARCHAR); // title TEXT
-            ps.setObject(5, text, JDBCType.LONGVARCHAR); // text TEXT
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            dbConnection.setAutoCommit(false);
+
+            try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.INSERT_REVIEW_NO_DATE)) {
+                ps.setBytes(1, reviewId.toBytes()); // reviewid BINARY(12)
+                ps.setLong(2, hotelId); // hotelid MEDIUMINT UNSIGNED
+                ps.setString(3, username); // username VARCHAR(32)
+                ps.setObject(4, title, JDBCType.LONGVARCHAR); // title TEXT
+                ps.setObject(5, text, JDBCType.LONGVARCHAR); // text TEXT
+                ps.setInt(6, rating); // rating TINYINT UNSIGNED
+
+                if (ps.executeUpdate() > 0)
+                    flag = true;
+            }
 
-            if (ps.executeUpdate() > 0)
-                flag = true;
+            if (flag) {
+                try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.INCREMENT_NUM_REVIEWS)) {
+                    ps.setLong(1, hotelId);
+                    ps.executeUpdate();
+                }
+                adjustHotelRatings(dbConnection, hotelId, null, rating);
+            }
+            dbConnection.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            flag = false;
+        }
 
-            ps.close();
+        if (flag) {
+            // dateposted defaults to the DB's current date
+            Review review = new Review(hotelId, reviewId, rating, title, text, username, LocalDate.now());
+            for (HotelSearch hs : inMemoryReviews())
+                hs.addReview(review);
+            hotelReviewsChanged(hotelId);
+        }
+        return flag;
+    }
+
+    /**
+     * What is stored of a review, enough to tell whether a Review read from a file differs from it
+     * @param rating Integer rating, or null if unrated
+     * @param titleLength int title length in code points
+     * @param bodyLength int body length in code points
+     */
+    public record ReviewSummary(Integer rating, int titleLength, int bodyLength) {
+        /**
+         * Summarizes a Review the way the reviews table would store it
+         * @param r Review
+         * @return ReviewSummary
+         */
+        public static ReviewSummary of(Review r) {
+            return new ReviewSummary(r.ratingOverall(), codePoints(r.title()), codePoints(r.text()));
+        }
+
+        private static int codePoints(String s) {
+            return (s == null) ? 0 : s.codePointCount(0, s.length());
+        }
+    }
+
+    /**
+     * Summaries of every stored review, by review id
+     * @return Map of ReviewId to ReviewSummary, or null if the query failed
+     */
+    public Map<ReviewId, ReviewSummary> getReviewSummaries() {
+        Map<ReviewId, ReviewSummary> summaries = new HashMap<>();
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_REVIEW_SUMMARIES)) {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                summaries.put(ReviewId.fromBytes(rs.getBytes(1)),
+                        new ReviewSummary(rs.getObject(2, Integer.class), rs.getInt(3), rs.getInt(4)));
+            }
         } catch (SQLException e) {
             e.printStackTrace();
+            return null;
         }
+        return summaries;
+    }
+
+    /**
+     * Inserts reviews, or refreshes the title, body and rating of ones already stored, then recounts
+     * the affected hotels' counters and ratings, all in one transaction
+     * @param reviews List of Reviews to upsert
+     * @return true if the transaction committed
+     */
+    public boolean upsertReviews(List<Review> reviews) {
+        boolean flag = false;
+        Set<Long> hotelIds = new HashSet<>();
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            dbConnection.setAutoCommit(false);
+
+            try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.UPSERT_REVIEW)) {
+                for (Review r : reviews) {
+                    ReviewsBulkLoader.bindReview(ps, r);
+                    ps.setObject(8, r.title(), JDBCType.LONGVARCHAR);
+                    ps.setObject(9, r.text(), JDBCType.LONGVARCHAR);
+                    ps.setInt(10, r.ratingOverall());
+                    ps.addBatch();
+                    hotelIds.add(r.hotelId());
+                }
+                ps.executeBatch();
+            }
+
+            // an upsert may replace a stored rating, so recount instead of adding deltas
+            try (PreparedStatement clear = dbConnection.prepareStatement(PreparedStatements.CLEAR_HOTEL_STATS_FOR_HOTEL);
+                 PreparedStatement recount = dbConnection.prepareStatement(PreparedStatements.RECOUNT_HOTEL_STATS);
+                 PreparedStatement rate = dbConnection.prepareStatement(PreparedStatements.REFRESH_HOTEL_RATING)) {
+                for (long hotelId : hotelIds) {
+                    clear.setLong(1, hotelId);
+                    clear.addBatch();
+                    recount.setLong(1, hotelId);
+                    recount.addBatch();
+                    rate.setLong(1, hotelId);
+                    rate.addBatch();
+                }
+                clear.executeBatch();
+                recount.executeBatch();
+                rate.executeBatch();
+            }
+
+            dbConnection.commit();
+            flag = true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        for (long hotelId : hotelIds)
+            hotelReviewsChanged(hotelId);
         return flag;
     }
 
     /**
-     * Edit a review
+     * Edit a review, and move its rating in the hotel's counters if it changed, in the DB and in memory
      * @param title String review title
      * @param text String review body
+     * @param rating Integer review rating, 1-5 stars, or null to keep the current one
      * @param username String username
-     * @param reviewId String review id
+     * @param reviewId ReviewId review id
      * @return true if review successfully updated
      */
-    public boolean updateReview(String title, String text, String username, String reviewId) {
+    public boolean updateReview(String title, String text, Integer rating, String username, ReviewId reviewId) {
         boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.UPDATE_REVIEW);
-            ps.setObject(1, title, JDBCType.LONGVARCHAR);
-            ps.setObject(2, text, JDBCType.LONGVARCHAR);
-            ps.setString(3, username);
-            ps.setString(4, reviewId);
+        long hotelId = -1;
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            dbConnection.setAutoCommit(false);
+
+            // locks the row, so a concurrent edit can't apply the same old rating twice
+            Integer oldRating = null;
+            try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_REVIEW_HOTEL_RATING)) {
+                ps.setString(1, username);
+                ps.setBytes(2, reviewId.toBytes());
+
+                ResultSet rs = ps.executeQuery();
+                if (rs.next()) {
+                    hotelId = rs.getLong(1);
+                    oldRating = rs.getObject(2, Integer.class);
+                }
+            }
 
-            if (ps.executeUpdate() > 0)
-                flag = true;
+            if (hotelId >= 0) {
+                try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.UPDATE_REVIEW)) {
+                    ps.setObject(1, title, JDBCType.LONGVARCHAR);
+                    ps.setObject(2, text, JDBCType.LONGVARCHAR);
+                    ps.setObject(3, rating, JDBCType.TINYINT);
+                    ps.setString(4, username);
+                    ps.setBytes(5, reviewId.toBytes());
+
+                    if (ps.executeUpdate() > 0)
+                        flag = true;
+                }
+            }
 
-            ps.close();
+            if (flag && rating != null)
+                adjustHotelRatings(dbConnection, hotelId, oldRating, rating);
+            dbConnection.commit();
         } catch (SQLException e) {
             e.printStackTrace();
+            flag = false;
+        }
+
+        if (flag) {
+            for (HotelSearch hs : inMemoryReviews())
+                hs.editReview(hotelId, reviewId, title, text, rating);
         }
+        if (flag && rating != null)
+            hotelReviewsChanged(hotelId);
         return flag;
     }
 
@@ -446,16 +696,13 @@ public class DBQueriesHandler {
         String salt = encodeHex(saltBytes, 32); // salt
         String hashedPw = getHash(password, salt); // hashed password
 
-        PreparedStatement ps;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            ps = dbConnection.prepareStatement(PreparedStatements.REGISTER_USER);
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.REGISTER_USER)) {
             ps.setString(1, username);
             ps.setString(2, hashedPw);
             ps.setString(3, salt);
             if (ps.executeUpdate() > 0)
                 flag = true;
-
-            ps.close();
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -473,28 +720,26 @@ public class DBQueriesHandler {
     public boolean loginUser(String username, String password) {
         boolean flag = false;
 
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement saltStatement = dbConnection.prepareStatement(PreparedStatements.GET_SALT);
-            saltStatement.setString(1, username);
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            String salt;
+            try (PreparedStatement saltStatement = dbConnection.prepareStatement(PreparedStatements.GET_SALT)) {
+                saltStatement.setString(1, username);
 
-            ResultSet saltRs = saltStatement.executeQuery(); // salt
-            if (!saltRs.next()) {
-                saltStatement.close();
-                return false;
-            }
+                ResultSet saltRs = saltStatement.executeQuery(); // salt
+                if (!saltRs.next())
+                    return false;
 
-            String salt = saltRs.getString(1);
+                salt = saltRs.getString(1);
+            }
             String hashedPw = getHash(password, salt); // hashed password
-            saltStatement.close();
-
-            PreparedStatement statement = dbConnection.prepareStatement(PreparedStatements.LOGIN_USER);
-            statement.setString(1, username);
-            statement.setString(2, hashedPw);
-            ResultSet rs = statement.executeQuery();
-            if (rs.next())
-                flag = true;
 
-            statement.close();
+            try (PreparedStatement statement = dbConnection.prepareStatement(PreparedStatements.LOGIN_USER)) {
+                statement.setString(1, username);
+                statement.setString(2, hashedPw);
+                ResultSet rs = statement.executeQuery();
+                if (rs.next())
+                    flag = true;
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -510,19 +755,19 @@ public class DBQueriesHandler {
     public String cycleLastLogin(String username) {
         String lastLogin = null;
 
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_LAST_LOGIN);
-            ps.setString(1, username);
-
-            ResultSet rs = ps.executeQuery();
-            if (rs.next())
-                lastLogin = rs.getString(1);
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_LAST_LOGIN)) {
+                ps.setString(1, username);
 
-            ps = dbConnection.prepareStatement(PreparedStatements.SET_LAST_LOGIN);
-            ps.setString(1, username);
-            ps.executeUpdate();
+                ResultSet rs = ps.executeQuery();
+                if (rs.next())
+                    lastLogin = rs.getString(1);
+            }
 
-            ps.close();
+            try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SET_LAST_LOGIN)) {
+                ps.setString(1, username);
+                ps.executeUpdate();
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -531,51 +776,90 @@ public class DBQueriesHandler {
     }
 
     /**
-     * Gets link history of user from DB
+     * Gets link click counts of user from DB
      * @param username String name of user to check link history on
-     * @return String representation of full link history
+     * @return Map of link to number of clicks
      */
-    public String getLinkHistory(String username) {
-        String linkHistory = null;
-
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_LINK_HISTORY);
+    public Map<String, Integer> getLinkClicks(String username) {
+        Map<String, Integer> clicks = new HashMap<>();
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_LINK_CLICKS)) {
             ps.setString(1, username);
 
             ResultSet rs = ps.executeQuery();
-            if (rs.next())
-                linkHistory = rs.getString(1);
-
-            ps.close();
+            while (rs.next())
+                clicks.put(rs.getString(1), rs.getInt(2));
         } catch (SQLException e) {
             e.printStackTrace();
         }
-
-        return linkHistory;
+        return clicks;
     }
 
     /**
-     * Sets link history of user to DB
-     * @param username String name of user to set link history on
-     * @return boolean success or failure of SQL update query
+     * Atomically adds aggregated clicks for many users and links as one batch in one transaction
+     * @param clicks Map of username to (link to number of clicks to add)
+     * @return boolean success or failure of SQL batch upsert, nothing is written on failure
      */
-    public boolean setLinkHistory(String username, String linkHistory) {
+    public boolean addLinkClicks(Map<String, Map<String, Long>> clicks) {
         boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SET_LINK_HISTORY);
-            ps.setObject(1, linkHistory, JDBCType.LONGVARCHAR);
-            ps.setString(2, username);
-
-            if (ps.execute())
-                flag = true;
-
-            ps.close();
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.ADD_LINK_CLICKS)) {
+            dbConnection.setAutoCommit(false);
+
+            for (Map.Entry<String, Map<String, Long>> user : clicks.entrySet()) {
+                for (Map.Entry<String, Long> e : user.getValue().entrySet()) {
+                    setLinkClicks(ps, user.getKey(), e.getKey(), e.getValue());
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+            dbConnection.commit();
+            flag = true;
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return flag;
     }
 
+    /**
+     * Adds aggregated clicks one row at a time on one connection, each row committed on its own,
+     * so rows addLinkClicks could not write as a batch don't hold back the rest
+     * @param clicks Map of username to (link to number of clicks to add)
+     * @return Map of username to (link to clicks) of the rows that were not written,
+     * all of them if no connection could be had
+     */
+    public Map<String, Map<String, Long>> addLinkClicksEach(Map<String, Map<String, Long>> clicks) {
+        Map<String, Map<String, Long>> failed = new HashMap<>();
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.ADD_LINK_CLICKS)) {
+            dbConnection.setAutoCommit(true);
+
+            for (Map.Entry<String, Map<String, Long>> user : clicks.entrySet()) {
+                for (Map.Entry<String, Long> e : user.getValue().entrySet()) {
+                    try {
+                        setLinkClicks(ps, user.getKey(), e.getKey(), e.getValue());
+                        ps.executeUpdate();
+                    } catch (SQLException ex) {
+                        System.out.println("Could not add " + e.getValue() + " clicks by " + user.getKey()
+                                + " on " + e.getKey() + ": " + ex.getMessage());
+                        failed.computeIfAbsent(user.getKey(), k -> new HashMap<>()).put(e.getKey(), e.getValue());
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return clicks;
+        }
+        return failed;
+    }
+
+    private void setLinkClicks(PreparedStatement ps, String username, String link, long count) throws SQLException {
+        ps.setString(1, link);
+        ps.setLong(2, count);
+        ps.setString(3, username);
+        ps.setLong(4, count);
+    }
+
     /**
      * Clears link history of user in DB
      * @param username String name of user to clear link history on
@@ -583,14 +867,12 @@ public class DBQueriesHandler {
      */
     public boolean clearLinkHistory(String username) {
         boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.CLEAR_LINK_HISTORY);
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.CLEAR_LINK_CLICKS)) {
             ps.setString(1, username);
 
-            if (ps.execute())
-                flag = true;
-
-            ps.close();
+            ps.executeUpdate();
+            flag = true;
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -598,42 +880,28 @@ public class DBQueriesHandler {
     }
 
     /**
-     * Checks DB for proper link query
+     * Checks for a hotel with link, served from the HotelCache
      * @param link String link to check
      * @return boolean link is in DB or not
      */
     public boolean checkLink(String link) {
-        boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.CHECK_LINK);
-            ps.setString(1, link);
-
-            if (ps.executeQuery().next())
-                flag = true;
-
-            ps.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return flag;
+        return HotelCache.get().getByLink(link) != null;
     }
 
     /**
      * Gets favorited hotels of user from DB
      * @param username String name of user to fav hotels on
-     * @return String representation of all fav hotels
+     * @return List of favorited hotel ids
      */
-    public String getFavHotels(String username) {
-        String favHotels = null;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_FAV_HOTELS);
+    public List<Long> getFavHotels(String username) {
+        List<Long> favHotels = new ArrayList<>();
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_FAV_HOTELS)) {
             ps.setString(1, username);
 
             ResultSet rs = ps.executeQuery();
-            if (rs.next())
-                favHotels = rs.getString(1);
-
-            ps.close();
+            while (rs.next())
+                favHotels.add(rs.getLong(1));
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -641,25 +909,34 @@ public class DBQueriesHandler {
     }
 
     /**
-     * Sets favorited hotels of user to DB
-     * @param username String name of user to set fav hotels on
-     * @return boolean success or failure of SQL update query
+     * Turns on or off the favorited status of a hotel for a user, one row at a time:
+     * unfavorites if the row exists, otherwise favorites
+     * @param username String name of user to toggle fav hotel on
+     * @param hotelId long id of hotel to toggle
+     * @return boolean new status of hotel is favorited / not favorited
      */
-    public boolean setFavHotels(String username, String favHotels) {
-        boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SET_FAV_HOTELS);
-            ps.setObject(1, favHotels, JDBCType.LONGVARCHAR);
-            ps.setString(2, username);
-
-            if (ps.executeUpdate() > 0)
-                flag = true;
+    public boolean toggleFavHotel(String username, long hotelId) {
+        boolean isFav = false;
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            int removed;
+            try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.REMOVE_FAV_HOTEL)) {
+                ps.setString(1, username);
+                ps.setLong(2, hotelId);
+                removed = ps.executeUpdate();
+            }
 
-            ps.close();
+            if (removed == 0) {
+                try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.ADD_FAV_HOTEL)) {
+                    ps.setLong(1, hotelId);
+                    ps.setString(2, username);
+                    ps.executeUpdate();
+                    isFav = true;
+                }
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return flag;
+        return isFav;
     }
 
     /**
@@ -669,14 +946,12 @@ public class DBQueriesHandler {
      */
     public boolean clearFavHotels(String username) {
         boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.CLEAR_FAV_HOTELS);
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.CLEAR_FAV_HOTELS)) {
             ps.setString(1, username);
 
-            if (ps.execute())
-                flag = true;
-
-            ps.close();
+            ps.executeUpdate();
+            flag = true;
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -4,12 +4,8 @@ import hotelreviewsdata.Hotel;
 import hotelreviewsdata.HotelSearch;
 import hotelreviewsdata.Review;
 
-import java.io.FileReader;
-import java.io.IOException;
 import java.sql.*;
-import java.time.LocalDate;
 import java.util.List;
-import java.util.Properties;
 
 
 /**
@@ -17,25 +13,30 @@ import java.util.Properties;
  */
 public class DBTablesHandler {
     private static final DBTablesHandler instance = new DBTablesHandler();
-    private final Properties config;
-    private final String uri;
-
-    private DBTablesHandler() {
-        Properties p = new Properties();
-        try (FileReader fr = new FileReader("database.properties")) {
-            p.load(fr);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
 
-        this.config = p;
-        this.uri = "jdbc:mysql://"+ config.getProperty("hostname") + "/" + config.getProperty("username") + "?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC";
+    /**
+     * A schema migration step; applied once, in order, and recorded in schema_version.
+     * Steps should be idempotent, since MySQL DDL can't be rolled back if a later statement fails
+     */
+    private interface Migration {
+        void apply(Connection dbConnection) throws SQLException;
     }
+
+    /** Migrations by version; migrations.get(i) brings the schema from version i to i+1 */
+    private final List<Migration> migrations = List.of(
+            this::addLookupIndexes,
+            this::normalizeUserLists,
+            this::packReviewIds,
+            this::addRatingAggregates,
+            this::requireReviewDates
+    );
+
+    private DBTablesHandler() {}
     public static DBTablesHandler get() { return instance; }
 
     private boolean checkUsersTable() {
         boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
             Statement statement = dbConnection.createStatement();
             statement.executeQuery(PreparedStatements.CHECK_USERS_TABLE);
 
@@ -50,7 +51,7 @@ public class DBTablesHandler {
     }
 
     private void createUsersTable() {
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
             Statement statement = dbConnection.createStatement();
             statement.executeUpdate(PreparedStatements.CREATE_USERS_TABLE);
             statement.close();
@@ -61,7 +62,7 @@ public class DBTablesHandler {
 
     private boolean checkHotelsTable() {
         boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
             Statement statement = dbConnection.createStatement();
             statement.executeQuery(PreparedStatements.CHECK_HOTELS_TABLE);
 
@@ -76,7 +77,7 @@ public class DBTablesHandler {
     }
 
     private void createHotelsTable() {
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
             Statement statement = dbConnection.createStatement();
             statement.executeUpdate(PreparedStatements.CREATE_HOTELS_TABLE);
             statement.close();
@@ -86,9 +87,9 @@ public class DBTablesHandler {
     }
 
     private void populateHotelsTable(HotelSearch hs) {
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection();
+             PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.INSERT_HOTEL)) {
             dbConnection.setAutoCommit(true);
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.INSERT_HOTEL);
 
             Hotel h;
             for (Long l : hs.returnAllHotelIds()) {
@@ -105,7 +106,6 @@ public class DBTablesHandler {
             }
 
             ps.executeBatch();
-            ps.close();
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -113,7 +113,7 @@ public class DBTablesHandler {
 
     private boolean checkReviewsTable() {
         boolean flag = false;
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
             Statement statement = dbConnection.createStatement();
             statement.executeQuery(PreparedStatements.CHECK_REVIEWS_TABLE);
             if (statement.getResultSet().next())
@@ -126,7 +126,7 @@ public class DBTablesHandler {
     }
 
     private void createReviewsTable() {
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
             Statement statement = dbConnection.createStatement();
             statement.executeUpdate(PreparedStatements.CREATE_REVIEWS_TABLE);
             statement.close();
@@ -136,31 +136,301 @@ public class DBTablesHandler {
     }
 
     private void populateReviewsTable(HotelSearch hs) {
-        try (Connection dbConnection = DriverManager.getConnection(uri, config.getProperty("username"), config.getProperty("password"))) {
+        new ReviewsBulkLoader(hs).load();
+    }
+
+    private boolean checkHotelStatsTable() {
+        boolean flag = false;
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            Statement statement = dbConnection.createStatement();
+            statement.executeQuery(PreparedStatements.CHECK_HOTEL_STATS_TABLE);
+            if (statement.getResultSet().next())
+                flag = true;
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return flag;
+    }
+
+    private void createHotelStatsTable() {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            Statement statement = dbConnection.createStatement();
+            statement.executeUpdate(PreparedStatements.CREATE_HOTEL_STATS_TABLE);
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void populateHotelStatsTable() {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            // this runs before migrateSchema: until schema version 4 adds the rating columns, only count reviews
+            boolean rated = columnExists(dbConnection, "reviews", "rating")
+                    && columnExists(dbConnection, "hotel_stats", "ratingsum");
+            dbConnection.setAutoCommit(false);
+            Statement statement = dbConnection.createStatement();
+            statement.executeUpdate(PreparedStatements.CLEAR_HOTEL_STATS);
+            statement.executeUpdate(rated ? PreparedStatements.POPULATE_HOTEL_STATS : PreparedStatements.POPULATE_HOTEL_REVIEW_COUNTS);
+            statement.close();
+            dbConnection.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean indexExists(Connection dbConnection, String table, String index) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.CHECK_INDEX)) {
+            ps.setString(1, table);
+            ps.setString(2, index);
+            return ps.executeQuery().next();
+        }
+    }
+
+    private void createIndex(Connection dbConnection, String table, String index, String ddl) throws SQLException {
+        if (indexExists(dbConnection, table, index)) return;
+
+        System.out.println("Creating index " + index + " on " + table);
+        try (Statement statement = dbConnection.createStatement()) {
+            statement.executeUpdate(ddl);
+        }
+    }
+
+    /**
+     * Schema version 1: secondary indexes for the hot lookup columns
+     * @param dbConnection Connection to migrate on
+     * @throws SQLException on DDL failure
+     */
+    private void addLookupIndexes(Connection dbConnection) throws SQLException {
+        createIndex(dbConnection, "reviews", "reviews_hotel_date", PreparedStatements.CREATE_REVIEWS_HOTEL_DATE_INDEX);
+        createIndex(dbConnection, "reviews", "reviews_user", PreparedStatements.CREATE_REVIEWS_USER_INDEX);
+        createIndex(dbConnection, "hotels", "hotels_link", PreparedStatements.CREATE_HOTELS_LINK_INDEX);
+    }
+
+    private boolean columnExists(Connection dbConnection, String table, String column) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.CHECK_COLUMN)) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            return ps.executeQuery().next();
+        }
+    }
+
+    /**
+     * Schema version 2: moves the comma-separated users.fav_hotels / users.link_history TEXT
+     * columns into the user_fav_hotels and user_link_clicks tables, then drops the old columns
+     * @param dbConnection Connection to migrate on
+     * @throws SQLException on query failure
+     */
+    private void normalizeUserLists(Connection dbConnection) throws SQLException {
+        try (Statement statement = dbConnection.createStatement()) {
+            statement.executeUpdate(PreparedStatements.CREATE_USER_FAV_HOTELS_TABLE);
+            statement.executeUpdate(PreparedStatements.CREATE_USER_LINK_CLICKS_TABLE);
+        }
+
+        if (!columnExists(dbConnection, "users", "fav_hotels"))
+            return;
+
+        dbConnection.setAutoCommit(false);
+        try (Statement statement = dbConnection.createStatement();
+             PreparedStatement favPs = dbConnection.prepareStatement(PreparedStatements.INSERT_FAV_HOTEL_BY_USERID);
+             PreparedStatement linkPs = dbConnection.prepareStatement(PreparedStatements.INSERT_LINK_CLICKS_BY_USERID)) {
+            ResultSet rs = statement.executeQuery(PreparedStatements.GET_LEGACY_USER_LISTS);
+            while (rs.next()) {
+                int userId = rs.getInt(1);
+
+                // link_history was "link:count,link:count,..."
+                String linkHistory = rs.getString(2);
+                if (linkHistory != null) {
+                    for (String t : linkHistory.split(",")) {
+                        int splitIdx = t.lastIndexOf(":");
+                        if (splitIdx <= 0 || !t.substring(splitIdx + 1).matches("^\\d+$")) continue;
+
+                        int count = Integer.parseInt(t.substring(splitIdx + 1));
+                        linkPs.setInt(1, userId);
+                        linkPs.setString(2, t.substring(0, splitIdx));
+                        linkPs.setInt(3, count);
+                        linkPs.setInt(4, count);
+                        linkPs.addBatch();
+                    }
+                }
+
+                // fav_hotels was "hotelid,hotelid,..."
+                String favHotels = rs.getString(3);
+                if (favHotels != null) {
+                    for (String t : favHotels.split(",")) {
+                        if (!t.matches("^\\d+$")) continue;
+
+                        favPs.setInt(1, userId);
+                        favPs.setLong(2, Long.parseLong(t));
+                        favPs.addBatch();
+                    }
+                }
+            }
+            linkPs.executeBatch();
+            favPs.executeBatch();
+            dbConnection.commit();
+        } catch (SQLException e) {
+            dbConnection.rollback();
+            throw e;
+        } finally {
             dbConnection.setAutoCommit(true);
-            PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.INSERT_REVIEW);
+        }
 
-            List<Review> rs;
-            LocalDate ld;
-            for (Long l : hs.returnAllHotelIds()) {
-                if ((rs = hs.returnReviews(l)) != null) {
-                    for (Review r : rs) {
-                        ps.setString(1, r.reviewId()); // reviewid VARCHAR(24)
-                        ps.setLong(2, r.hotelId()); // hotelid MEDIUMINT UNSIGNED
-                        ps.setString(3, r.username()); // username VARCHAR(32)
-                        ps.setObject(4, r.title(), JDBCType.LONGVARCHAR); // title TEXT
-                        ps.setObject(5, r.text(), JDBCType.LONGVARCHAR); // text TEXT
-                        if ((ld = r.datePosted()) != null)
-                            ps.setDate(6, Date.valueOf(ld)); // datetimeposted DATETIME
-                        else
-                            ps.setDate(6, Date.valueOf(LocalDate.MIN)); // datetimeposted DATETIME
+        try (Statement statement = dbConnection.createStatement()) {
+            statement.executeUpdate(PreparedStatements.DROP_LEGACY_USER_LISTS);
+        }
+    }
+
+    private String columnType(Connection dbConnection, String table, String column) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_COLUMN_TYPE)) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            ResultSet rs = ps.executeQuery();
+            return (rs.next()) ? rs.getString(1) : null;
+        }
+    }
+
+    /**
+     * Schema version 3: replaces the VARCHAR(24) hex reviews.reviewid with its BINARY(12) form.
+     * Rows whose id is not 24 hex chars have no binary form and are deleted (and hotel_stats recounted).
+     * Each step is DDL, so it commits on its own; every step checks for its own result first,
+     * so an interrupted run is finished by the next one
+     * @param dbConnection Connection to migrate on
+     * @throws SQLException on query failure
+     */
+    private void packReviewIds(Connection dbConnection) throws SQLException {
+        String type = columnType(dbConnection, "reviews", "reviewid");
+        if (type != null && !type.equalsIgnoreCase("binary")) {
+            try (Statement statement = dbConnection.createStatement()) {
+                int deleted = statement.executeUpdate(PreparedStatements.DELETE_MALFORMED_REVIEW_IDS);
+                if (deleted > 0) {
+                    System.out.println("Deleted " + deleted + " reviews with malformed review ids");
+                    // reviews.rating only exists from version 4, which recounts the ratings
+                    statement.executeUpdate(PreparedStatements.CLEAR_HOTEL_STATS);
+                    statement.executeUpdate(PreparedStatements.POPULATE_HOTEL_REVIEW_COUNTS);
+                }
+
+                if (indexExists(dbConnection, "reviews", "reviews_hotel_date"))
+                    statement.executeUpdate(PreparedStatements.DROP_REVIEWS_HOTEL_DATE_INDEX);
+                if (indexExists(dbConnection, "reviews", "reviews_user"))
+                    statement.executeUpdate(PreparedStatements.DROP_REVIEWS_USER_INDEX);
+
+                if (!columnExists(dbConnection, "reviews", "reviewid_bin"))
+                    statement.executeUpdate(PreparedStatements.ADD_BINARY_REVIEW_ID);
+                statement.executeUpdate(PreparedStatements.FILL_BINARY_REVIEW_ID);
+                statement.executeUpdate(PreparedStatements.SWAP_BINARY_REVIEW_ID);
+            }
+        }
+
+        createIndex(dbConnection, "reviews", "reviews_hotel_date", PreparedStatements.CREATE_REVIEWS_HOTEL_DATE_INDEX);
+        createIndex(dbConnection, "reviews", "reviews_user", PreparedStatements.CREATE_REVIEWS_USER_INDEX);
+    }
+
+    /**
+     * Schema version 4: adds reviews.rating and the hotel_stats rating counters (count, sum, star histogram)
+     * that review writes keep current, then recounts hotel_stats and sets hotels.rating from it.
+     * The ratings of reviews seeded before this version are read back from the input files (the shared HotelData,
+     * since the DB has no copy of them yet);
+     * reviews written through the site before it stay unrated. Hotels left without rated reviews keep their rating
+     * @param dbConnection Connection to migrate on
+     * @throws SQLException on query failure
+     */
+    private void addRatingAggregates(Connection dbConnection) throws SQLException {
+        if (!columnExists(dbConnection, "reviews", "rating")) {
+            try (Statement statement = dbConnection.createStatement()) {
+                statement.executeUpdate(PreparedStatements.ADD_REVIEW_RATING);
+            }
+
+            HotelSearch hs = HotelData.get().hotelSearch();
+            dbConnection.setAutoCommit(false);
+            try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SET_REVIEW_RATING)) {
+                int batched = 0;
+                for (long hotelId : hs.returnAllHotelIds()) {
+                    List<Review> reviews = hs.returnReviews(hotelId);
+                    if (reviews == null) continue;
+
+                    for (Review r : reviews) {
+                        ps.setInt(1, r.ratingOverall());
+                        ps.setBytes(2, r.reviewId().toBytes());
                         ps.addBatch();
+                        if (++batched % 1000 == 0)
+                            ps.executeBatch();
                     }
                 }
+                ps.executeBatch();
+                dbConnection.commit();
+            } catch (SQLException e) {
+                dbConnection.rollback();
+                throw e;
+            } finally {
+                dbConnection.setAutoCommit(true);
             }
+        }
 
-            ps.executeBatch();
-            ps.close();
+        if (!columnExists(dbConnection, "hotel_stats", "ratingsum")) {
+            try (Statement statement = dbConnection.createStatement()) {
+                statement.executeUpdate(PreparedStatements.ADD_HOTEL_STATS_RATINGS);
+            }
+        }
+
+        dbConnection.setAutoCommit(false);
+        try (Statement statement = dbConnection.createStatement()) {
+            statement.executeUpdate(PreparedStatements.CLEAR_HOTEL_STATS);
+            statement.executeUpdate(PreparedStatements.POPULATE_HOTEL_STATS);
+            statement.executeUpdate(PreparedStatements.REFRESH_ALL_HOTEL_RATINGS);
+            dbConnection.commit();
+        } catch (SQLException e) {
+            dbConnection.rollback();
+            throw e;
+        } finally {
+            dbConnection.setAutoCommit(true);
+        }
+
+        HotelCache.get().invalidateAll();
+        HotelNameIndex.get().rebuild();
+    }
+
+    /**
+     * Schema version 5: makes reviews.dateposted NOT NULL, since review pages are keyed on it.
+     * Reviews stored without a date are dated on the day of the migration, as the column default would have done
+     * @param dbConnection Connection to migrate on
+     * @throws SQLException on query failure
+     */
+    private void requireReviewDates(Connection dbConnection) throws SQLException {
+        try (Statement statement = dbConnection.createStatement()) {
+            int dated = statement.executeUpdate(PreparedStatements.FILL_MISSING_REVIEW_DATES);
+            if (dated > 0)
+                System.out.println("Dated " + dated + " reviews that had no date posted");
+            statement.executeUpdate(PreparedStatements.REQUIRE_REVIEW_DATE);
+        }
+    }
+
+    /**
+     * Applies any migrations newer than the version recorded in schema_version;
+     * an up-to-date schema costs a single query
+     */
+    private void migrateSchema() {
+        try (Connection dbConnection = DBConnectionPool.get().getConnection()) {
+            try (Statement statement = dbConnection.createStatement()) {
+                statement.executeUpdate(PreparedStatements.CREATE_SCHEMA_VERSION_TABLE);
+            }
+
+            int version = 0;
+            try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.GET_SCHEMA_VERSION)) {
+                ResultSet rs = ps.executeQuery();
+                if (rs.next())
+                    version = rs.getInt(1);
+            }
+
+            for (int v = version; v < migrations.size(); v++) {
+                System.out.println("Migrating schema to version " + (v + 1));
+                migrations.get(v).apply(dbConnection);
+
+                try (PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.SET_SCHEMA_VERSION)) {
+                    ps.setInt(1, v + 1);
+                    ps.executeUpdate();
+                }
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -168,7 +438,7 @@ public class DBTablesHandler {
 
     /**
      * Check if necessary tables exist, and if not,
-     * create and populate them
+     * create and populate them, then bring the schema up to date
      */
     public void checkTables() {
         // to clear tables, do 'truncate table [table_name];' in mysql
@@ -178,11 +448,13 @@ public class DBTablesHandler {
         boolean checkHotelsTable = checkHotelsTable();
         boolean checkReviewsTable = checkReviewsTable();
         if (!checkHotelsTable || !checkReviewsTable) {
-            HotelSearch hs = new HotelSearch().init();
+            HotelSearch hs = HotelData.get().hotelSearch();
 
             if (!checkHotelsTable) {
                 createHotelsTable();
                 populateHotelsTable(hs);
+                HotelCache.get().invalidateAll();
+                HotelNameIndex.get().rebuild();
             }
 
             if (!checkReviewsTable) {
@@ -190,5 +462,14 @@ public class DBTablesHandler {
                 populateReviewsTable(hs);
             }
         }
+
+        // review counters are rebuilt whenever the reviews table is (re)seeded
+        boolean checkHotelStatsTable = checkHotelStatsTable();
+        if (!checkHotelStatsTable)
+            createHotelStatsTable();
+        if (!checkHotelStatsTable || !checkReviewsTable)
+            populateHotelStatsTable();
+
+        migrateSchema();
     }
 }
@@ -5,7 +5,7 @@ import java.util.*;
 
 
 /**
- * (De)Serialization of fav_hotels TEXT field in SQL users table
+ * A user's favorited hotels, backed by their rows in the SQL user_fav_hotels table
  */
 public class FavHotels {
     private String username;
@@ -16,11 +16,8 @@ public class FavHotels {
         FavHotels fh = new FavHotels();
         fh.username = username;
 
-        String favHotels = DBQueriesHandler.get().getFavHotels(username);
-        if (favHotels == null)
-            return fh;
-
-        Collections.addAll(fh.set, favHotels.split(","));
+        for (Long hotelId : DBQueriesHandler.get().getFavHotels(username))
+            fh.set.add(Long.toString(hotelId));
         return fh;
     }
 
@@ -47,16 +44,11 @@ public class FavHotels {
      * @return boolean new status of hotel with hotelId is favorited / not favorited
      */
     public boolean toggleFavStatus(String hotelId) {
-        boolean flag;
-        if (set.contains(hotelId)) {
-            set.remove(hotelId);
-            flag = false;
-        } else {
+        boolean flag = DBQueriesHandler.get().toggleFavHotel(username, Long.parseLong(hotelId));
+        if (flag)
             set.add(hotelId);
-            flag = true;
-        }
-
-        DBQueriesHandler.get().setFavHotels(username, this.toString());
+        else
+            set.remove(hotelId);
         return flag;
     }
 
@@ -74,6 +66,7 @@ public class FavHotels {
      * @return boolean success of DB clear query
      */
     public boolean clear() {
+        set.clear();
         return DBQueriesHandler.get().clearFavHotels(username);
     }
 
@@ -0,0 +1,209 @@
+package hotelapp;
+
+import com.google.gson.JsonObject;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Singleton read-through cache of hotels table rows, keyed by hotel id and by link.
+ * Misses are loaded from the DB; lookups of hotels that don't exist are cached as negative
+ * entries (with a shorter TTL) so bad ids / links don't reach the DB every time either.
+ * Whatever writes the hotels table must call invalidate / invalidateAll.
+ *
+ * Settings (database.properties):
+ *   hotelCache.maxSize        - entries per key (id / link) before least recently used are evicted
+ *   hotelCache.ttlMs          - lifetime of a cached row
+ *   hotelCache.negativeTtlMs  - lifetime of a cached "no such hotel"
+ */
+public class HotelCache {
+    private static final HotelCache instance = new HotelCache();
+
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    // access-ordered, guarded by their own monitors
+    private final Lru<Long> byId;
+    private final Lru<String> byLink;
+    // bumped by every invalidation, so a load that raced one is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private HotelCache() {
+        DBConfig config = DBConfig.get();
+        int maxSize = Math.max(1, config.getInt("hotelCache.maxSize", 10000));
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("hotelCache.ttlMs", 600000));
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("hotelCache.negativeTtlMs", 30000));
+        this.byId = new Lru<>(maxSize);
+        this.byLink = new Lru<>(maxSize);
+    }
+    public static HotelCache get() { return instance; }
+
+    /**
+     * Gets the hotel with hotelId, from the cache or else the DB
+     * @param hotelId long hotel id
+     * @return HotelRow, or null if there is no such hotel (or the DB lookup failed)
+     */
+    public HotelRow get(long hotelId) {
+        Entry e = lookup(byId, hotelId);
+        if (e != null) return e.row;
+
+        long gen = generation.get();
+        try {
+            HotelRow row = DBQueriesHandler.get().loadHotel(hotelId);
+            store(byId, hotelId, row, gen);
+            if (row != null && row.link() != null)
+                store(byLink, row.link(), row, gen);
+            return row;
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            loadFailures.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Gets the hotel with link, from the cache or else the DB
+     * @param link String hotel link
+     * @return HotelRow, or null if there is no such hotel (or the DB lookup failed)
+     */
+    public HotelRow getByLink(String link) {
+        Entry e = lookup(byLink, link);
+        if (e != null) return e.row;
+
+        long gen = generation.get();
+        try {
+            HotelRow row = DBQueriesHandler.get().loadHotelByLink(link);
+            store(byLink, link, row, gen);
+            if (row != null)
+                store(byId, row.hotelId(), row, gen);
+            return row;
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            loadFailures.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Drops any cached row for hotelId, and any link entry pointing at it;
+     * call after inserting, updating or deleting that hotel
+     * @param hotelId long hotel id
+     */
+    public void invalidate(long hotelId) {
+        generation.incrementAndGet();
+        synchronized (byId) {
+            byId.remove(hotelId);
+        }
+        synchronized (byLink) {
+            // negative link entries may be for this hotel's new link
+            byLink.values().removeIf(e -> e.row == null || e.row.hotelId() == hotelId);
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * Drops every cached entry; call after bulk changes to the hotels table
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        synchronized (byId) {
+            byId.clear();
+        }
+        synchronized (byLink) {
+            byLink.clear();
+        }
+        invalidations.increment();
+    }
+
+    private <K> Entry lookup(Lru<K> map, K key) {
+        synchronized (map) {
+            Entry e = map.get(key);
+            if (e == null) {
+                misses.increment();
+                return null;
+            }
+            if (System.nanoTime() - e.expiresAt > 0) {
+                map.remove(key);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+
+            if (e.row == null) negativeHits.increment();
+            else hits.increment();
+            return e;
+        }
+    }
+
+    private <K> void store(Lru<K> map, K key, HotelRow row, long gen) {
+        Entry e = new Entry(row, System.nanoTime() + ((row == null) ? negativeTtlNanos : ttlNanos));
+        synchronized (map) {
+            if (generation.get() == gen)
+                map.put(key, e);
+        }
+    }
+
+    /**
+     * Snapshot of hotel cache metrics
+     * @return JsonObject of hotel cache metrics
+     */
+    public JsonObject getMetrics() {
+        long h = hits.sum() + negativeHits.sum();
+        long m = misses.sum();
+
+        JsonObject jo = new JsonObject();
+        synchronized (byId) {
+            jo.addProperty("sizeById", byId.size());
+            jo.addProperty("evictionsById", byId.evictions);
+        }
+        synchronized (byLink) {
+            jo.addProperty("sizeByLink", byLink.size());
+            jo.addProperty("evictionsByLink", byLink.evictions);
+        }
+        jo.addProperty("hits", hits.sum());
+        jo.addProperty("negativeHits", negativeHits.sum());
+        jo.addProperty("misses", m);
+        jo.addProperty("expirations", expirations.sum());
+        jo.addProperty("loadFailures", loadFailures.sum());
+        jo.addProperty("invalidations", invalidations.sum());
+        jo.addProperty("hitRate", (h + m == 0) ? 0.0 : (double) h / (h + m));
+        return jo;
+    }
+
+    /**
+     * Cached row, or null row for a hotel known not to exist
+     */
+    private record Entry(HotelRow row, long expiresAt) {}
+
+    /**
+     * Access-ordered map that evicts its least recently used entry past maxSize
+     */
+    private static class Lru<K> extends LinkedHashMap<K, Entry> {
+        private final int maxSize;
+        private long evictions;
+
+        Lru(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+            if (size() <= maxSize) return false;
+            evictions++;
+            return true;
+        }
+    }
+}
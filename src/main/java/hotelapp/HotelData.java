@@ -0,0 +1,29 @@
+package hotelapp;
+
+import hotelreviewsdata.HotelSearch;
+
+
+/**
+ * Singleton holder of the HotelSearch loaded from the hotel and review files. Seeding the tables,
+ * the schema migrations that read the files, LiveIngestion and ReviewSearch all share it, so the
+ * files are read at most once per run; it is loaded by whichever of them needs it first.
+ * LiveIngestion's watcher merges into it, so it stays current for ReviewSearch too
+ */
+public class HotelData {
+    private static final HotelData instance = new HotelData();
+
+    private HotelSearch hs;
+
+    private HotelData() {}
+    public static HotelData get() { return instance; }
+
+    /**
+     * The shared HotelSearch, loading the files on the first call
+     * @return HotelSearch
+     */
+    public synchronized HotelSearch hotelSearch() {
+        if (hs == null)
+            hs = new HotelSearch().init();
+        return hs;
+    }
+}
@@ -1,13 +1,13 @@
 package hotelapp;
 
-import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.commons.text.StringEscapeUtils;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.List;
 
 
 /**
@@ -15,7 +15,7 @@ import java.io.PrintWriter;
  */
 public class HotelDataServlet extends HttpServlet {
     /**
-     * GET HTTP request returns a JsonObject with hotel(s)
+     * GET HTTP request returns a JsonObject with hotel(s), streamed to the client
      */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
@@ -28,34 +28,56 @@ public class HotelDataServlet extends HttpServlet {
             return;
 
         String username = (String) req.getSession().getAttribute("username");
-        res.setContentType("text/html");
 
-        JsonObject jo = new JsonObject();
-        PrintWriter out = res.getWriter();
         String by, queryString = null;
+        List<HotelRow> hotels;
         if ((by = StringEscapeUtils.escapeHtml4(req.getParameter("by"))) == null || by.isBlank() || (by.compareTo("name") != 0 && by.compareTo("id") != 0)) {
-            res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            jo.addProperty("Error", "Insufficient request information");
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, "Insufficient request information");
         } else if (by.compareTo("name") == 0 &&
-                ((queryString = StringEscapeUtils.escapeHtml4(req.getParameter("query"))) == null || queryString.isBlank() || !DBQueriesHandler.get().checkHotelName(queryString))) {
-            res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            jo.addProperty("Error", String.format("No hotel found with name fragment %s", (queryString == null || queryString.isBlank()) ? "[missing]" : "'" + queryString + "'"));
+                ((queryString = StringEscapeUtils.escapeHtml4(req.getParameter("query"))) == null || queryString.isBlank())) {
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, "No hotel found with name fragment [missing]");
         } else if (by.compareTo("id") == 0 &&
                 ((queryString = StringEscapeUtils.escapeHtml4(req.getParameter("query"))) == null || queryString.isBlank() || !DBQueriesHandler.get().checkHotelId(queryString))) {
-            res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            jo.addProperty("Error", String.format("No hotel found with id %s", (queryString == null || queryString.isBlank()) ? "[missing]" : "'" + queryString + "'"));
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST,
+                    String.format("No hotel found with id %s", (queryString == null || queryString.isBlank()) ? "[missing]" : "'" + queryString + "'"));
         } else if (by.compareTo("name") == 0) {
-            // serviceable request, return hotels selected by name fragment
-            jo.add("hotels", DBQueriesHandler.get().searchHotels(queryString, username));
+            // return hotels selected by name fragment, 400 if none match
+            if ((hotels = DBQueriesHandler.get().searchHotels(queryString, parseLimit(req.getParameter("limit")))).isEmpty())
+                JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, String.format("No hotel found with name fragment '%s'", queryString));
+            else
+                writeHotels(res, hotels, username);
         } else {
             // serviceable request, return hotel selected by id
-            JsonArray ja = new JsonArray();
-            ja.add(DBQueriesHandler.get().searchHotel(Long.parseLong(queryString), username));
-            jo.add("hotels", ja);
-            System.out.println(jo);
+            HotelRow h = DBQueriesHandler.get().searchHotel(Long.parseLong(queryString));
+            writeHotels(res, (h == null) ? List.of() : List.of(h), username);
         }
+    }
+
+    /**
+     * Streams {"hotels": [...]} to the client, one hotel at a time
+     */
+    private void writeHotels(HttpServletResponse res, List<HotelRow> hotels, String username) throws IOException {
+        FavHotels fh = FavHotels.of(username);
+        try (JsonWriter out = JsonResponse.open(res, HttpServletResponse.SC_OK)) {
+            out.beginObject();
+            out.name("hotels").beginArray();
+            for (HotelRow h : hotels)
+                h.writeTo(out, fh.contains(Long.toString(h.hotelId())));
+            out.endArray();
+            out.endObject();
+        }
+    }
+
+    /**
+     * Parses the optional "limit" parameter of a name search, capped at hotelIndex.searchLimit
+     * @param limitString String limit parameter, may be null
+     * @return int max hotels to return
+     */
+    private int parseLimit(String limitString) {
+        int max = HotelNameIndex.get().getSearchLimit();
+        if (limitString == null || !limitString.matches("^\\d{1,9}$")) return max;
 
-        out.println(jo);
-        out.flush();
+        int limit = Integer.parseInt(limitString);
+        return (limit == 0) ? max : Math.min(limit, max);
     }
 }
@@ -0,0 +1,207 @@
+package hotelapp;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Singleton in-memory trigram index over hotel names, for case-insensitive substring search
+ * without a LIKE '%frag%' table scan. The index is immutable once built; rebuild() builds a new one
+ * from the hotels table and swaps it in atomically, so searches never see a half-built index.
+ *
+ * Settings (database.properties):
+ *   hotelIndex.searchLimit  - default max hotels returned by a name search
+ */
+public class HotelNameIndex {
+    private static final HotelNameIndex instance = new HotelNameIndex();
+
+    private final int searchLimit;
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+    private HotelNameIndex() {
+        this.searchLimit = Math.max(1, DBConfig.get().getInt("hotelIndex.searchLimit", 100));
+    }
+    public static HotelNameIndex get() { return instance; }
+
+    public int getSearchLimit() {
+        return searchLimit;
+    }
+
+    /**
+     * Rebuilds the index from the hotels table and swaps it in; call whenever hotels change.
+     * If the DB read fails the current index is kept.
+     */
+    public void rebuild() {
+        try {
+            long start = System.nanoTime();
+            Snapshot s = new Snapshot(DBQueriesHandler.get().loadAllHotels());
+            current.set(s);
+            System.out.printf("Indexed %d hotel names (%d trigrams) in %.1fms%n",
+                    s.rows.length, s.postings.size(), (System.nanoTime() - start) / 1e6);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reloads one hotel's row, such as after its rating changed, and swaps in an index holding it.
+     * Names are assumed unchanged, so the trigram postings are shared with the current index;
+     * if the hotel is not indexed, or the DB read fails, the current index is kept.
+     * @param hotelId long hotel id
+     */
+    public void refresh(long hotelId) {
+        Snapshot s = current.get();
+        if (s == null || s.position(hotelId) < 0) return;
+
+        HotelRow row;
+        try {
+            row = DBQueriesHandler.get().loadHotel(hotelId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (row == null) return;
+
+        // retry if another refresh or a rebuild swapped the index meanwhile, so neither change is lost
+        while (true) {
+            s = current.get();
+            int pos = s.position(hotelId);
+            if (pos < 0 || current.compareAndSet(s, s.withRow(pos, row))) return;
+        }
+    }
+
+    private Snapshot snapshot() {
+        Snapshot s = current.get();
+        if (s == null) {
+            synchronized (this) {
+                if ((s = current.get()) == null) {
+                    rebuild();
+                    s = current.get();
+                }
+            }
+        }
+        return (s == null) ? Snapshot.EMPTY : s;
+    }
+
+    /**
+     * Gets every hotel, in hotel id order
+     * @return List of HotelRows
+     */
+    public List<HotelRow> all() {
+        return Arrays.asList(snapshot().rows);
+    }
+
+    /**
+     * Checks if any hotel name contains fragment (case-insensitive)
+     * @param fragment String hotel name fragment
+     * @return boolean some hotel name matches
+     */
+    public boolean contains(String fragment) {
+        return !search(fragment, 1).isEmpty();
+    }
+
+    /**
+     * Finds hotels whose name contains fragment (case-insensitive). Names starting with the fragment
+     * rank first, then earlier matches, then by name.
+     * @param fragment String hotel name fragment
+     * @param limit int max hotels to return
+     * @return List of matching HotelRows, best first
+     */
+    public List<HotelRow> search(String fragment, int limit) {
+        Snapshot s = snapshot();
+        String q = fragment.toLowerCase(Locale.ROOT);
+        if (q.isEmpty() || limit <= 0) return List.of();
+
+        // candidates: hotels with the query's rarest trigram, or every hotel for short queries
+        int[] candidates = null;
+        if (q.length() >= 3) {
+            for (int i = 0; i + 3 <= q.length(); i++) {
+                int[] posting = s.postings.get(q.substring(i, i + 3));
+                if (posting == null) return List.of();
+                if (candidates == null || posting.length < candidates.length)
+                    candidates = posting;
+            }
+        }
+
+        List<int[]> matches = new ArrayList<>(); // {row, match position}
+        int n = (candidates == null) ? s.rows.length : candidates.length;
+        for (int i = 0; i < n; i++) {
+            int row = (candidates == null) ? i : candidates[i];
+            int pos = s.lowerNames[row].indexOf(q);
+            if (pos >= 0)
+                matches.add(new int[] {row, pos});
+        }
+
+        matches.sort(Comparator.<int[]>comparingInt(m -> m[1])
+                .thenComparing(m -> s.lowerNames[m[0]]));
+
+        List<HotelRow> result = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++)
+            result.add(s.rows[matches.get(i)[0]]);
+        return result;
+    }
+
+    /**
+     * Immutable index over one read of the hotels table
+     */
+    private static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(List.of());
+
+        final HotelRow[] rows;
+        final String[] lowerNames;
+        // trigram -> ascending row positions of names containing it
+        final Map<String, int[]> postings;
+
+        Snapshot(List<HotelRow> hotels) {
+            rows = hotels.toArray(new HotelRow[0]);
+            lowerNames = new String[rows.length];
+
+            Map<String, List<Integer>> lists = new HashMap<>();
+            for (int i = 0; i < rows.length; i++) {
+                String name = (rows[i].name() == null) ? "" : rows[i].name().toLowerCase(Locale.ROOT);
+                lowerNames[i] = name;
+
+                Set<String> seen = new HashSet<>();
+                for (int j = 0; j + 3 <= name.length(); j++) {
+                    String tri = name.substring(j, j + 3);
+                    if (seen.add(tri))
+                        lists.computeIfAbsent(tri, k -> new ArrayList<>()).add(i);
+                }
+            }
+
+            postings = new HashMap<>(lists.size() * 4 / 3 + 1);
+            for (Map.Entry<String, List<Integer>> e : lists.entrySet())
+                postings.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private Snapshot(HotelRow[] rows, String[] lowerNames, Map<String, int[]> postings) {
+            this.rows = rows;
+            this.lowerNames = lowerNames;
+            this.postings = postings;
+        }
+
+        /**
+         * Finds a hotel's row; rows are in hotel id order
+         * @param hotelId long hotel id
+         * @return int row position, or negative if absent
+         */
+        int position(long hotelId) {
+            int lo = 0, hi = rows.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                long id = rows[mid].hotelId();
+                if (id < hotelId) lo = mid + 1;
+                else if (id > hotelId) hi = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+
+        Snapshot withRow(int pos, HotelRow row) {
+            HotelRow[] copy = rows.clone();
+            copy[pos] = row;
+            return new Snapshot(copy, lowerNames, postings);
+        }
+    }
+}
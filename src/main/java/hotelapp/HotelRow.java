@@ -0,0 +1,51 @@
+package hotelapp;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+
+/**
+ * Record for one row of the SQL hotels table
+ * @param hotelId long hotel id
+ * @param name String hotel name
+ * @param address String hotel address
+ * @param lat float latitude
+ * @param lng float longitude
+ * @param rating float average rating
+ * @param link String hotel link
+ */
+public record HotelRow(long hotelId, String name, String address, float lat, float lng, float rating, String link) {
+
+    /**
+     * Reads the current row of a "SELECT * FROM hotels" result set
+     * @param rs ResultSet positioned on a hotels row
+     * @return HotelRow of the current row
+     * @throws SQLException on read failure
+     */
+    public static HotelRow of(ResultSet rs) throws SQLException {
+        return new HotelRow(rs.getLong(1), rs.getString(2), rs.getString(3),
+                rs.getFloat(4), rs.getFloat(5), rs.getFloat(6), rs.getString(7));
+    }
+
+    /**
+     * Writes this hotel as a JSON object, in the /hoteldata format
+     * @param out JsonWriter to write to
+     * @param fav boolean hotel is favorited by the requesting user
+     * @throws IOException on write failure
+     */
+    public void writeTo(JsonWriter out, boolean fav) throws IOException {
+        out.beginObject();
+        out.name("hotelid").value(hotelId);
+        out.name("hotelname").value(name);
+        out.name("address").value(address);
+        out.name("lat").value(lat);
+        out.name("lng").value(lng);
+        out.name("rating").value(rating);
+        out.name("link").value(link);
+        out.name("fav").value(fav);
+        out.endObject();
+    }
+}
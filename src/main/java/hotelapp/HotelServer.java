@@ -15,6 +15,14 @@ public class HotelServer {
 
     public static void main(String[] args) {
         DBTablesHandler.get().checkTables();
+        HotelNameIndex.get().rebuild();
+        LiveIngestion.get().start();
+        ReviewSearch.get().start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            LiveIngestion.get().shutdown();
+            ClickCounter.get().shutdown();
+            DBConnectionPool.get().close();
+        }));
 
         ServletContextHandler handler = new ServletContextHandler(ServletContextHandler.SESSIONS);
         handler.addServlet(AuthServlet.class, "/auth");
@@ -33,7 +41,10 @@ public class HotelServer {
         handler.addServlet(ClickServlet.class, "/click");
         handler.addServlet(ReviewDataServlet.class, "/reviewdata");
         handler.addServlet(HotelDataServlet.class, "/hoteldata");
+        handler.addServlet(ReviewQueryServlet.class, "/reviewquery");
+        handler.addServlet(ReviewSearchServlet.class, "/reviewsearch");
         handler.addServlet(FavHotelsServlet.class, "/favsdata");
+        handler.addServlet(MetricsServlet.class, "/metrics");
 
         VelocityEngine vel = new VelocityEngine();
         vel.init();
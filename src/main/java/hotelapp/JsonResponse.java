@@ -0,0 +1,53 @@
+package hotelapp;
+
+import com.google.gson.stream.JsonWriter;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Helpers for writing a JSON response body with a streaming JsonWriter over a fixed-size buffer,
+ * so large results go to the client as they are produced instead of being built up as a JsonObject
+ * and then a String first
+ */
+public class JsonResponse {
+    /** Bytes buffered before a chunk is sent to the client */
+    public static final int BUFFER_SIZE = 8192;
+
+    private JsonResponse() {}
+
+    /**
+     * Sets status and application/json headers and opens a writer on the response body;
+     * the caller must close it (which flushes the last chunk)
+     * @param res HttpServletResponse to write to
+     * @param status int HTTP status code
+     * @return JsonWriter over the response body
+     * @throws IOException if the response output can't be opened
+     */
+    public static JsonWriter open(HttpServletResponse res, int status) throws IOException {
+        res.setStatus(status);
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        res.setBufferSize(BUFFER_SIZE);
+
+        return new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(res.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    /**
+     * Writes a {"Error": message} response
+     * @param res HttpServletResponse to write to
+     * @param status int HTTP status code
+     * @param message String error message
+     * @throws IOException on write failure
+     */
+    public static void error(HttpServletResponse res, int status, String message) throws IOException {
+        try (JsonWriter out = open(res, status)) {
+            out.beginObject().name("Error").value(message).endObject();
+        }
+    }
+}
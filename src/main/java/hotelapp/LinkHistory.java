@@ -8,7 +8,8 @@ import java.util.Map;
 
 
 /**
- * (De)Serialization of link_history TEXT field in SQL users table
+ * A user's link click history, backed by their rows in the SQL user_link_clicks table
+ * plus any clicks still pending in the write-behind ClickCounter
  */
 public class LinkHistory {
     private String username;
@@ -18,15 +19,7 @@ public class LinkHistory {
     public static LinkHistory of(String username) {
         LinkHistory lh = new LinkHistory();
         lh.username = username;
-        String fullHistory = DBQueriesHandler.get().getLinkHistory(username);
-        if (fullHistory == null)
-            return lh;
-
-        String[] tokens = fullHistory.split(",");
-        for (String t : tokens) {
-            int splitIdx = t.indexOf(":");
-            lh.map.put(t.substring(0, splitIdx), Integer.parseInt(t.substring(splitIdx+1)));
-        }
+        lh.map.putAll(ClickCounter.get().getLinkClicks(username));
         return lh;
     }
 
@@ -41,11 +34,11 @@ public class LinkHistory {
     /**
      * Increments link click history of link
      * @param link String link clicked
-     * @return boolean success of DB update query
+     * @return boolean click was accepted by the ClickCounter (written to DB on its next flush)
      */
     public boolean addClick(String link) {
         map.compute(link, (k, v) -> (v == null) ? 1 : v+1);
-        return DBQueriesHandler.get().setLinkHistory(username, this.toString());
+        return ClickCounter.get().record(username, link);
     }
 
     /**
@@ -54,7 +47,7 @@ public class LinkHistory {
      * @return boolean success of DB clear query
      */
     public static boolean clear(String username) {
-        return DBQueriesHandler.get().clearLinkHistory(username);
+        return ClickCounter.get().clear(username);
     }
 
     /**
@@ -62,7 +55,8 @@ public class LinkHistory {
      * @return boolean success of DB clear query
      */
     public boolean clear() {
-        return DBQueriesHandler.get().clearLinkHistory(username);
+        map.clear();
+        return ClickCounter.get().clear(username);
     }
 
     /**
@@ -0,0 +1,158 @@
+package hotelapp;
+
+import com.google.gson.JsonObject;
+import hotelreviewsdata.HotelSearch;
+import hotelreviewsdata.Review;
+import hotelreviewsdata.ReviewId;
+import hotelreviewsdata.ReviewsDirWatcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Singleton that keeps the reviews table in step with the reviews directory while the server runs.
+ * It takes the shared HotelSearch (HotelData), upserts the reviews the DB is missing or stores differently
+ * (files that changed while the server was down), then has a ReviewsDirWatcher merge reviews from new or
+ * changed files into its maps; each file's new and edited reviews are upserted to the DB in chunks, one transaction per chunk,
+ * together with a recount of the affected hotels' review and rating counters.
+ *
+ * Settings (database.properties):
+ *   watcher.enabled     - watch the reviews directory at all
+ *   watcher.rescanMs    - time between full rescans, the fallback for missed file events
+ *   watcher.settleMs    - time a file must hold still before it is read
+ *   loader.chunkSize    - rows per upsert batch / transaction
+ */
+public class LiveIngestion {
+    private static final LiveIngestion instance = new LiveIngestion();
+
+    private final boolean enabled;
+    private final long rescanIntervalMs;
+    private final long settleMs;
+    private final int chunkSize;
+
+    private volatile HotelSearch hs;
+    private volatile ReviewsDirWatcher watcher;
+
+    private final AtomicLong reconciled = new AtomicLong();
+    private final AtomicLong rowsUpserted = new AtomicLong();
+    private final AtomicLong rowsFailed = new AtomicLong();
+    private final AtomicLong lastSyncMs = new AtomicLong();
+    private final AtomicLong maxSyncMs = new AtomicLong();
+
+    private LiveIngestion() {
+        DBConfig config = DBConfig.get();
+        this.enabled = config.getBoolean("watcher.enabled", false);
+        this.rescanIntervalMs = Math.max(1000, config.getLong("watcher.rescanMs", 30000));
+        this.settleMs = Math.max(0, config.getLong("watcher.settleMs", 1000));
+        this.chunkSize = Math.max(1, config.getInt("loader.chunkSize", 1000));
+    }
+
+    public static LiveIngestion get() { return instance; }
+
+    /**
+     * Builds the live maps and starts watching the reviews directory, if watcher.enabled is set
+     */
+    public synchronized void start() {
+        if (!enabled || watcher != null) return;
+
+        hs = HotelData.get().hotelSearch();
+        reconcile();
+        try {
+            watcher = hs.watch(rescanIntervalMs, settleMs, this::sync);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Could not watch reviews directory, new review files will not be picked up");
+        }
+    }
+
+    /**
+     * Upserts the reviews the files hold that the DB is missing or stores differently (another rating, or
+     * another title or body length), such as ones from files added or edited while the server was down.
+     * Reviews only in the DB, such as ones written through the site, are left alone; a file review edited or
+     * deleted through the site is stored again as the file has it, since the files own their reviews
+     */
+    private void reconcile() {
+        long start = System.nanoTime();
+        Map<ReviewId, DBQueriesHandler.ReviewSummary> stored = DBQueriesHandler.get().getReviewSummaries();
+        if (stored == null) {
+            System.out.println("Could not read stored reviews, skipping reconciliation with the review files");
+            return;
+        }
+
+        List<Review> changed = new ArrayList<>();
+        for (long hotelId : hs.returnAllHotelIds()) {
+            List<Review> reviews = hs.returnReviews(hotelId);
+            if (reviews == null) continue;
+
+            for (Review r : reviews) {
+                if (!DBQueriesHandler.ReviewSummary.of(r).equals(stored.get(r.reviewId())))
+                    changed.add(r);
+            }
+        }
+
+        if (!changed.isEmpty())
+            sync(changed);
+        reconciled.set(changed.size());
+        System.out.printf("Reconciled review files with the DB: %d reviews upserted in %d ms%n",
+                changed.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * The HotelSearch whose maps the watcher merges into
+     * @return HotelSearch, or null if live ingestion is disabled or not started
+     */
+    public HotelSearch hotelSearch() {
+        return hs;
+    }
+
+    /**
+     * Stops watching; a file being merged is finished first
+     */
+    public synchronized void shutdown() {
+        if (watcher != null)
+            watcher.stop();
+    }
+
+    /**
+     * Upserts one file's new and edited reviews; upsertReviews recounts the affected hotels and drops their cached rows
+     */
+    private void sync(List<Review> reviews) {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < reviews.size(); i += chunkSize) {
+            List<Review> chunk = reviews.subList(i, Math.min(reviews.size(), i + chunkSize));
+            if (DBQueriesHandler.get().upsertReviews(chunk))
+                rowsUpserted.addAndGet(chunk.size());
+            else
+                rowsFailed.addAndGet(chunk.size());
+        }
+
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        lastSyncMs.set(ms);
+        maxSyncMs.accumulateAndGet(ms, Math::max);
+    }
+
+    /**
+     * Snapshot of live ingestion metrics: the watcher's file counters and lag, reviews upserted by
+     * the startup reconciliation, plus rows written to the DB and how long each file's DB sync took
+     * @return JsonObject of live ingestion metrics
+     */
+    public JsonObject getMetrics() {
+        JsonObject jo = new JsonObject();
+        jo.addProperty("enabled", enabled);
+
+        ReviewsDirWatcher w = watcher;
+        if (w != null)
+            w.getMetrics().forEach(jo::addProperty);
+        jo.addProperty("reconciled", reconciled.get());
+        jo.addProperty("rowsUpserted", rowsUpserted.get());
+        jo.addProperty("rowsFailed", rowsFailed.get());
+        jo.addProperty("lastSyncMs", lastSyncMs.get());
+        jo.addProperty("maxSyncMs", maxSyncMs.get());
+        return jo;
+    }
+}
@@ -0,0 +1,43 @@
+package hotelapp;
+
+import com.google.gson.JsonObject;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+
+/**
+ * Servlet exposing runtime metrics (connection pool, caches, ...) as a JsonObject,
+ * for sizing the server under load
+ */
+public class MetricsServlet extends HttpServlet {
+    /**
+     * GET HTTP request returns a JsonObject with one member per instrumented component; signed-in users only
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        System.out.println("metrics get @ " + req.getRequestURI());
+
+        if (req.getSession(false) == null) {
+            res.sendRedirect("/auth");
+            return;
+        }
+
+        res.setContentType("application/json");
+        res.setStatus(HttpServletResponse.SC_OK);
+
+        JsonObject jo = new JsonObject();
+        jo.add("pool", DBConnectionPool.get().getMetrics());
+        jo.add("clicks", ClickCounter.get().getMetrics());
+        jo.add("hotelCache", HotelCache.get().getMetrics());
+        jo.add("ingestion", LiveIngestion.get().getMetrics());
+        jo.add("search", ReviewSearch.get().getMetrics());
+
+        PrintWriter out = res.getWriter();
+        out.println(jo);
+        out.flush();
+    }
+}
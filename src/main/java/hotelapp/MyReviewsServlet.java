@@ -1,5 +1,6 @@
 package hotelapp;
 
+import hotelreviewsdata.ReviewId;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -30,18 +31,21 @@ public class MyReviewsServlet extends HttpServlet {
         if (query != null && !query.isBlank()) uri = uri + "?" + query;
         System.out.println("myReviews get @ " + uri);
 
-        String reviewId;
+        String reviewIdString;
         if (req.getSession(false) == null)
             res.sendRedirect("/auth");
 
-        else if ((reviewId = StringEscapeUtils.escapeHtml4(req.getParameter("id"))) != null && !reviewId.isBlank()) {
+        else if ((reviewIdString = StringEscapeUtils.escapeHtml4(req.getParameter("id"))) != null && !reviewIdString.isBlank()) {
+            // ids that are not 24 hex chars cannot match a review
+            ReviewId reviewId = ReviewId.tryParse(reviewIdString);
             res.setContentType("text/html");
 
             VelocityContext vc = new VelocityContext();
             vc.put("username", req.getSession(false).getAttribute("username"));
             vc.put("last_login", req.getSession(false).getAttribute("last_login"));
 
-            List<String> review = DBQueriesHandler.get().findMyReview((String) req.getSession(false).getAttribute("username"), reviewId);
+            List<String> review = (reviewId == null) ? List.of() :
+                    DBQueriesHandler.get().findMyReview((String) req.getSession(false).getAttribute("username"), reviewId);
             if (review.size() > 0) {
                 String type;
                 if ((type = StringEscapeUtils.escapeHtml4(req.getParameter("type"))) != null && type.compareTo("delete") == 0) {
@@ -55,7 +59,7 @@ public class MyReviewsServlet extends HttpServlet {
                 vc.put("reviewId", reviewId);
             } else {
                 res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                vc.put("rerr", reviewId);
+                vc.put("rerr", reviewIdString);
             }
 
             Template tpl = ((VelocityEngine) req.getServletContext().getAttribute("templateEngine")).getTemplate("static/MyReviews.html");
@@ -103,22 +107,36 @@ public class MyReviewsServlet extends HttpServlet {
                 if ((hotelIdString = StringEscapeUtils.escapeHtml4(req.getParameter("id"))) != null
                         && DBQueriesHandler.get().checkHotelId(hotelIdString)) {
                     Random r = new Random();
-                    String reviewId = String.format("%08x%08x%08x", r.nextInt(), r.nextInt(), r.nextInt());
+                    ReviewId reviewId = ReviewId.random(r);
                     long hotelId = Long.parseLong(hotelIdString);
                     String username = (String) req.getSession(false).getAttribute("username");
                     String title = StringEscapeUtils.escapeHtml4(req.getParameter("title"));
                     String text = StringEscapeUtils.escapeHtml4(req.getParameter("text"));
-                    DBQueriesHandler.get().insertReview(reviewId, hotelId, username, title, text);
+                    Integer rating = parseRating(req.getParameter("rating"));
+                    if (rating != null)
+                        DBQueriesHandler.get().insertReview(reviewId, hotelId, username, title, text, rating);
                 }
             } else if (type.compareTo("update") == 0) {
                 String title = StringEscapeUtils.escapeHtml4(req.getParameter("title"));
                 String text = StringEscapeUtils.escapeHtml4(req.getParameter("text"));
                 String username = (String) req.getSession(false).getAttribute("username");
-                String reviewId = StringEscapeUtils.escapeHtml4(req.getParameter("id"));
-                DBQueriesHandler.get().updateReview(title, text, username, reviewId);
+                ReviewId reviewId = ReviewId.tryParse(req.getParameter("id"));
+                Integer rating = parseRating(req.getParameter("rating"));
+                if (reviewId != null)
+                    DBQueriesHandler.get().updateReview(title, text, rating, username, reviewId);
             }
         }
 
         res.sendRedirect("/myReviews");
     }
+
+    /**
+     * Parses a star rating request parameter
+     * @param ratingString String rating parameter, may be null
+     * @return Integer rating of 1-5 stars, or null if absent or invalid
+     */
+    private static Integer parseRating(String ratingString) {
+        if (ratingString == null || !ratingString.matches("^[1-5]$")) return null;
+        return Integer.parseInt(ratingString);
+    }
 }
@@ -15,9 +15,7 @@ public class PreparedStatements {
                     "username VARCHAR(32) NOT NULL UNIQUE, " +
                     "password CHAR(64) NOT NULL, " +
                     "salt CHAR(32) NOT NULL, " +
-                    "last_login DATETIME, " +
-                    "link_history TEXT, " +
-                    "fav_hotels TEXT);";
+                    "last_login DATETIME);";
 
     /** SQL Get last_login by username */
     public static final String GET_LAST_LOGIN =
@@ -27,33 +25,58 @@ public class PreparedStatements {
     public static final String SET_LAST_LOGIN =
             "UPDATE users SET last_login = NOW() WHERE username = ?;";
 
-    /** SQL Get link_history by username */
-    public static final String GET_LINK_HISTORY =
-            "SELECT link_history FROM users WHERE username = ?;";
+    /** SQL Create user_link_clicks table; one row per (user, link) with its click count */
+    public static final String CREATE_USER_LINK_CLICKS_TABLE =
+            "CREATE TABLE IF NOT EXISTS user_link_clicks (" +
+                    "userid INTEGER NOT NULL, " +
+                    "link VARCHAR(255) NOT NULL, " +
+                    "count INTEGER UNSIGNED NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (userid, link), " +
+                    "FOREIGN KEY (userid) REFERENCES users (userid) ON DELETE CASCADE);";
 
-    /** SQL Set link_history by username */
-    public static final String SET_LINK_HISTORY =
-            "UPDATE users SET link_history = ? WHERE username = ?;";
+    /** SQL Get link click counts by username */
+    public static final String GET_LINK_CLICKS =
+            "SELECT c.link, c.count FROM user_link_clicks c " +
+                    "JOIN users u ON u.userid = c.userid WHERE u.username = ?;";
 
-    /** SQL Clear link_history by username */
-    public static final String CLEAR_LINK_HISTORY =
-            "UPDATE users SET link_history = NULL WHERE username = ?;";
+    /** SQL Add clicks to a link by username; params link, count, username, count */
+    public static final String ADD_LINK_CLICKS =
+            "INSERT INTO user_link_clicks (userid, link, count) " +
+                    "SELECT userid, ?, ? FROM users WHERE username = ? " +
+                    "ON DUPLICATE KEY UPDATE count = count + ?;";
 
-    /** SQL Check if link in DB */
-    public static final String CHECK_LINK =
-            "SELECT hotelid FROM hotels WHERE link = ?;";
+    /** SQL Clear link clicks by username */
+    public static final String CLEAR_LINK_CLICKS =
+            "DELETE c FROM user_link_clicks c " +
+                    "JOIN users u ON u.userid = c.userid WHERE u.username = ?;";
 
-    /** SQL Get fav_hotels by username */
+    /** SQL Create user_fav_hotels table; one row per (user, favorited hotel) */
+    public static final String CREATE_USER_FAV_HOTELS_TABLE =
+            "CREATE TABLE IF NOT EXISTS user_fav_hotels (" +
+                    "userid INTEGER NOT NULL, " +
+                    "hotelid MEDIUMINT UNSIGNED NOT NULL, " +
+                    "PRIMARY KEY (userid, hotelid), " +
+                    "FOREIGN KEY (userid) REFERENCES users (userid) ON DELETE CASCADE);";
+
+    /** SQL Get favorited hotel ids by username */
     public static final String GET_FAV_HOTELS =
-            "SELECT fav_hotels FROM users WHERE username = ?;";
+            "SELECT f.hotelid FROM user_fav_hotels f " +
+                    "JOIN users u ON u.userid = f.userid WHERE u.username = ?;";
 
-    /** SQL Set fav_hotels by username */
-    public static final String SET_FAV_HOTELS =
-            "UPDATE users SET fav_hotels = ? WHERE username = ?;";
+    /** SQL Favorite a hotel by username; params hotelid, username */
+    public static final String ADD_FAV_HOTEL =
+            "INSERT IGNORE INTO user_fav_hotels (userid, hotelid) " +
+                    "SELECT userid, ? FROM users WHERE username = ?;";
 
-    /** SQL Clear fav_hotels by username */
+    /** SQL Unfavorite a hotel by username; params username, hotelid */
+    public static final String REMOVE_FAV_HOTEL =
+            "DELETE f FROM user_fav_hotels f " +
+                    "JOIN users u ON u.userid = f.userid WHERE u.username = ? AND f.hotelid = ?;";
+
+    /** SQL Clear favorited hotels by username */
     public static final String CLEAR_FAV_HOTELS =
-            "UPDATE users SET fav_hotels = NULL WHERE username = ?;";
+            "DELETE f FROM user_fav_hotels f " +
+                    "JOIN users u ON u.userid = f.userid WHERE u.username = ?;";
 
     /** SQL Check hotels table exists */
     public static final String CHECK_HOTELS_TABLE =
@@ -75,25 +98,128 @@ public class PreparedStatements {
             "INSERT INTO hotels (hotelid, hotelname, address, lat, lng, rating, link) " +
                     "VALUES (?, ?, ?, ?, ?, ?, ?);";
 
-    /** SQL Search hotels by part of hotelname */
-    public static final String SEARCH_HOTEL_BY_STRING =
-            "SELECT * FROM hotels WHERE hotelname LIKE ?;";
-
     /** SQL Search all hotels */
     public static final String SEARCH_ALL_HOTELS =
-            "SELECT * FROM hotels;";
+            "SELECT * FROM hotels ORDER BY hotelid;";
 
     /** SQL Search hotel by id */
     public static final String SEARCH_HOTEL_BY_ID =
             "SELECT * FROM hotels WHERE hotelid = ?;";
 
+    /** SQL Search hotel by link */
+    public static final String SEARCH_HOTEL_BY_LINK =
+            "SELECT * FROM hotels WHERE link = ?;";
+
     /** SQL Search slice of reviews by hotelid */
     public static final String GET_REVIEWS_SLICE =
-            "SELECT username, title, body, dateposted FROM reviews WHERE hotelid = ? LIMIT ? OFFSET ?;";
+            "SELECT username, title, body, dateposted FROM reviews WHERE hotelid = ? " +
+                    "ORDER BY dateposted DESC, reviewid DESC LIMIT ? OFFSET ?;";
+
+    /** SQL Search first page of reviews by hotelid, newest first (keyset pagination) */
+    public static final String GET_REVIEWS_FIRST_PAGE =
+            "SELECT username, title, body, dateposted, reviewid FROM reviews WHERE hotelid = ? " +
+                    "ORDER BY dateposted DESC, reviewid DESC LIMIT ?;";
+
+    /** SQL Search page of reviews by hotelid that come after a (dateposted, reviewid) cursor */
+    public static final String GET_REVIEWS_AFTER_CURSOR =
+            "SELECT username, title, body, dateposted, reviewid FROM reviews " +
+                    "WHERE hotelid = ? AND (dateposted, reviewid) < (?, ?) " +
+                    "ORDER BY dateposted DESC, reviewid DESC LIMIT ?;";
+
+    /** SQL Search page of reviews by hotelid that come before a (dateposted, reviewid) cursor; rows are in reverse order */
+    public static final String GET_REVIEWS_BEFORE_CURSOR =
+            "SELECT username, title, body, dateposted, reviewid FROM reviews " +
+                    "WHERE hotelid = ? AND (dateposted, reviewid) > (?, ?) " +
+                    "ORDER BY dateposted ASC, reviewid ASC LIMIT ?;";
 
     /** SQL Get number of reviews for a hotel */
     public static final String NUM_REVIEWS_FOR_HOTEL =
-            "SELECT count(*) AS num_reviews FROM reviews WHERE hotelid = ?;";
+            "SELECT numreviews FROM hotel_stats WHERE hotelid = ?;";
+
+    /** SQL Get id, rating and title and body lengths of every review, to compare against the review files */
+    public static final String GET_REVIEW_SUMMARIES =
+            "SELECT reviewid, rating, CHAR_LENGTH(title), CHAR_LENGTH(body) FROM reviews;";
+
+    /** SQL Get and lock hotelid and rating of a review by username and reviewid */
+    public static final String GET_REVIEW_HOTEL_RATING =
+            "SELECT hotelid, rating FROM reviews WHERE username = ? AND reviewid = ? FOR UPDATE;";
+
+    /** SQL Check hotel_stats table exists */
+    public static final String CHECK_HOTEL_STATS_TABLE =
+            "SHOW TABLES LIKE 'hotel_stats';";
+
+    /**
+     * SQL Create hotel_stats table; per-hotel counters maintained alongside the reviews table:
+     * review count, then count, sum and star histogram of the reviews' ratings (reviews with a NULL rating are not rated)
+     */
+    public static final String CREATE_HOTEL_STATS_TABLE =
+            "CREATE TABLE hotel_stats (" +
+                    "hotelid MEDIUMINT UNSIGNED NOT NULL PRIMARY KEY, " +
+                    "numreviews INT UNSIGNED NOT NULL DEFAULT 0, " +
+                    "ratingcount INT NOT NULL DEFAULT 0, " +
+                    "ratingsum INT NOT NULL DEFAULT 0, " +
+                    "stars1 INT NOT NULL DEFAULT 0, " +
+                    "stars2 INT NOT NULL DEFAULT 0, " +
+                    "stars3 INT NOT NULL DEFAULT 0, " +
+                    "stars4 INT NOT NULL DEFAULT 0, " +
+                    "stars5 INT NOT NULL DEFAULT 0);";
+
+    /** SQL Clear hotel_stats table */
+    public static final String CLEAR_HOTEL_STATS =
+            "DELETE FROM hotel_stats;";
+
+    /** SQL Populate hotel_stats from the reviews table */
+    public static final String POPULATE_HOTEL_STATS =
+            "INSERT INTO hotel_stats (hotelid, numreviews, ratingcount, ratingsum, stars1, stars2, stars3, stars4, stars5) " +
+                    "SELECT hotelid, count(*), count(rating), COALESCE(sum(rating), 0), " +
+                    "sum(rating <=> 1), sum(rating <=> 2), sum(rating <=> 3), sum(rating <=> 4), sum(rating <=> 5) " +
+                    "FROM reviews GROUP BY hotelid;";
+
+    /**
+     * SQL Populate only hotel_stats.numreviews from the reviews table; for schemas before version 4,
+     * whose reviews have no rating column (that migration recounts the rating counters)
+     */
+    public static final String POPULATE_HOTEL_REVIEW_COUNTS =
+            "INSERT INTO hotel_stats (hotelid, numreviews) SELECT hotelid, count(*) FROM reviews GROUP BY hotelid;";
+
+    /** SQL Delete a hotel's counters, before RECOUNT_HOTEL_STATS */
+    public static final String CLEAR_HOTEL_STATS_FOR_HOTEL =
+            "DELETE FROM hotel_stats WHERE hotelid = ?;";
+
+    /** SQL Recount a hotel's counters from the reviews table */
+    public static final String RECOUNT_HOTEL_STATS =
+            "INSERT INTO hotel_stats (hotelid, numreviews, ratingcount, ratingsum, stars1, stars2, stars3, stars4, stars5) " +
+                    "SELECT hotelid, count(*), count(rating), COALESCE(sum(rating), 0), " +
+                    "sum(rating <=> 1), sum(rating <=> 2), sum(rating <=> 3), sum(rating <=> 4), sum(rating <=> 5) " +
+                    "FROM reviews WHERE hotelid = ? GROUP BY hotelid;";
+
+    /**
+     * SQL Add deltas to a hotel's rating counters; params ratingcount, ratingsum, stars1-5 deltas, hotelid.
+     * The row must exist (INCREMENT_NUM_REVIEWS creates it)
+     */
+    public static final String ADJUST_HOTEL_RATINGS =
+            "UPDATE hotel_stats SET ratingcount = ratingcount + ?, ratingsum = ratingsum + ?, " +
+                    "stars1 = stars1 + ?, stars2 = stars2 + ?, stars3 = stars3 + ?, stars4 = stars4 + ?, stars5 = stars5 + ? " +
+                    "WHERE hotelid = ?;";
+
+    /** SQL Set a hotel's average rating from its hotel_stats counters (NULL once it has no rated reviews) */
+    public static final String REFRESH_HOTEL_RATING =
+            "UPDATE hotels h JOIN hotel_stats s ON s.hotelid = h.hotelid " +
+                    "SET h.rating = IF(s.ratingcount > 0, s.ratingsum / s.ratingcount, NULL) WHERE h.hotelid = ?;";
+
+    /** SQL Set every hotel's average rating from its hotel_stats counters, leaving hotels without rated reviews alone */
+    public static final String REFRESH_ALL_HOTEL_RATINGS =
+            "UPDATE hotels h JOIN hotel_stats s ON s.hotelid = h.hotelid " +
+                    "SET h.rating = s.ratingsum / s.ratingcount WHERE s.ratingcount > 0;";
+
+    /** SQL Add one to a hotel's review count */
+    public static final String INCREMENT_NUM_REVIEWS =
+            "INSERT INTO hotel_stats (hotelid, numreviews) VALUES (?, 1) " +
+                    "ON DUPLICATE KEY UPDATE numreviews = numreviews + 1;";
+
+    /** SQL Subtract one from a hotel's review count */
+    public static final String DECREMENT_NUM_REVIEWS =
+            "UPDATE hotel_stats SET numreviews = numreviews - 1 WHERE hotelid = ? AND numreviews > 0;";
 
     /** SQL Search review by id */
     public static final String SEARCH_REVIEW_BY_ID =
@@ -114,26 +240,33 @@ public class PreparedStatements {
     /** SQL Create reviews table */
     public static final String CREATE_REVIEWS_TABLE =
             "CREATE TABLE reviews (" +
-                    "reviewid VARCHAR(24) NOT NULL PRIMARY KEY, " +
+                    "reviewid BINARY(12) NOT NULL PRIMARY KEY, " +
                     "hotelid MEDIUMINT UNSIGNED NOT NULL, " +
                     "username VARCHAR(32), " +
                     "title TEXT, " +
                     "body TEXT, " +
-                    "dateposted DATE default NOW());";
+                    "dateposted DATE NOT NULL default NOW(), " +
+                    "rating TINYINT UNSIGNED);";
 
     /** SQL Insert a review into reviews table */
     public static final String INSERT_REVIEW =
-            "INSERT INTO reviews (reviewid, hotelid, username, title, body, dateposted) " +
-                    "VALUES (?, ?, ?, ?, ?, ?);";
+            "INSERT INTO reviews (reviewid, hotelid, username, title, body, dateposted, rating) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?);";
+
+    /** SQL Insert a review into reviews table, or refresh its title, body and rating if it is already there */
+    public static final String UPSERT_REVIEW =
+            "INSERT INTO reviews (reviewid, hotelid, username, title, body, dateposted, rating) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE title = ?, body = ?, rating = ?;";
 
     /** SQL Insert a review into reviews table (DB will auto-populate dateposted) */
     public static final String INSERT_REVIEW_NO_DATE =
-            "INSERT INTO reviews (reviewid, hotelid, username, title, body) " +
-                    "VALUES (?, ?, ?, ?, ?);";
+            "INSERT INTO reviews (reviewid, hotelid, username, title, body, rating) " +
+                    "VALUES (?, ?, ?, ?, ?, ?);";
 
-    /** SQL Modify a review's title and body in reviews table */
+    /** SQL Modify a review's title and body in reviews table, and its rating unless that param is NULL */
     public static final String UPDATE_REVIEW =
-            "UPDATE reviews SET title = ?, body = ? " +
+            "UPDATE reviews SET title = ?, body = ?, rating = COALESCE(?, rating) " +
                     "WHERE username = ? AND reviewid = ?;";
 
     /** SQL Insert a new user into users */
@@ -149,4 +282,112 @@ public class PreparedStatements {
     /** SQL Get password salt string from users by username */
     public static final String GET_SALT =
             "SELECT salt FROM users WHERE username = ?";
+
+    /** SQL Create schema_version table; one row per applied migration */
+    public static final String CREATE_SCHEMA_VERSION_TABLE =
+            "CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER NOT NULL PRIMARY KEY, " +
+                    "applied DATETIME NOT NULL);";
+
+    /** SQL Get latest applied schema version */
+    public static final String GET_SCHEMA_VERSION =
+            "SELECT COALESCE(MAX(version), 0) FROM schema_version;";
+
+    /** SQL Record an applied schema version */
+    public static final String SET_SCHEMA_VERSION =
+            "INSERT INTO schema_version (version, applied) VALUES (?, NOW());";
+
+    /** SQL Check if an index exists on a table in the current database */
+    public static final String CHECK_INDEX =
+            "SELECT 1 FROM information_schema.statistics " +
+                    "WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ? LIMIT 1;";
+
+    /** SQL Index for paging a hotel's reviews by date (GET_REVIEWS_*, NUM_REVIEWS_FOR_HOTEL) */
+    public static final String CREATE_REVIEWS_HOTEL_DATE_INDEX =
+            "CREATE INDEX reviews_hotel_date ON reviews (hotelid, dateposted, reviewid);";
+
+    /** SQL Index for a user's reviews (GET_MY_REVIEWS, DELETE_REVIEW, UPDATE_REVIEW) */
+    public static final String CREATE_REVIEWS_USER_INDEX =
+            "CREATE INDEX reviews_user ON reviews (username, reviewid);";
+
+    /** SQL Index for hotel link lookups (SEARCH_HOTEL_BY_LINK) */
+    public static final String CREATE_HOTELS_LINK_INDEX =
+            "CREATE INDEX hotels_link ON hotels (link);";
+
+    /** SQL Check if a column exists on a table in the current database */
+    public static final String CHECK_COLUMN =
+            "SELECT 1 FROM information_schema.columns " +
+                    "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ? LIMIT 1;";
+
+    /** SQL Get the legacy comma-separated link_history / fav_hotels TEXT columns (pre schema version 2) */
+    public static final String GET_LEGACY_USER_LISTS =
+            "SELECT userid, link_history, fav_hotels FROM users " +
+                    "WHERE link_history IS NOT NULL OR fav_hotels IS NOT NULL;";
+
+    /** SQL Insert a favorited hotel by userid */
+    public static final String INSERT_FAV_HOTEL_BY_USERID =
+            "INSERT IGNORE INTO user_fav_hotels (userid, hotelid) VALUES (?, ?);";
+
+    /** SQL Insert link clicks by userid, idempotent if re-run; params userid, link, count, count */
+    public static final String INSERT_LINK_CLICKS_BY_USERID =
+            "INSERT INTO user_link_clicks (userid, link, count) VALUES (?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE count = GREATEST(count, ?);";
+
+    /** SQL Drop the legacy link_history / fav_hotels TEXT columns */
+    public static final String DROP_LEGACY_USER_LISTS =
+            "ALTER TABLE users DROP COLUMN link_history, DROP COLUMN fav_hotels;";
+
+    /** SQL Get the type of a column on a table in the current database */
+    public static final String GET_COLUMN_TYPE =
+            "SELECT data_type FROM information_schema.columns " +
+                    "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?;";
+
+    /** SQL Delete reviews whose VARCHAR review id has no 96-bit form (pre schema version 3) */
+    public static final String DELETE_MALFORMED_REVIEW_IDS =
+            "DELETE FROM reviews WHERE reviewid NOT REGEXP '^[0-9a-fA-F]{24}$';";
+
+    /** SQL Drop the reviews_hotel_date index, which covers reviewid */
+    public static final String DROP_REVIEWS_HOTEL_DATE_INDEX =
+            "DROP INDEX reviews_hotel_date ON reviews;";
+
+    /** SQL Drop the reviews_user index, which covers reviewid */
+    public static final String DROP_REVIEWS_USER_INDEX =
+            "DROP INDEX reviews_user ON reviews;";
+
+    /** SQL Add the BINARY(12) review id column alongside the hex one */
+    public static final String ADD_BINARY_REVIEW_ID =
+            "ALTER TABLE reviews ADD COLUMN reviewid_bin BINARY(12);";
+
+    /** SQL Fill the BINARY(12) review id column from the hex one */
+    public static final String FILL_BINARY_REVIEW_ID =
+            "UPDATE reviews SET reviewid_bin = UNHEX(reviewid);";
+
+    /** SQL Replace the hex review id primary key with the BINARY(12) column */
+    public static final String SWAP_BINARY_REVIEW_ID =
+            "ALTER TABLE reviews DROP PRIMARY KEY, DROP COLUMN reviewid, " +
+                    "CHANGE COLUMN reviewid_bin reviewid BINARY(12) NOT NULL FIRST, ADD PRIMARY KEY (reviewid);";
+
+    /** SQL Add the rating column to reviews (pre schema version 4) */
+    public static final String ADD_REVIEW_RATING =
+            "ALTER TABLE reviews ADD COLUMN rating TINYINT UNSIGNED;";
+
+    /** SQL Set a review's rating by reviewid */
+    public static final String SET_REVIEW_RATING =
+            "UPDATE reviews SET rating = ? WHERE reviewid = ?;";
+
+    /** SQL Add the rating counters to hotel_stats (pre schema version 4) */
+    public static final String ADD_HOTEL_STATS_RATINGS =
+            "ALTER TABLE hotel_stats ADD COLUMN ratingcount INT NOT NULL DEFAULT 0, " +
+                    "ADD COLUMN ratingsum INT NOT NULL DEFAULT 0, " +
+                    "ADD COLUMN stars1 INT NOT NULL DEFAULT 0, ADD COLUMN stars2 INT NOT NULL DEFAULT 0, " +
+                    "ADD COLUMN stars3 INT NOT NULL DEFAULT 0, ADD COLUMN stars4 INT NOT NULL DEFAULT 0, " +
+                    "ADD COLUMN stars5 INT NOT NULL DEFAULT 0;";
+
+    /** SQL Date the reviews stored without a date (pre schema version 5) as if the column default had applied */
+    public static final String FILL_MISSING_REVIEW_DATES =
+            "UPDATE reviews SET dateposted = CURDATE() WHERE dateposted IS NULL;";
+
+    /** SQL Make reviews.dateposted NOT NULL, so every review has a place in the (dateposted, reviewid) page order */
+    public static final String REQUIRE_REVIEW_DATE =
+            "ALTER TABLE reviews MODIFY COLUMN dateposted DATE NOT NULL default NOW();";
 }
@@ -0,0 +1,48 @@
+package hotelapp;
+
+import hotelreviewsdata.ReviewId;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+
+/**
+ * Record for an opaque keyset pagination cursor into a hotel's reviews,
+ * which are ordered by date posted (descending), then review id (descending)
+ * @param datePosted LocalDate date the review at the cursor was posted
+ * @param reviewId ReviewId of the review at the cursor
+ */
+public record ReviewCursor(LocalDate datePosted, ReviewId reviewId) {
+
+    /**
+     * Encodes this cursor as a url-safe token to hand to the client
+     * @return String opaque cursor token
+     */
+    public String encode() {
+        String s = datePosted + "|" + reviewId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor token made by encode()
+     * @param token String opaque cursor token from the client
+     * @return ReviewCursor, or null if the token is malformed
+     */
+    public static ReviewCursor decode(String token) {
+        if (token == null || token.isBlank()) return null;
+
+        try {
+            String s = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int splitIdx = s.indexOf('|');
+            if (splitIdx < 0) return null;
+
+            ReviewId reviewId = ReviewId.tryParse(s.substring(splitIdx + 1));
+            if (reviewId == null) return null;
+            return new ReviewCursor(LocalDate.parse(s.substring(0, splitIdx)), reviewId);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return null;
+        }
+    }
+}
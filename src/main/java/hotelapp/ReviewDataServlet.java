@@ -1,13 +1,12 @@
 package hotelapp;
 
-import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.commons.text.StringEscapeUtils;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 
 
 /**
@@ -17,7 +16,7 @@ public class ReviewDataServlet extends HttpServlet {
     private static final int LIMIT = 10;
 
     /**
-     * GET HTTP request returns a JsonObject with review(s)
+     * GET HTTP request returns a JsonObject with review(s), streamed to the client
      */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
@@ -29,29 +28,41 @@ public class ReviewDataServlet extends HttpServlet {
         if (req.getSession(false) == null)
             return;
 
-        res.setContentType("text/html");
-
-        JsonObject jo = new JsonObject();
-        PrintWriter out = res.getWriter();
-        String idString, offsetString, nextVprevString;
+        String idString, offsetString, nextVprevString, cursorString;
         if ((idString = StringEscapeUtils.escapeHtml4(req.getParameter("id"))) == null || idString.isBlank() || !DBQueriesHandler.get().checkHotelId(idString)) {
-            res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            jo.addProperty("Error", String.format("No hotel found with id %s", (idString == null || idString.isBlank()) ? "[missing]" : "'" + idString + "'"));
-        } else if ((offsetString = StringEscapeUtils.escapeHtml4(req.getParameter("offset"))) == null || offsetString.isBlank() || !offsetString.matches("^\\d+$")
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST,
+                    String.format("No hotel found with id %s", (idString == null || idString.isBlank()) ? "[missing]" : "'" + idString + "'"));
+        } else if ((cursorString = StringEscapeUtils.escapeHtml4(req.getParameter("cursor"))) != null) {
+            // keyset pagination; ?id=hotelid&cursor=[blank for first page]&dir=next/prev
+            ReviewCursor cursor = ReviewCursor.decode(cursorString);
+            nextVprevString = StringEscapeUtils.escapeHtml4(req.getParameter("dir"));
+            if ((!cursorString.isBlank() && cursor == null)
+                    || (nextVprevString != null && nextVprevString.compareTo("next") != 0 && nextVprevString.compareTo("prev") != 0)) {
+                JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, "Insufficient request information");
+            } else {
+                boolean nextVprev = nextVprevString == null || nextVprevString.compareTo("next") == 0;
+                ReviewsPage page = DBQueriesHandler.get().getReviewsPage(Long.parseLong(idString), LIMIT, cursor, nextVprev);
+                if (page == null) {
+                    JsonResponse.error(res, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Reviews could not be loaded");
+                } else {
+                    try (JsonWriter out = JsonResponse.open(res, HttpServletResponse.SC_OK)) {
+                        page.writeTo(out);
+                    }
+                }
+            }
+        } else if ((offsetString = StringEscapeUtils.escapeHtml4(req.getParameter("offset"))) == null || offsetString.isBlank() || !offsetString.matches("^\\d{1,9}$")
                 || (nextVprevString = StringEscapeUtils.escapeHtml4(req.getParameter("dir"))) == null || nextVprevString.isBlank()
                 || (nextVprevString.compareTo("next") != 0 && nextVprevString.compareTo("prev") != 0)) {
-            res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            jo.addProperty("Error", "Insufficient request information");
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, "Insufficient request information");
         } else {
             long id = Long.parseLong(idString);
             int offset = Integer.parseInt(offsetString);
             boolean nextVprev = nextVprevString.compareTo("next") == 0;
             if (!nextVprev) offset -= 20;
 
-            jo = DBQueriesHandler.get().getReviewsSlice(id, LIMIT, offset);
+            try (JsonWriter out = JsonResponse.open(res, HttpServletResponse.SC_OK)) {
+                DBQueriesHandler.get().writeReviewsSlice(out, id, LIMIT, Math.max(0, offset));
+            }
         }
-
-        out.println(jo);
-        out.flush();
     }
 }
@@ -0,0 +1,78 @@
+package hotelapp;
+
+import com.google.gson.stream.JsonWriter;
+import hotelreviewsdata.BooleanQuery;
+import hotelreviewsdata.PostingsIndex;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.text.StringEscapeUtils;
+
+import java.io.IOException;
+
+
+/**
+ * Servlet handling AND / OR / NOT queries of words, "phrases" and word near/N word over review text;
+ * see ReviewSearch and BooleanQuery
+ *
+ * ?q=[query]&hotel=[optional hotel id]&offset=[optional, default 0]&limit=[optional, default search.pageSize]
+ */
+public class ReviewQueryServlet extends HttpServlet {
+    /**
+     * GET HTTP request returns a JsonObject with one page of matching reviews, streamed to the client
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        String uri = req.getRequestURI();
+        String query = req.getQueryString();
+        if (query != null && !query.isBlank()) uri = uri + "?" + query;
+        System.out.println("reviewquery get @ " + uri);
+
+        if (req.getSession(false) == null)
+            return;
+
+        ReviewSearch search = ReviewSearch.get();
+        // q is not escaped, or its phrase quotes would be lost: the tokenizer keeps only letters and apostrophes,
+        // and the echo is the normalized query
+        String q = req.getParameter("q");
+        String hotelString = StringEscapeUtils.escapeHtml4(req.getParameter("hotel"));
+        String offsetString = StringEscapeUtils.escapeHtml4(req.getParameter("offset"));
+        String limitString = StringEscapeUtils.escapeHtml4(req.getParameter("limit"));
+
+        if (q == null || q.isBlank()) {
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, "No query given");
+            return;
+        }
+        if ((offsetString != null && !offsetString.matches("^\\d{1,9}$"))
+                || (limitString != null && !limitString.matches("^\\d{1,9}$"))) {
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, "Insufficient request information");
+            return;
+        }
+        if (hotelString != null && !hotelString.isBlank() && !DBQueriesHandler.get().checkHotelId(hotelString)) {
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, String.format("No hotel found with id '%s'", hotelString));
+            return;
+        }
+
+        BooleanQuery parsed;
+        try {
+            parsed = BooleanQuery.parse(q);
+        } catch (IllegalArgumentException e) {
+            search.recordBadQuery();
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        PostingsIndex index = search.index();
+        if (index == null) {
+            JsonResponse.error(res, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Review search is not available yet");
+            return;
+        }
+
+        long hotelId = (hotelString == null || hotelString.isBlank()) ? BooleanQuery.ANY_HOTEL : Long.parseLong(hotelString);
+        int offset = (offsetString == null) ? 0 : Integer.parseInt(offsetString);
+        int limit = (limitString == null) ? search.pageSize() : Math.max(1, Math.min(search.maxPageSize(), Integer.parseInt(limitString)));
+        try (JsonWriter out = JsonResponse.open(res, HttpServletResponse.SC_OK)) {
+            search.writeMatches(out, index, parsed, hotelId, offset, limit);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package hotelapp;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import hotelreviewsdata.Bm25Ranker;
+import hotelreviewsdata.BooleanQuery;
+import hotelreviewsdata.HotelSearch;
+import hotelreviewsdata.PostingsIndex;
+import hotelreviewsdata.Review;
+import hotelreviewsdata.Snippet;
+import org.apache.commons.text.StringEscapeUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Singleton in-memory full-text search over the reviews: boolean word queries (BooleanQuery) and
+ * BM25-ranked free-text queries (Bm25Ranker). Queries run against a PostingsIndex built from the shared
+ * HotelSearch (HotelData, which LiveIngestion merges files into when it is running), not the DB.
+ * The index is built on a background thread at startup; until it is ready, search is unavailable. After that
+ * the same thread checks every search.rebuildMs whether reviews were merged, edited or removed, and if so
+ * rebuilds the whole index; queries are answered from the previous index meanwhile. A burst of changes costs
+ * one rebuild, and a change is searchable at most search.rebuildMs plus two build times after it is made.
+ *
+ * Settings (database.properties):
+ *   search.enabled      - build the index and serve search at all
+ *   search.rebuildMs    - time between checks for changed reviews (and so at least between rebuilds)
+ *   search.pageSize     - results per page when the request gives no limit
+ *   search.maxPageSize  - largest limit a request may ask for
+ *   search.snippetChars - length of the excerpt around the matched words sent with each review
+ */
+public class ReviewSearch {
+    private static final ReviewSearch instance = new ReviewSearch();
+
+    private final boolean enabled;
+    private final long rebuildMs;
+    private final int pageSize;
+    private final int maxPageSize;
+    private final int snippetChars;
+
+    private final ScheduledExecutorService builder;
+    private final AtomicBoolean building = new AtomicBoolean();
+    private volatile HotelSearch hs;
+    private volatile Bm25Ranker ranker;
+    private volatile long indexVersion;
+
+    private final Latency booleanQueries = new Latency();
+    private final Latency rankedQueries = new Latency();
+    private final LongAdder badQueries = new LongAdder();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong lastBuildMs = new AtomicLong();
+
+    private ReviewSearch() {
+        DBConfig config = DBConfig.get();
+        this.enabled = config.getBoolean("search.enabled", true);
+        this.rebuildMs = Math.max(100, config.getLong("search.rebuildMs", 5000));
+        this.pageSize = Math.max(1, config.getInt("search.pageSize", 10));
+        this.maxPageSize = Math.max(pageSize, config.getInt("search.maxPageSize", 100));
+        this.snippetChars = Math.max(20, config.getInt("search.snippetChars", 200));
+
+        builder = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "search-index-builder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    public static ReviewSearch get() { return instance; }
+
+    public int pageSize() { return pageSize; }
+    public int maxPageSize() { return maxPageSize; }
+
+    /**
+     * Starts building the index in the background, then checking for changed reviews every search.rebuildMs,
+     * if search.enabled is set
+     */
+    public void start() {
+        if (enabled)
+            builder.scheduleWithFixedDelay(this::build, 0, rebuildMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Builds the index, unless it is current; runs on the builder thread only
+     */
+    private void build() {
+        if (ranker != null && hs.reviewsVersion() == indexVersion)
+            return;
+
+        building.set(true);
+        try {
+            long start = System.nanoTime();
+            if (hs == null)
+                hs = HotelData.get().hotelSearch();
+            // read the version first: reviews merged during the build only cause one extra rebuild
+            long version = hs.reviewsVersion();
+            ranker = hs.ranker(0);
+            indexVersion = version;
+
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            lastBuildMs.set(ms);
+            builds.incrementAndGet();
+            System.out.println("Review search index built in " + ms + " ms");
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            System.out.println("Could not build the review search index");
+        } finally {
+            building.set(false);
+        }
+    }
+
+    /**
+     * The HotelSearch the index is built from
+     * @return HotelSearch, or null until the first build has started
+     */
+    public HotelSearch hotelSearch() {
+        return hs;
+    }
+
+    /**
+     * Current ranker; it misses at most the review changes of the last search.rebuildMs plus two build times
+     * @return Bm25Ranker, or null while search is disabled or the first build is running
+     */
+    public Bm25Ranker ranker() {
+        return ranker;
+    }
+
+    /**
+     * Current index; see ranker()
+     * @return PostingsIndex, or null while search is disabled or the first build is running
+     */
+    public PostingsIndex index() {
+        Bm25Ranker r = ranker();
+        return (r == null) ? null : r.index();
+    }
+
+    /**
+     * Runs a boolean query and writes one page of matches,
+     * {"query", "total", "offset", "limit", "reviews": [...]}, newest first; each review has a "snippet"
+     * of HTML, its text escaped, with the matched words, phrases and near words in mark elements
+     * @param out JsonWriter to write to
+     * @param index PostingsIndex from index()
+     * @param query BooleanQuery parsed query
+     * @param hotelId long hotel id to search within, or BooleanQuery.ANY_HOTEL
+     * @param offset int matches to skip
+     * @param limit int most matches to write
+     * @throws IOException on write failure
+     */
+    public void writeMatches(JsonWriter out, PostingsIndex index, BooleanQuery query, long hotelId,
+                             int offset, int limit) throws IOException {
+        long start = System.nanoTime();
+        int[] docs = query.evaluate(index, hotelId);
+        booleanQueries.record(System.nanoTime() - start);
+
+        out.beginObject();
+        out.name("query").value(query.toString());
+        out.name("total").value(docs.length);
+        out.name("offset").value(offset);
+        out.name("limit").value(limit);
+        out.name("reviews").beginArray();
+        for (int i = offset; i < docs.length && i - offset < limit; i++)
+            writeReview(out, index.review(docs[i]), query, null);
+        out.endArray();
+        out.endObject();
+    }
+
+    /**
+     * Ranks reviews for free-text words and writes one page of the best,
+     * {"query", "offset", "limit", "more", "reviews": [...]}, best first, with snippets as for writeMatches;
+     * only the best offset + limit + 1 are ranked, the extra one telling whether there is another page,
+     * so "more" stands in for a total
+     * @param out JsonWriter to write to
+     * @param ranker Bm25Ranker from ranker()
+     * @param words List of query words, from Bm25Ranker.queryTerms
+     * @param hotelId long hotel id to search within, or BooleanQuery.ANY_HOTEL
+     * @param offset int reviews to skip
+     * @param limit int most reviews to write
+     * @throws IOException on write failure
+     */
+    public void writeRanked(JsonWriter out, Bm25Ranker ranker, List<String> words, long hotelId,
+                            int offset, int limit) throws IOException {
+        long start = System.nanoTime();
+        List<Bm25Ranker.Hit> hits = ranker.topK(words, hotelId, offset + limit + 1);
+        rankedQueries.record(System.nanoTime() - start);
+
+        out.beginObject();
+        out.name("query").value(String.join(" ", words));
+        out.name("offset").value(offset);
+        out.name("limit").value(limit);
+        out.name("more").value(hits.size() > offset + limit);
+        out.name("reviews").beginArray();
+        BooleanQuery highlight = BooleanQuery.anyOf(words);
+        for (int i = offset; i < hits.size() && i - offset < limit; i++) {
+            Bm25Ranker.Hit h = hits.get(i);
+            writeReview(out, ranker.index().review(h.doc()), highlight, h.score());
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    private void writeReview(JsonWriter out, Review r, BooleanQuery query, Double score) throws IOException {
+        out.beginObject();
+        out.name("hotelid").value(r.hotelId());
+        out.name("reviewid").value(r.reviewId().toString());
+        out.name("username").value(r.username());
+        out.name("rating").value(r.ratingOverall());
+        out.name("title").value(r.title());
+        out.name("text").value(r.text());
+        out.name("dateposted").value((r.datePosted() == null) ? null : r.datePosted().toString());
+        out.name("snippet").value(snippetHtml(query.snippet(r.text(), snippetChars)));
+        if (score != null)
+            out.name("score").value(score);
+        out.endObject();
+    }
+
+    /**
+     * Renders a Snippet as HTML: the text escaped, each matched span in a mark element
+     */
+    private static String snippetHtml(Snippet s) {
+        String text = s.text();
+        StringBuilder sb = new StringBuilder(text.length() + 32);
+        int at = 0;
+        for (int i = 0; i < s.starts().length; i++) {
+            sb.append(StringEscapeUtils.escapeHtml4(text.substring(at, s.starts()[i])))
+                    .append("<mark>")
+                    .append(StringEscapeUtils.escapeHtml4(text.substring(s.starts()[i], s.ends()[i])))
+                    .append("</mark>");
+            at = s.ends()[i];
+        }
+        return sb.append(StringEscapeUtils.escapeHtml4(text.substring(at))).toString();
+    }
+
+    /**
+     * Count and evaluation time of one kind of query
+     */
+    private static class Latency {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long n) {
+            count.increment();
+            nanos.add(n);
+            maxNanos.accumulateAndGet(n, Math::max);
+        }
+
+        JsonObject toJson() {
+            JsonObject jo = new JsonObject();
+            long c = count.sum();
+            jo.addProperty("count", c);
+            jo.addProperty("meanMicros", (c == 0) ? 0 : nanos.sum() / c / 1000);
+            jo.addProperty("maxMicros", maxNanos.get() / 1000);
+            return jo;
+        }
+    }
+
+    /**
+     * Counts a query rejected as unparseable
+     */
+    public void recordBadQuery() {
+        badQueries.increment();
+    }
+
+    /**
+     * Snapshot of search metrics: index size and build times, plus counts and evaluation latency per kind of query
+     * @return JsonObject of search metrics
+     */
+    public JsonObject getMetrics() {
+        JsonObject jo = new JsonObject();
+        jo.addProperty("enabled", enabled);
+
+        Bm25Ranker r = ranker;
+        PostingsIndex i = (r == null) ? null : r.index();
+        jo.addProperty("ready", i != null);
+        jo.addProperty("building", building.get());
+        if (i != null) {
+            jo.addProperty("reviews", i.size());
+            jo.addProperty("terms", i.termCount());
+            jo.addProperty("postings", i.postingCount());
+        }
+        jo.addProperty("builds", builds.get());
+        jo.addProperty("lastBuildMs", lastBuildMs.get());
+
+        jo.add("booleanQueries", booleanQueries.toJson());
+        jo.add("rankedQueries", rankedQueries.toJson());
+        jo.addProperty("badQueries", badQueries.sum());
+        return jo;
+    }
+}
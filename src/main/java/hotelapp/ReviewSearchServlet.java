@@ -0,0 +1,77 @@
+package hotelapp;
+
+import com.google.gson.stream.JsonWriter;
+import hotelreviewsdata.Bm25Ranker;
+import hotelreviewsdata.BooleanQuery;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.text.StringEscapeUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+
+/**
+ * Servlet handling BM25-ranked free-text search over review text; see ReviewSearch and Bm25Ranker
+ *
+ * ?q=[words]&hotel=[optional hotel id]&offset=[optional, default 0]&limit=[optional, default search.pageSize]
+ */
+public class ReviewSearchServlet extends HttpServlet {
+    /**
+     * GET HTTP request returns a JsonObject with one page of the best matching reviews, streamed to the client
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        String uri = req.getRequestURI();
+        String query = req.getQueryString();
+        if (query != null && !query.isBlank()) uri = uri + "?" + query;
+        System.out.println("reviewsearch get @ " + uri);
+
+        if (req.getSession(false) == null)
+            return;
+
+        ReviewSearch search = ReviewSearch.get();
+        // q is not escaped: the tokenizer keeps only letters and apostrophes, and the echo is the normalized words
+        String q = req.getParameter("q");
+        String hotelString = StringEscapeUtils.escapeHtml4(req.getParameter("hotel"));
+        String offsetString = StringEscapeUtils.escapeHtml4(req.getParameter("offset"));
+        String limitString = StringEscapeUtils.escapeHtml4(req.getParameter("limit"));
+
+        if (q == null || q.isBlank()) {
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, "No query given");
+            return;
+        }
+        if ((offsetString != null && !offsetString.matches("^\\d{1,6}$"))
+                || (limitString != null && !limitString.matches("^\\d{1,9}$"))) {
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, "Insufficient request information");
+            return;
+        }
+        if (hotelString != null && !hotelString.isBlank() && !DBQueriesHandler.get().checkHotelId(hotelString)) {
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, String.format("No hotel found with id '%s'", hotelString));
+            return;
+        }
+
+        List<String> words;
+        try {
+            words = Bm25Ranker.queryTerms(q);
+        } catch (IllegalArgumentException e) {
+            search.recordBadQuery();
+            JsonResponse.error(res, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        Bm25Ranker ranker = search.ranker();
+        if (ranker == null) {
+            JsonResponse.error(res, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Review search is not available yet");
+            return;
+        }
+
+        long hotelId = (hotelString == null || hotelString.isBlank()) ? BooleanQuery.ANY_HOTEL : Long.parseLong(hotelString);
+        int offset = (offsetString == null) ? 0 : Integer.parseInt(offsetString);
+        int limit = (limitString == null) ? search.pageSize() : Math.max(1, Math.min(search.maxPageSize(), Integer.parseInt(limitString)));
+        try (JsonWriter out = JsonResponse.open(res, HttpServletResponse.SC_OK)) {
+            search.writeRanked(out, ranker, words, hotelId, offset, limit);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package hotelapp;
+
+import hotelreviewsdata.HotelSearch;
+import hotelreviewsdata.Review;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Seeds the reviews table from a HotelSearch. Hotel ids are split into disjoint partitions,
+ * one per loader thread; each thread streams its hotels' reviews into fixed-size chunks,
+ * and each chunk is sent as one rewritten multi-row batch insert and committed in its own transaction.
+ *
+ * Settings (database.properties):
+ *   loader.threads     - loader threads (capped below pool.maxSize)
+ *   loader.chunkSize   - rows per batch / transaction
+ *   loader.progressMs  - how often progress is printed
+ */
+public class ReviewsBulkLoader {
+    private final HotelSearch hs;
+    private final int numThreads;
+    private final int chunkSize;
+    private final long progressIntervalNanos;
+
+    private final AtomicLong rowsLoaded = new AtomicLong();
+    private final AtomicLong rowsFailed = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong();
+    private long totalRows;
+    private long start;
+
+    public ReviewsBulkLoader(HotelSearch hs) {
+        DBConfig config = DBConfig.get();
+        this.hs = hs;
+        this.numThreads = Math.max(1, Math.min(config.getInt("loader.threads", 4), DBConnectionPool.get().getMaxSize() - 1));
+        this.chunkSize = Math.max(1, config.getInt("loader.chunkSize", 1000));
+        this.progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("loader.progressMs", 2000));
+    }
+
+    /**
+     * Loads every review in the HotelSearch into the reviews table, blocking until done
+     * @return long number of rows inserted
+     */
+    public long load() {
+        List<Long> hotelIds = hs.returnAllHotelIds();
+        List<List<Long>> partitions = new ArrayList<>(numThreads);
+        long[] partitionRows = new long[numThreads];
+        for (int i = 0; i < numThreads; i++)
+            partitions.add(new ArrayList<>());
+
+        totalRows = 0;
+        for (int i = 0; i < hotelIds.size(); i++) {
+            List<Review> reviews = hs.returnReviews(hotelIds.get(i));
+            if (reviews == null) continue;
+
+            totalRows += reviews.size();
+            partitionRows[i % numThreads] += reviews.size();
+            partitions.get(i % numThreads).add(hotelIds.get(i));
+        }
+
+        System.out.println("Loading " + totalRows + " reviews with " + numThreads + " threads, " + chunkSize + " rows per chunk");
+        start = System.nanoTime();
+        lastReport.set(start);
+
+        ExecutorService threadPool = Executors.newFixedThreadPool(numThreads);
+        for (int i = 0; i < numThreads; i++)
+            threadPool.submit(new PartitionLoader(partitions.get(i), partitionRows[i]));
+        threadPool.shutdown();
+        try {
+            threadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            threadPool.shutdownNow();
+        }
+
+        double secs = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        System.out.printf("Loaded %d reviews in %.1fs (%.0f rows/s), %d failed%n",
+                rowsLoaded.get(), secs, rowsLoaded.get() / secs, rowsFailed.get());
+        return rowsLoaded.get();
+    }
+
+    /**
+     * Prints progress if at least loader.progressMs has passed since the last report;
+     * only one thread wins each report
+     */
+    private void reportProgress() {
+        long now = System.nanoTime();
+        long last = lastReport.get();
+        if (now - last < progressIntervalNanos || !lastReport.compareAndSet(last, now)) return;
+
+        long loaded = rowsLoaded.get();
+        double secs = Math.max(1e-9, (now - start) / 1e9);
+        System.out.printf("Loaded %d/%d reviews (%.1f%%), %.0f rows/s%n",
+                loaded, totalRows, (totalRows == 0) ? 100.0 : 100.0 * loaded / totalRows, loaded / secs);
+    }
+
+    /**
+     * Binds one review to the INSERT_REVIEW parameters
+     * @param ps PreparedStatement of PreparedStatements.INSERT_REVIEW
+     * @param r Review to bind
+     * @throws SQLException on bind failure
+     */
+    static void bindReview(PreparedStatement ps, Review r) throws SQLException {
+        LocalDate ld;
+        ps.setBytes(1, r.reviewId().toBytes()); // reviewid BINARY(12)
+        ps.setLong(2, r.hotelId()); // hotelid MEDIUMINT UNSIGNED
+        ps.setString(3, r.username()); // username VARCHAR(32)
+        ps.setObject(4, r.title(), JDBCType.LONGVARCHAR); // title TEXT
+        ps.setObject(5, r.text(), JDBCType.LONGVARCHAR); // text TEXT
+        if ((ld = r.datePosted()) != null)
+            ps.setDate(6, Date.valueOf(ld)); // dateposted DATE
+        else
+            ps.setDate(6, Date.valueOf(LocalDate.MIN)); // dateposted DATE
+        ps.setInt(7, r.ratingOverall()); // rating TINYINT UNSIGNED
+    }
+
+    /**
+     * Inner class defining the work to submit to a Thread: loads the reviews of one partition of hotels.
+     * If the partition stops early (no connection could be had, or a failure outside a chunk's own commit),
+     * the rows it did not get to are counted as failed
+     */
+    private class PartitionLoader implements Runnable {
+        private final List<Long> hotelIds;
+        private final long partitionRows;
+        // rows of this partition already counted as loaded or failed
+        private long done;
+
+        public PartitionLoader(List<Long> hotelIds, long partitionRows) {
+            this.hotelIds = hotelIds;
+            this.partitionRows = partitionRows;
+        }
+
+        @Override
+        public void run() {
+            try (Connection dbConnection = DBConnectionPool.get().getConnection();
+                 PreparedStatement ps = dbConnection.prepareStatement(PreparedStatements.INSERT_REVIEW)) {
+                dbConnection.setAutoCommit(false);
+
+                int inChunk = 0;
+                List<Review> reviews;
+                for (Long l : hotelIds) {
+                    if ((reviews = hs.returnReviews(l)) == null) continue;
+
+                    for (Review r : reviews) {
+                        bindReview(ps, r);
+                        ps.addBatch();
+                        if (++inChunk == chunkSize) {
+                            flushChunk(dbConnection, ps, inChunk);
+                            inChunk = 0;
+                        }
+                    }
+                }
+                if (inChunk > 0)
+                    flushChunk(dbConnection, ps, inChunk);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                rowsFailed.addAndGet(partitionRows - done);
+                System.out.println("Review loader thread stopped, " + (partitionRows - done) + " of its "
+                        + partitionRows + " reviews not loaded");
+            }
+        }
+
+        /**
+         * Sends the pending batch and commits it; a failed chunk is rolled back and counted, and loading continues
+         */
+        private void flushChunk(Connection dbConnection, PreparedStatement ps, int rows) throws SQLException {
+            try {
+                ps.executeBatch();
+                dbConnection.commit();
+                rowsLoaded.addAndGet(rows);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                dbConnection.rollback();
+                ps.clearBatch();
+                rowsFailed.addAndGet(rows);
+            }
+            done += rows;
+            reportProgress();
+        }
+    }
+}
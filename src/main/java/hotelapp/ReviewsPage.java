@@ -0,0 +1,48 @@
+package hotelapp;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+
+/**
+ * Record for one keyset-paginated page of a hotel's reviews, read in full before any of it is written,
+ * so a failed query can still be answered with an error status
+ * @param reviews List of {username, title, body, dateposted} rows, in display order
+ * @param len int size of the full review set for the hotel
+ * @param next ReviewCursor to the page after this one, or null if there is none
+ * @param prev ReviewCursor to the page before this one, or null if there is none
+ */
+public record ReviewsPage(List<String[]> reviews, int len, ReviewCursor next, ReviewCursor prev) {
+
+    /**
+     * Writes this page as a JSON object with a "reviews" array of review objects, property "len",
+     * and "next" / "prev" cursors if those pages exist
+     * @param out JsonWriter to write to
+     * @throws IOException on write failure
+     */
+    public void writeTo(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name("reviews").beginArray();
+        for (String[] r : reviews)
+            writeReview(out, r[0], r[1], r[2], r[3]);
+        out.endArray();
+        out.name("len").value(len);
+
+        if (next != null)
+            out.name("next").value(next.encode());
+        if (prev != null)
+            out.name("prev").value(prev.encode());
+        out.endObject();
+    }
+
+    static void writeReview(JsonWriter out, String username, String title, String text, String datePosted) throws IOException {
+        out.beginObject();
+        out.name("username").value(username);
+        out.name("title").value(title);
+        out.name("text").value(text);
+        out.name("dateposted").value(datePosted);
+        out.endObject();
+    }
+}
@@ -0,0 +1,280 @@
+package hotelreviewsdata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Ranks the reviews of a PostingsIndex against a free-text query by BM25 (k1 = 1.2, b = 0.75):
+ * a review's score is the sum, over query words it uses, of
+ *   idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / average length))
+ * with idf = ln(1 + (N - df + 0.5) / (df + 0.5)), so rare words and short reviews count for more.
+ *
+ * Only the best k reviews are kept, in a bounded min-heap, and the postings are walked with MaxScore:
+ * each word's highest possible contribution is precomputed, and once the heap is full, words whose bounds
+ * together cannot lift a review past the k-th best score are no longer iterated, only probed with
+ * Cursor.advance for reviews the other words found. Reviews that cannot make the heap are dropped as soon
+ * as the words left to probe could not make up the difference.
+ *
+ * Bounds are also kept per skip block (SKIP_INTERVAL postings) of every word. When the block bounds of the
+ * words at a candidate review, plus the bounds of the probed words, cannot beat the k-th best score, the
+ * cursors jump to the end of those blocks without decoding them; this is what keeps a lone common word fast,
+ * where MaxScore alone would have to score every review using it. Built once per PostingsIndex (one pass
+ * over the postings for the bounds); thread-safe for queries.
+ */
+public class Bm25Ranker {
+    public static final double K1 = 1.2;
+    public static final double B = 0.75;
+    // bounds are inflated slightly so summing in a different order can never make them fall below a real score
+    private static final double BOUND_SLACK = 1 + 1e-9;
+
+    private final PostingsIndex index;
+    // per doc: k1 * (1 - b + b * length / average length)
+    private final float[] norms;
+    // per term: highest tf * (k1 + 1) / (tf + norm) over its postings, before idf
+    private final float[] maxImpacts;
+    // per term block: the same, over the block's postings; blocks of term t start at blockStarts[t]
+    private final int[] blockStarts;
+    private final float[] blockMaxImpacts;
+
+    /**
+     * A ranked review
+     * @param doc int doc id in the index
+     * @param score double BM25 score
+     */
+    public record Hit(int doc, double score) {}
+
+    public Bm25Ranker(PostingsIndex index) {
+        this.index = index;
+
+        int n = index.size();
+        long total = 0;
+        for (int doc = 0; doc < n; doc++)
+            total += index.docLength(doc);
+        double avg = (n == 0) ? 1 : Math.max(1, (double) total / n);
+        norms = new float[n];
+        for (int doc = 0; doc < n; doc++)
+            norms[doc] = (float) (K1 * (1 - B + B * index.docLength(doc) / avg));
+
+        int terms = index.termCount();
+        maxImpacts = new float[terms];
+        blockStarts = new int[terms + 1];
+        for (int t = 0; t < terms; t++)
+            blockStarts[t + 1] = blockStarts[t] + (index.docFreq(t) + PostingsIndex.SKIP_INTERVAL - 1) / PostingsIndex.SKIP_INTERVAL;
+        blockMaxImpacts = new float[blockStarts[terms]];
+
+        PostingsIndex.Cursor c = index.cursor();
+        for (int t = 0; t < terms; t++) {
+            double max = 0;
+            c.reset(t);
+            for (int doc = c.nextDoc(); doc != PostingsIndex.NO_MORE_DOCS; doc = c.nextDoc()) {
+                double impact = impact(c.freq(), doc);
+                int b = blockStarts[t] + c.block();
+                blockMaxImpacts[b] = Math.max(blockMaxImpacts[b], Math.nextUp((float) impact));
+                max = Math.max(max, impact);
+            }
+            maxImpacts[t] = Math.nextUp((float) max);
+        }
+    }
+
+    public PostingsIndex index() { return index; }
+
+    private double impact(int tf, int doc) {
+        return tf * (K1 + 1) / (tf + norms[doc]);
+    }
+
+    /**
+     * Inverse document frequency of a term
+     * @param termId int term id
+     * @return double BM25 idf, always positive
+     */
+    public double idf(int termId) {
+        double df = index.docFreq(termId);
+        return Math.log(1 + (index.size() - df + 0.5) / (df + 0.5));
+    }
+
+    /**
+     * Normalizes a free-text query into distinct index words, in query order
+     * @param query String query
+     * @return List of words, stop words and short words dropped
+     * @throws IllegalArgumentException if the query has no searchable word
+     */
+    public static List<String> queryTerms(String query) {
+        Set<String> words = new LinkedHashSet<>();
+        if (query != null)
+            new Tokenizer(new TermDictionary()).forEachTerm(query, words::add);
+        if (words.isEmpty())
+            throw new IllegalArgumentException("The query has no searchable words");
+        return new ArrayList<>(words);
+    }
+
+    /**
+     * Finds the k best reviews for the query words; ties go to the newer review
+     * @param words List of query words, from queryTerms
+     * @param hotelId long hotel id to rank within, or BooleanQuery.ANY_HOTEL
+     * @param k int number of reviews wanted
+     * @return List of up to k Hits, best first
+     */
+    public List<Hit> topK(List<String> words, long hotelId, int k) {
+        List<PostingsIndex.Cursor> cursors = new ArrayList<>();
+        List<Double> boundList = new ArrayList<>();
+        List<Double> idfList = new ArrayList<>();
+        List<Integer> termList = new ArrayList<>();
+        for (String w : words) {
+            int t = index.termId(w);
+            if (t < 0) continue;
+            double idf = idf(t);
+            cursors.add(index.cursor().reset(t));
+            termList.add(t);
+            idfList.add(idf);
+            boundList.add(idf * maxImpacts[t] * BOUND_SLACK);
+        }
+        int n = cursors.size();
+        if (n == 0 || k <= 0) return List.of();
+
+        // ascending by bound, so the non-essential words are always a prefix
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(boundList.get(a), boundList.get(b)));
+        PostingsIndex.Cursor[] cs = new PostingsIndex.Cursor[n];
+        double[] idfs = new double[n];
+        int[] blocks = new int[n];
+        // prefix[i]: sum of bounds of words 0..i
+        double[] prefix = new double[n];
+        for (int i = 0; i < n; i++) {
+            cs[i] = cursors.get(order[i]);
+            idfs[i] = idfList.get(order[i]);
+            blocks[i] = blockStarts[termList.get(order[i])];
+            prefix[i] = boundList.get(order[i]) + ((i == 0) ? 0 : prefix[i - 1]);
+        }
+
+        PostingsIndex.ArrayIterator hotelDocs = (hotelId == BooleanQuery.ANY_HOTEL) ? null
+                : new PostingsIndex.ArrayIterator(index.hotelDocs(hotelId));
+        TopK heap = new TopK(Math.min(k, index.size()));
+        for (PostingsIndex.Cursor c : cs) c.nextDoc();
+        // words firstEssential..n-1 drive candidate generation; the rest are only probed
+        int firstEssential = 0;
+
+        while (firstEssential < n) {
+            int doc = PostingsIndex.NO_MORE_DOCS;
+            for (int i = firstEssential; i < n; i++)
+                doc = Math.min(doc, cs[i].doc());
+            if (doc == PostingsIndex.NO_MORE_DOCS) break;
+
+            if (hotelDocs != null) {
+                int h = hotelDocs.advance(doc);
+                if (h != doc) {
+                    for (int i = firstEssential; i < n; i++) cs[i].advance(h);
+                    continue;
+                }
+            }
+
+            if (heap.isFull()) {
+                // bound of every doc up to next: the current blocks of the iterated words, plus all probed words
+                double bound = (firstEssential == 0) ? 0 : prefix[firstEssential - 1];
+                int next = PostingsIndex.NO_MORE_DOCS;
+                for (int i = firstEssential; i < n; i++) {
+                    if (cs[i].doc() == PostingsIndex.NO_MORE_DOCS) continue;
+                    bound += idfs[i] * blockMaxImpacts[blocks[i] + cs[i].block()] * BOUND_SLACK;
+                    next = Math.min(next, cs[i].blockLastDoc() + 1);
+                }
+                if (bound <= heap.minScore()) {
+                    for (int i = firstEssential; i < n; i++) cs[i].advance(next);
+                    continue;
+                }
+            }
+
+            double score = 0;
+            for (int i = firstEssential; i < n; i++) {
+                if (cs[i].doc() == doc) {
+                    score += idfs[i] * impact(cs[i].freq(), doc);
+                    cs[i].nextDoc();
+                }
+            }
+            boolean candidate = true;
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (heap.isFull() && score + prefix[i] <= heap.minScore()) {
+                    candidate = false;
+                    break;
+                }
+                if (cs[i].advance(doc) == doc)
+                    score += idfs[i] * impact(cs[i].freq(), doc);
+            }
+
+            if (candidate && heap.offer(doc, score)) {
+                while (firstEssential < n && heap.isFull() && prefix[firstEssential] <= heap.minScore())
+                    firstEssential++;
+            }
+        }
+        return heap.sorted();
+    }
+
+    /**
+     * Fixed-capacity min-heap of (doc, score) keeping the best entries; the root is the worst kept one,
+     * the lowest score and, among equal scores, the older (higher) doc id
+     */
+    private static class TopK {
+        private final int[] docs;
+        private final double[] scores;
+        private int size;
+
+        TopK(int capacity) {
+            docs = new int[capacity];
+            scores = new double[capacity];
+        }
+
+        boolean isFull() { return size == docs.length; }
+
+        double minScore() { return scores[0]; }
+
+        private boolean worse(int i, int j) {
+            return scores[i] < scores[j] || (scores[i] == scores[j] && docs[i] > docs[j]);
+        }
+
+        /**
+         * Adds an entry if the heap has room or it beats the root; docs come in ascending order, so an entry
+         * scoring the same as the root is older and is not added
+         * @return boolean true if added
+         */
+        boolean offer(int doc, double score) {
+            if (docs.length == 0) return false;
+            if (size < docs.length) {
+                docs[size] = doc;
+                scores[size] = score;
+                for (int i = size++; i > 0 && worse(i, (i - 1) / 2); i = (i - 1) / 2)
+                    swap(i, (i - 1) / 2);
+                return true;
+            }
+            if (score <= scores[0]) return false;
+
+            docs[0] = doc;
+            scores[0] = score;
+            for (int i = 0; ; ) {
+                int l = 2 * i + 1, r = l + 1, m = i;
+                if (l < size && worse(l, m)) m = l;
+                if (r < size && worse(r, m)) m = r;
+                if (m == i) break;
+                swap(i, m);
+                i = m;
+            }
+            return true;
+        }
+
+        private void swap(int i, int j) {
+            int d = docs[i]; docs[i] = docs[j]; docs[j] = d;
+            double s = scores[i]; scores[i] = scores[j]; scores[j] = s;
+        }
+
+        /** @return List of the kept entries, best first */
+        List<Hit> sorted() {
+            List<Hit> hits = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                hits.add(new Hit(docs[i], scores[i]));
+            hits.sort((a, b) -> (a.score() != b.score()) ? Double.compare(b.score(), a.score()) : Integer.compare(a.doc(), b.doc()));
+            return hits;
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package hotelreviewsdata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Parsed AND / OR / NOT query of words, phrases and word proximity over a PostingsIndex.
+ *
+ * Grammar (operators are case-insensitive; AND binds tighter than OR and may be left out):
+ *   query  := clause (OR clause)*
+ *   clause := item ([AND] item)*
+ *   item   := [NOT] (word | "phrase" | word NEAR/n word)
+ * so "pool and breakfast or spa not noisy" is (pool AND breakfast) OR (spa AND NOT noisy),
+ * "free breakfast" (quoted) needs the two words in that order, and pool near/5 spa needs them at most
+ * five words apart, in either order.
+ * Words are normalized like review text (lowercased, stop words and short words dropped, so "wi-fi" matches
+ * nothing). Dropped words still hold their place in a phrase: "close to airport" matches "close by airport",
+ * but not "close to the airport" or "close airport". A word the tokenizer splits, like "free-breakfast",
+ * is a phrase.
+ *
+ * Each clause is a leapfrog intersection: the postings with the fewest docs lead, and every other list
+ * (and the hotel's doc ids, when filtering by hotel) is advanced to the lead's candidate with Cursor.advance,
+ * which gallops over skip entries, so long lists are mostly skipped rather than decoded. Phrases and proximity
+ * take part as their words, and only for docs that have every required word are their positions decoded
+ * and merged. Excluded items are probed the same way. Clause results are unioned by merging.
+ */
+public class BooleanQuery {
+    public static final long ANY_HOTEL = -1;
+    public static final int MAX_NEAR = 100;
+    private static final Pattern NEAR = Pattern.compile("(?i)near/(\\d{1,3})");
+
+    private final List<Clause> clauses;
+
+    private BooleanQuery(List<Clause> clauses) {
+        this.clauses = clauses;
+    }
+
+    /**
+     * A word, a phrase or two words near each other; words[i] must be at offsets[i] from words[0] in a phrase,
+     * within near of each other for proximity
+     */
+    private record Item(String[] words, int[] offsets, int near) {
+        boolean positional() {
+            return words.length > 1;
+        }
+
+        /**
+         * Finds the spans of this item in one doc
+         * @param positions int[][] positions of words[i] at positions[i][0, counts[i]), ascending
+         * @param counts int[] number of positions per word
+         * @param sink SpanSink given each match, or null to stop at the first
+         * @return boolean true if there is a match
+         */
+        boolean match(int[][] positions, int[] counts, SpanSink sink) {
+            if (!positional()) {
+                for (int i = 0; i < counts[0]; i++) {
+                    if (sink == null) return true;
+                    sink.span(positions[0][i], positions[0][i]);
+                }
+                return counts[0] > 0;
+            }
+            return (near < 0) ? matchPhrase(positions, counts, sink) : matchNear(positions, counts, sink);
+        }
+
+        private boolean matchPhrase(int[][] positions, int[] counts, SpanSink sink) {
+            // positional merge: first word positions ascend, so every other word's pointer only moves forward
+            int[] at = new int[words.length];
+            boolean found = false;
+            outer:
+            for (int i = 0; i < counts[0]; i++) {
+                int p = positions[0][i];
+                for (int w = 1; w < words.length; w++) {
+                    int want = p + offsets[w];
+                    while (at[w] < counts[w] && positions[w][at[w]] < want)
+                        at[w]++;
+                    if (at[w] == counts[w]) break outer;
+                    if (positions[w][at[w]] != want) continue outer;
+                }
+                if (sink == null) return true;
+                sink.span(p, p + offsets[words.length - 1]);
+                found = true;
+            }
+            return found;
+        }
+
+        private boolean matchNear(int[][] positions, int[] counts, SpanSink sink) {
+            int[] a = positions[0], b = positions[1];
+            boolean found = false;
+            for (int i = 0, j = 0; i < counts[0]; i++) {
+                int p = a[i];
+                while (j < counts[1] && b[j] < p - near)
+                    j++;
+                for (int k = j; k < counts[1] && b[k] <= p + near; k++) {
+                    // the same word twice needs two occurrences
+                    if (b[k] == p) continue;
+                    if (sink == null) return true;
+                    sink.span(Math.min(p, b[k]), Math.max(p, b[k]));
+                    found = true;
+                    break;
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public String toString() {
+            if (near >= 0)
+                return words[0] + " NEAR/" + near + " " + words[1];
+            if (!positional())
+                return words[0];
+
+            // a dropped word in a phrase shows as ?
+            StringBuilder sb = new StringBuilder("\"").append(words[0]);
+            for (int i = 1; i < words.length; i++) {
+                for (int gap = offsets[i] - offsets[i - 1]; gap > 1; gap--)
+                    sb.append(" ?");
+                sb.append(' ').append(words[i]);
+            }
+            return sb.append('"').toString();
+        }
+    }
+
+    /**
+     * Receives matched spans, as first and last position
+     */
+    @FunctionalInterface
+    private interface SpanSink {
+        void span(int first, int last);
+    }
+
+    /**
+     * Items one clause requires and excludes
+     */
+    private record Clause(Item[] required, Item[] excluded) {
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Item i : required)
+                sb.append(sb.isEmpty() ? "" : " AND ").append(i);
+            for (Item i : excluded)
+                sb.append(" AND NOT ").append(i);
+            return sb.toString();
+        }
+    }
+
+    /**
+     * One query token: a word or operator, or the text of a quoted phrase
+     */
+    private record Token(String text, boolean quoted) {}
+
+    private static List<Token> lex(String query) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0, n = query.length();
+        while (i < n) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int close = query.indexOf('"', i + 1);
+                if (close < 0) throw new IllegalArgumentException("Unterminated quoted phrase");
+                tokens.add(new Token(query.substring(i + 1, close), true));
+                i = close + 1;
+            } else {
+                int start = i;
+                while (i < n && !Character.isWhitespace(query.charAt(i)) && query.charAt(i) != '"')
+                    i++;
+                tokens.add(new Token(query.substring(start, i), false));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Parses a query
+     * @param query String query, e.g. "pool AND NOT noisy OR \"free breakfast\" OR spa near/5 view"
+     * @return BooleanQuery
+     * @throws IllegalArgumentException if an operator has no item to apply to, a phrase is not closed,
+     *                                  or a clause requires no item
+     */
+    public static BooleanQuery parse(String query) {
+        if (query == null || query.isBlank())
+            throw new IllegalArgumentException("Empty query");
+
+        Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+        List<Token> tokens = lex(query);
+        List<Clause> clauses = new ArrayList<>();
+        List<Item> required = new ArrayList<>();
+        List<Item> excluded = new ArrayList<>();
+        boolean not = false, dangling = false;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            String op = token.quoted() ? "" : token.text().toUpperCase();
+            if (op.equals("OR")) {
+                if (dangling || not) throw new IllegalArgumentException("Expected a word before OR");
+                clauses.add(clause(required, excluded));
+                required.clear();
+                excluded.clear();
+                continue;
+            } else if (op.equals("AND")) {
+                if (dangling || not) throw new IllegalArgumentException("Expected a word before AND");
+                dangling = true;
+                continue;
+            } else if (op.equals("NOT")) {
+                if (not) throw new IllegalArgumentException("Expected a word after NOT");
+                not = true;
+                continue;
+            } else if (!token.quoted() && NEAR.matcher(token.text()).matches()) {
+                throw new IllegalArgumentException(token.text() + " needs a word on each side");
+            }
+
+            Item item = item(tokenizer, token);
+            Matcher near;
+            if (i + 2 < tokens.size() && !tokens.get(i + 1).quoted()
+                    && (near = NEAR.matcher(tokens.get(i + 1).text())).matches()) {
+                Item right = item(tokenizer, tokens.get(i + 2));
+                if (item == null || item.positional() || right == null || right.positional())
+                    throw new IllegalArgumentException(tokens.get(i + 1).text() + " joins two searchable single words");
+                int n = Integer.parseInt(near.group(1));
+                if (n < 1 || n > MAX_NEAR)
+                    throw new IllegalArgumentException("NEAR distance must be 1 to " + MAX_NEAR);
+                item = new Item(new String[]{item.words()[0], right.words()[0]}, null, n);
+                i += 2;
+            }
+
+            // a word that is only stop words is ignored, as in review text
+            if (item != null) {
+                List<Item> target = not ? excluded : required;
+                String key = item.toString();
+                if (target.stream().noneMatch(x -> x.toString().equals(key))) target.add(item);
+            }
+            not = false;
+            dangling = false;
+        }
+        if (not || dangling)
+            throw new IllegalArgumentException("Expected a word at the end of the query");
+        clauses.add(clause(required, excluded));
+
+        return new BooleanQuery(clauses);
+    }
+
+    /**
+     * Query matching any of the given words, for highlighting them
+     * @param words List of index words, e.g. from Bm25Ranker.queryTerms
+     * @return BooleanQuery words[0] OR words[1] ...
+     */
+    public static BooleanQuery anyOf(List<String> words) {
+        List<Clause> clauses = new ArrayList<>();
+        for (String w : words)
+            clauses.add(new Clause(new Item[]{new Item(new String[]{w}, new int[]{0}, -1)}, new Item[0]));
+        return new BooleanQuery(clauses);
+    }
+
+    private static Item item(Tokenizer tokenizer, Token token) {
+        List<String> words = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        tokenizer.forEachPosition(token.text(), (t, position, start, end) -> {
+            words.add(t);
+            positions.add(position);
+        });
+        if (words.isEmpty()) return null;
+
+        int[] offsets = new int[words.size()];
+        for (int i = 0; i < offsets.length; i++)
+            offsets[i] = positions.get(i) - positions.get(0);
+        return new Item(words.toArray(new String[0]), offsets, -1);
+    }
+
+    private static Clause clause(List<Item> required, List<Item> excluded) {
+        if (required.isEmpty())
+            throw new IllegalArgumentException("Every OR'd part of the query needs a searchable word that is not NOT'd");
+        return new Clause(required.toArray(new Item[0]), excluded.toArray(new Item[0]));
+    }
+
+    /**
+     * Finds the reviews matching this query
+     * @param index PostingsIndex to search
+     * @param hotelId long hotel id to restrict results to, or ANY_HOTEL
+     * @return int[] matching doc ids, ascending (newest reviews first); see PostingsIndex.review
+     */
+    public int[] evaluate(PostingsIndex index, long hotelId) {
+        int[] result = null;
+        for (Clause c : clauses) {
+            int[] docs = evaluate(index, c, hotelId);
+            result = (result == null) ? docs : union(result, docs);
+        }
+        return result;
+    }
+
+    /**
+     * A word's cursor in one clause evaluation, and its positions in the doc last loaded
+     */
+    private static class Slot {
+        final PostingsIndex.Cursor cursor;
+        int[] positions = new int[8];
+        int count;
+        int loadedDoc = -1;
+
+        Slot(PostingsIndex.Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        /** @return boolean true if the word is in doc, positioning the cursor on or after it */
+        boolean at(int doc) {
+            return cursor != null && cursor.advance(doc) == doc;
+        }
+
+        /** Decodes the positions of the cursor's current doc, once per doc */
+        void load() {
+            int doc = cursor.doc();
+            if (loadedDoc == doc) return;
+            count = cursor.freq();
+            if (positions.length < count)
+                positions = new int[Math.max(count, positions.length * 2)];
+            for (int i = 0; i < count; i++)
+                positions[i] = cursor.nextPosition();
+            loadedDoc = doc;
+        }
+    }
+
+    /**
+     * Whether an item is in the doc that every slot of its words was checked against
+     */
+    private static boolean matches(Item item, Slot[] slots, int[][] positions, int[] counts) {
+        if (!item.positional()) return true;
+        for (int w = 0; w < slots.length; w++) {
+            slots[w].load();
+            positions[w] = slots[w].positions;
+            counts[w] = slots[w].count;
+        }
+        return item.match(positions, counts, null);
+    }
+
+    private static int[] evaluate(PostingsIndex index, Clause clause, long hotelId) {
+        // one slot per distinct word of the clause
+        Map<String, Slot> slotsByWord = new HashMap<>();
+        for (Item[] items : new Item[][]{clause.required, clause.excluded}) {
+            for (Item item : items) {
+                for (String w : item.words) {
+                    int termId = index.termId(w);
+                    slotsByWord.computeIfAbsent(w, k -> new Slot((termId < 0) ? null : index.cursor().reset(termId)));
+                }
+            }
+        }
+        Slot[][] requiredSlots = slotsOf(clause.required, slotsByWord);
+        Slot[][] excludedSlots = slotsOf(clause.excluded, slotsByWord);
+
+        Map<String, PostingsIndex.DocIterator> leapfrog = new LinkedHashMap<>();
+        for (Item item : clause.required) {
+            for (String w : item.words) {
+                Slot s = slotsByWord.get(w);
+                if (s.cursor == null) return new int[0];
+                leapfrog.put(w, s.cursor);
+            }
+        }
+        List<PostingsIndex.DocIterator> iterators = new ArrayList<>(leapfrog.values());
+        if (hotelId != ANY_HOTEL)
+            iterators.add(new PostingsIndex.ArrayIterator(index.hotelDocs(hotelId)));
+        PostingsIndex.DocIterator[] its = iterators.toArray(new PostingsIndex.DocIterator[0]);
+        Arrays.sort(its, (a, b) -> Integer.compare(a.cost(), b.cost()));
+
+        int maxWords = 2;
+        for (Item[] items : new Item[][]{clause.required, clause.excluded}) {
+            for (Item item : items)
+                maxWords = Math.max(maxWords, item.words.length);
+        }
+        int[][] positions = new int[maxWords][];
+        int[] counts = new int[maxWords];
+
+        PostingsIndex.DocIterator lead = its[0];
+        int[] out = new int[Math.min(16, lead.cost())];
+        int size = 0;
+        int doc = lead.nextDoc();
+        outer:
+        while (doc != PostingsIndex.NO_MORE_DOCS) {
+            for (int i = 1; i < its.length; i++) {
+                int d = its[i].advance(doc);
+                if (d > doc) {
+                    doc = lead.advance(d);
+                    continue outer;
+                }
+            }
+
+            boolean hit = true;
+            for (int i = 0; hit && i < clause.required.length; i++)
+                hit = matches(clause.required[i], requiredSlots[i], positions, counts);
+            for (int i = 0; hit && i < clause.excluded.length; i++) {
+                boolean all = true;
+                for (Slot s : excludedSlots[i])
+                    all &= s.at(doc);
+                hit = !(all && matches(clause.excluded[i], excludedSlots[i], positions, counts));
+            }
+            if (hit) {
+                if (size == out.length)
+                    out = Arrays.copyOf(out, Math.max(16, size * 2));
+                out[size++] = doc;
+            }
+            doc = lead.nextDoc();
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    private static Slot[][] slotsOf(Item[] items, Map<String, Slot> slotsByWord) {
+        Slot[][] slots = new Slot[items.length][];
+        for (int i = 0; i < items.length; i++) {
+            slots[i] = new Slot[items[i].words.length];
+            for (int w = 0; w < slots[i].length; w++)
+                slots[i][w] = slotsByWord.get(items[i].words[w]);
+        }
+        return slots;
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) out[k++] = a[i++];
+            else if (a[i] > b[j]) out[k++] = b[j++];
+            else { out[k++] = a[i++]; j++; }
+        }
+        while (i < a.length) out[k++] = a[i++];
+        while (j < b.length) out[k++] = b[j++];
+        return Arrays.copyOf(out, k);
+    }
+
+    /**
+     * Cuts an excerpt of a review's text around the first span matched by any word, phrase or proximity
+     * item this query requires, with every such span in the excerpt marked. Spans are found by running the same
+     * positional matching on the text, re-tokenized with char offsets, as evaluate does on the index.
+     * @param text String review text, as indexed (Review.text)
+     * @param maxChars int longest excerpt, before "..." are added where the text was cut
+     * @return Snippet, with no spans if nothing matches (or the text is null)
+     */
+    public Snippet snippet(String text, int maxChars) {
+        if (text == null) return new Snippet("", new int[0], new int[0]);
+
+        // positions and char offsets of the query's words in the text
+        Map<String, int[]> wordPositions = new HashMap<>();
+        Map<String, Integer> wordCounts = new HashMap<>();
+        for (Clause c : clauses) {
+            for (Item item : c.required) {
+                for (String w : item.words) {
+                    wordPositions.put(w, new int[4]);
+                    wordCounts.put(w, 0);
+                }
+            }
+        }
+        int[][] offsets = {new int[64], new int[64]};
+        new Tokenizer(new TermDictionary()).forEachPosition(text, (t, position, start, end) -> {
+            int[] ps = wordPositions.get(t);
+            if (ps == null) return;
+            int n = wordCounts.get(t);
+            if (n == ps.length)
+                wordPositions.put(t, ps = Arrays.copyOf(ps, n * 2));
+            ps[n] = position;
+            wordCounts.put(t, n + 1);
+            if (position >= offsets[0].length) {
+                int len = Math.max(position + 1, offsets[0].length * 2);
+                offsets[0] = Arrays.copyOf(offsets[0], len);
+                offsets[1] = Arrays.copyOf(offsets[1], len);
+            }
+            offsets[0][position] = start;
+            offsets[1][position] = end;
+        });
+
+        // matched spans as char ranges, then sorted and merged
+        List<int[]> ranges = new ArrayList<>();
+        for (Clause c : clauses) {
+            for (Item item : c.required) {
+                int[][] positions = new int[item.words.length][];
+                int[] counts = new int[item.words.length];
+                for (int w = 0; w < positions.length; w++) {
+                    positions[w] = wordPositions.get(item.words[w]);
+                    counts[w] = wordCounts.get(item.words[w]);
+                }
+                item.match(positions, counts, (first, last) -> ranges.add(new int[]{offsets[0][first], offsets[1][last]}));
+            }
+        }
+        ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+        List<int[]> merged = new ArrayList<>();
+        for (int[] r : ranges) {
+            int[] prev = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (prev != null && r[0] <= prev[1]) prev[1] = Math.max(prev[1], r[1]);
+            else merged.add(r);
+        }
+
+        // window: a little context before the first span, cut at spaces
+        int from = 0;
+        if (!merged.isEmpty()) {
+            from = Math.max(0, merged.get(0)[0] - maxChars / 4);
+            while (from > 0 && !Character.isWhitespace(text.charAt(from - 1)))
+                from--;
+        }
+        int to = Math.min(text.length(), from + maxChars);
+        if (to < text.length()) {
+            int space = to;
+            while (space > from && !Character.isWhitespace(text.charAt(space)))
+                space--;
+            if (space > from) to = space;
+        }
+
+        String prefix = (from > 0) ? "..." : "";
+        String excerpt = prefix + text.substring(from, to) + ((to < text.length()) ? "..." : "");
+        int shift = prefix.length() - from;
+        List<int[]> kept = new ArrayList<>();
+        for (int[] r : merged) {
+            if (r[0] >= from && r[0] < to)
+                kept.add(new int[]{r[0] + shift, Math.min(r[1], to) + shift});
+        }
+        int[] starts = new int[kept.size()], ends = new int[kept.size()];
+        for (int i = 0; i < kept.size(); i++) {
+            starts[i] = kept.get(i)[0];
+            ends[i] = kept.get(i)[1];
+        }
+        return new Snippet(excerpt, starts, ends);
+    }
+
+    /**
+     * Normalized form of the query, e.g. pool AND NOT noisy OR "free breakfast"
+     * @return String query with operators made explicit
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Clause c : clauses)
+            sb.append(sb.isEmpty() ? "" : " OR ").append(c);
+        return sb.toString();
+    }
+}
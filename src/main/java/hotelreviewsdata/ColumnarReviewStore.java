@@ -0,0 +1,212 @@
+package hotelreviewsdata;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+
+/**
+ * Immutable column-oriented copy of the Reviews in a HotelReviewsMap. Instead of one object graph per review
+ * (Review, four Strings with their byte arrays, a LocalDate and a set node), each field is a column:
+ * primitive arrays for hotel id, review id (long + int), rating and epoch-day date, usernames
+ * dictionary-encoded as int codes, and title / text packed into one UTF-8 byte arena addressed by offsets.
+ *
+ * A review's doc id is its row in the columns. Rows are grouped by hotel, in findReviews order,
+ * so a hotel's reviews are one contiguous doc id range. Review objects are only made on demand by review(doc);
+ * a null title or text comes back as "".
+ */
+public class ColumnarReviewStore {
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int FIELDS = 2; // title, text
+
+    private final int size;
+    private final long[] hotelIds;
+    private final long[] idHighs;
+    private final int[] idLows;
+    private final byte[] ratings;
+    private final int[] epochDays;
+    private final int[] userCodes;
+    private final String[] usernames;
+    private final byte[] arena;
+    // field f of doc d spans arena[offsets[d * FIELDS + f], offsets[d * FIELDS + f + 1])
+    private final int[] offsets;
+    // hotel id -> {first doc, end doc}
+    private final LongKeyedMap<int[]> hotelRanges;
+
+    private ColumnarReviewStore(Builder b) {
+        size = b.size;
+        hotelIds = Arrays.copyOf(b.hotelIds, size);
+        idHighs = Arrays.copyOf(b.idHighs, size);
+        idLows = Arrays.copyOf(b.idLows, size);
+        ratings = Arrays.copyOf(b.ratings, size);
+        epochDays = Arrays.copyOf(b.epochDays, size);
+        userCodes = Arrays.copyOf(b.userCodes, size);
+        usernames = b.usernames.toArray(new String[0]);
+        arena = Arrays.copyOf(b.arena, b.arenaSize);
+        offsets = Arrays.copyOf(b.offsets, size * FIELDS + 1);
+        hotelRanges = b.hotelRanges;
+    }
+
+    /**
+     * Copies every Review of mapIn into a new store
+     * @param mapIn HotelReviewsMap to copy; should not be changing while this runs
+     * @return ColumnarReviewStore holding mapIn's Reviews
+     */
+    public static ColumnarReviewStore of(HotelReviewsMap mapIn) {
+        Builder b = new Builder();
+        for (long hotelId : mapIn.hrMap.keys()) {
+            int start = b.size;
+            for (Review r : mapIn.hrMap.get(hotelId).reviews())
+                b.add(r);
+            if (b.size > start)
+                b.hotelRanges.computeIfAbsent(hotelId, k -> new int[]{start, b.size});
+        }
+        return new ColumnarReviewStore(b);
+    }
+
+    /**
+     * Growable columns used while copying
+     */
+    private static class Builder {
+        int size;
+        long[] hotelIds = new long[1024];
+        long[] idHighs = new long[1024];
+        int[] idLows = new int[1024];
+        byte[] ratings = new byte[1024];
+        int[] epochDays = new int[1024];
+        int[] userCodes = new int[1024];
+        int[] offsets = new int[1024 * FIELDS + 1];
+        byte[] arena = new byte[1 << 16];
+        int arenaSize;
+        final List<String> usernames = new ArrayList<>();
+        final Map<String, Integer> userDict = new HashMap<>();
+        final LongKeyedMap<int[]> hotelRanges = new LongKeyedMap<>();
+
+        void add(Review r) {
+            if (size == hotelIds.length) {
+                int n = size * 2;
+                hotelIds = Arrays.copyOf(hotelIds, n);
+                idHighs = Arrays.copyOf(idHighs, n);
+                idLows = Arrays.copyOf(idLows, n);
+                ratings = Arrays.copyOf(ratings, n);
+                epochDays = Arrays.copyOf(epochDays, n);
+                userCodes = Arrays.copyOf(userCodes, n);
+                offsets = Arrays.copyOf(offsets, n * FIELDS + 1);
+            }
+
+            hotelIds[size] = r.hotelId();
+            idHighs[size] = r.reviewId().high();
+            idLows[size] = r.reviewId().low();
+            ratings[size] = (byte) r.ratingOverall();
+            epochDays[size] = (r.datePosted() == null) ? NO_DATE : (int) r.datePosted().toEpochDay();
+            userCodes[size] = userDict.computeIfAbsent(r.username(), u -> {
+                usernames.add(u);
+                return usernames.size() - 1;
+            });
+
+            int o = size * FIELDS;
+            append(o, r.title());
+            append(o + 1, r.text());
+            size++;
+        }
+
+        private void append(int field, String s) {
+            byte[] bytes = (s == null) ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+            if ((long) arenaSize + bytes.length > Integer.MAX_VALUE - 8)
+                throw new IllegalStateException("Review text exceeds the 2 GB arena");
+            if (arenaSize + bytes.length > arena.length)
+                arena = Arrays.copyOf(arena, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(arena.length * 2L, arenaSize + bytes.length)));
+
+            offsets[field] = arenaSize;
+            System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+            arenaSize += bytes.length;
+            offsets[field + 1] = arenaSize;
+        }
+    }
+
+    /**
+     * Number of reviews
+     * @return int size
+     */
+    public int size() {
+        return size;
+    }
+
+    public long hotelId(int doc) { return hotelIds[doc]; }
+    public int rating(int doc) { return ratings[doc]; }
+    public String username(int doc) { return usernames[userCodes[doc]]; }
+    public ReviewId reviewId(int doc) { return new ReviewId(idHighs[doc], idLows[doc]); }
+    public String title(int doc) { return field(doc, 0); }
+    public String text(int doc) { return field(doc, 1); }
+
+    public LocalDate datePosted(int doc) {
+        return (epochDays[doc] == NO_DATE) ? null : LocalDate.ofEpochDay(epochDays[doc]);
+    }
+
+    private String field(int doc, int f) {
+        int i = doc * FIELDS + f;
+        return new String(arena, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Materializes one review
+     * @param doc int doc id
+     * @return new Review equal to the one copied into the store
+     */
+    public Review review(int doc) {
+        return new Review(hotelId(doc), reviewId(doc), rating(doc), title(doc), text(doc), username(doc), datePosted(doc));
+    }
+
+    /**
+     * Doc ids of a hotel's reviews, in findReviews order
+     * @param hotelId long hotel id
+     * @return IntStream of doc ids, empty if the hotel has no reviews
+     */
+    public IntStream docs(long hotelId) {
+        int[] range = hotelRanges.get(hotelId);
+        return (range == null) ? IntStream.empty() : IntStream.range(range[0], range[1]);
+    }
+
+    /**
+     * A hotel's reviews, materialized as they are consumed
+     * @param hotelId long hotel id
+     * @return Stream of Reviews, in findReviews order
+     */
+    public Stream<Review> findReviews(long hotelId) {
+        return docs(hotelId).mapToObj(this::review);
+    }
+
+    /**
+     * Bytes held by the columns, with array headers, for a 64-bit JVM with compressed references
+     * @return long estimated heap bytes
+     */
+    public long heapBytes() {
+        long bytes = HeapEstimate.array(size, 8) * 2 + HeapEstimate.array(size, 1)
+                + HeapEstimate.array(size, 4) * 3
+                + HeapEstimate.array(arena.length, 1) + HeapEstimate.array(offsets.length, 4)
+                + HeapEstimate.array(usernames.length, 4);
+        for (String u : usernames)
+            bytes += HeapEstimate.string(u);
+        // range arrays only; the LongKeyedMap itself is the same shape as the hotel map's
+        bytes += (long) hotelRanges.size() * HeapEstimate.array(2, 4);
+        return bytes;
+    }
+
+    /**
+     * Number of distinct usernames in the dictionary
+     * @return int dictionary size
+     */
+    public int usernameCount() {
+        return usernames.length;
+    }
+
+    /**
+     * Bytes of UTF-8 title and text in the arena
+     * @return int arena bytes
+     */
+    public int arenaBytes() {
+        return arena.length;
+    }
+}
@@ -0,0 +1,287 @@
+package hotelreviewsdata;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+
+/**
+ * Versioned binary snapshot of a built HotelReviewsMap and WordToReviewMap, so a restart on unchanged
+ * input skips json parsing and index building. Written after a successful build and read back through
+ * a memory-mapped buffer.
+ *
+ * Layout (big-endian): magic, version, input checksum, then every hotel entry with its Hotel and Reviews,
+ * then every word with (frequency, review index) pairs, where a review index is that Review's position
+ * in the hotel section; a CRC32 of everything before it closes the file. Strings are an int byte length
+ * (-1 for null) followed by UTF-8 bytes, dates an epoch day (Long.MIN_VALUE for null), review ids a long and an int.
+ */
+public class DatasetSnapshot {
+    private static final int MAGIC = 0x48525331; // "HRS1"
+    private static final int VERSION = 2;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private DatasetSnapshot() {}
+
+    /**
+     * Fingerprint of the input files: FNV-1a 64 over the path, size and last-modified time of the hotels file
+     * and of every reviews json file, in path order. It reads metadata only, so it is cheap, but an edit that
+     * keeps both size and timestamp goes unnoticed.
+     * @param hotelsFileString String of hotels json file location, may be null
+     * @param reviewsDirString String of directory holding reviews json files, may be null
+     * @return long checksum
+     * @throws IOException if an input cannot be listed or stat'ed
+     */
+    public static long inputChecksum(String hotelsFileString, String reviewsDirString) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (hotelsFileString != null)
+            files.add(Paths.get(hotelsFileString));
+        if (reviewsDirString != null) {
+            try (Stream<Path> walk = Files.walk(Paths.get(reviewsDirString))) {
+                walk.filter(p -> p.toString().endsWith(".json") && Files.isRegularFile(p)).sorted().forEach(files::add);
+            }
+        }
+
+        long h = 0xcbf29ce484222325L;
+        for (Path p : files) {
+            BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+            h = fnv(h, p.toString().getBytes(StandardCharsets.UTF_8));
+            h = fnv(h, attrs.size());
+            h = fnv(h, attrs.lastModifiedTime().toMillis());
+        }
+        return h;
+    }
+
+    private static long fnv(long h, byte[] bytes) {
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+    private static long fnv(long h, long v) {
+        for (int i = 0; i < 8; i++, v >>>= 8) {
+            h ^= v & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Writes a snapshot of hrMap and wtrMap to a temporary file, then moves it over path,
+     * so a crash mid-write never leaves a partial snapshot behind
+     * @param path Path of the snapshot file; parent directories are created
+     * @param inputChecksum long checksum of the input the maps were built from
+     * @param hrMap HotelReviewsMap to save
+     * @param wtrMap WordToReviewMap built from hrMap
+     * @return boolean true if the snapshot was written
+     */
+    public static boolean save(Path path, long inputChecksum, HotelReviewsMap hrMap, WordToReviewMap wtrMap) {
+        long start = System.nanoTime();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if (path.getParent() != null)
+                Files.createDirectories(path.getParent());
+
+            try (CheckedOutputStream checked = new CheckedOutputStream(Files.newOutputStream(tmp), new CRC32());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(inputChecksum);
+                writeBody(out, hrMap, wtrMap);
+                out.flush();
+                out.writeLong(checked.getChecksum().getValue());
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Could not write dataset snapshot " + path);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {}
+            return false;
+        }
+
+        System.out.printf("Wrote dataset snapshot %s in %d ms%n", path, (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    private static void writeBody(DataOutputStream out, HotelReviewsMap hrMap, WordToReviewMap wtrMap) throws IOException {
+        Map<Review, Integer> reviewIdx = new IdentityHashMap<>();
+
+        long[] keys = hrMap.hrMap.keys();
+        out.writeInt(keys.length);
+        for (long key : keys) {
+            HotelReviewsMap.HotelEntry e = hrMap.hrMap.get(key);
+            out.writeLong(key);
+
+            Hotel h = e.hotel();
+            out.writeBoolean(h != null);
+            if (h != null) {
+                writeString(out, h.name());
+                out.writeLong(h.id());
+                out.writeDouble(h.latitude());
+                out.writeDouble(h.longitude());
+                Address a = h.address();
+                writeString(out, a.street());
+                writeString(out, a.city());
+                writeString(out, a.state());
+                writeString(out, a.country());
+            }
+
+            List<Review> reviews = new ArrayList<>(e.reviews());
+            out.writeInt(reviews.size());
+            for (Review r : reviews) {
+                reviewIdx.put(r, reviewIdx.size());
+                out.writeLong(r.hotelId());
+                out.writeLong(r.reviewId().high());
+                out.writeInt(r.reviewId().low());
+                out.writeInt(r.ratingOverall());
+                writeString(out, r.title());
+                writeString(out, r.text());
+                writeString(out, r.username());
+                out.writeLong(r.datePosted() == null ? NO_DATE : r.datePosted().toEpochDay());
+            }
+        }
+
+        out.writeInt(wtrMap.wtrMap.size());
+        for (Map.Entry<String, Map<Integer, Set<Review>>> word : wtrMap.wtrMap.entrySet()) {
+            writeString(out, word.getKey());
+            int n = 0;
+            for (Set<Review> s : word.getValue().values())
+                n += s.size();
+            out.writeInt(n);
+
+            for (Map.Entry<Integer, Set<Review>> freq : word.getValue().entrySet()) {
+                for (Review r : freq.getValue()) {
+                    Integer idx = reviewIdx.get(r);
+                    if (idx == null)
+                        throw new IOException("Indexed review " + r.reviewId() + " is not in the hotel map");
+                    out.writeInt(freq.getKey());
+                    out.writeInt(idx);
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Populates empty hrMap and wtrMap from the snapshot at path, if it exists, is intact, has the current
+     * version and was written for inputChecksum. The maps are only touched once the header and CRC check out;
+     * if loading still fails after that, they are left partially filled and should be discarded.
+     * @param path Path of the snapshot file
+     * @param inputChecksum long checksum of the current input
+     * @param hrMap empty HotelReviewsMap to fill
+     * @param wtrMap empty WordToReviewMap to fill
+     * @return boolean true if the maps were loaded from the snapshot
+     */
+    public static boolean load(Path path, long inputChecksum, HotelReviewsMap hrMap, WordToReviewMap wtrMap) {
+        if (!Files.isRegularFile(path)) return false;
+
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                System.out.println("Dataset snapshot " + path + " is over 2 GB, rebuilding instead");
+                return false;
+            }
+            if (size < 24) return false;
+
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                System.out.println("Dataset snapshot " + path + " has an unknown format, rebuilding");
+                return false;
+            }
+            if (buf.getLong() != inputChecksum) {
+                System.out.println("Input changed since dataset snapshot " + path + ", rebuilding");
+                return false;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate().position(0).limit((int) size - 8));
+            if (buf.getLong((int) size - 8) != crc.getValue()) {
+                System.out.println("Dataset snapshot " + path + " is corrupt, rebuilding");
+                return false;
+            }
+
+            readBody(buf.limit((int) size - 8), hrMap, wtrMap);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            System.out.println("Could not read dataset snapshot " + path + ", rebuilding");
+            return false;
+        }
+
+        System.out.printf("Loaded dataset snapshot %s in %d ms%n", path, (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    private static void readBody(ByteBuffer buf, HotelReviewsMap hrMap, WordToReviewMap wtrMap) throws IOException {
+        List<Review> reviews = new ArrayList<>();
+
+        int hotels = buf.getInt();
+        for (int i = 0; i < hotels; i++) {
+            long key = buf.getLong();
+            if (buf.get() != 0) {
+                String name = readString(buf);
+                long id = buf.getLong();
+                double lat = buf.getDouble();
+                double lng = buf.getDouble();
+                Address a = new Address(readString(buf), readString(buf), readString(buf), readString(buf));
+                hrMap.addHotel(key, new Hotel(name, id, lat, lng, a));
+            }
+
+            int n = buf.getInt();
+            for (int j = 0; j < n; j++) {
+                long hotelId = buf.getLong();
+                ReviewId reviewId = new ReviewId(buf.getLong(), buf.getInt());
+                int rating = buf.getInt();
+                String title = readString(buf);
+                String text = readString(buf);
+                String username = readString(buf);
+                long day = buf.getLong();
+                Review r = new Review(hotelId, reviewId, rating, title, text, username,
+                        day == NO_DATE ? null : LocalDate.ofEpochDay(day));
+                hrMap.addReview(r);
+                reviews.add(r);
+            }
+        }
+
+        int words = buf.getInt();
+        for (int i = 0; i < words; i++) {
+            String word = readString(buf);
+            int n = buf.getInt();
+            for (int j = 0; j < n; j++) {
+                int freq = buf.getInt();
+                wtrMap.addWord(word, freq, reviews.get(buf.getInt()));
+            }
+        }
+
+        if (buf.hasRemaining())
+            throw new IOException(buf.remaining() + " unread bytes at end of snapshot");
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,96 @@
+package hotelreviewsdata;
+
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Shallow heap size arithmetic for a 64-bit JVM with compressed references and compact strings
+ * (12-byte object headers, 16-byte array headers, 4-byte references, 8-byte alignment).
+ * Used for memory reports; the figures are estimates of layout, not measurements.
+ */
+class HeapEstimate {
+    static final int HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REF = 4;
+
+    private HeapEstimate() {}
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * @param fieldBytes long total size of an object's fields
+     * @return long size of the object
+     */
+    static long object(long fieldBytes) {
+        return align(HEADER + fieldBytes);
+    }
+
+    /**
+     * @param length long array length
+     * @param elementBytes int size of one element
+     * @return long size of the array
+     */
+    static long array(long length, int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    /**
+     * A String and its byte array; Latin-1 strings take a byte per char, others two
+     * @param s String, may be null
+     * @return long size of s, 0 for null
+     */
+    static long string(String s) {
+        if (s == null) return 0;
+
+        boolean latin1 = true;
+        for (int i = 0; i < s.length() && latin1; i++)
+            latin1 = s.charAt(i) < 256;
+        // String: value ref, hash int, coder byte, hashIsZero boolean
+        return object(REF + 4 + 1 + 1) + array(s.length(), latin1 ? 1 : 2);
+    }
+
+    /**
+     * One Review as held by a HotelReviewsMap: the object, its ReviewId, its Strings
+     * and its node in the hotel's skip-list set
+     * @param r Review
+     * @return long estimated size
+     */
+    static long review(Review r) {
+        // hotelId, sortHigh, sortLow longs, ratingOverall and hash ints, 4 references
+        long bytes = object(3 * 8 + 2 * 4 + 4 * REF);
+        // ReviewId: high long, low int
+        bytes += object(8 + 4);
+        bytes += string(r.title()) + string(r.text()) + string(r.username());
+        // skip-list Node (key, val, next) plus on average 1/3 of an Index (node, down, right)
+        bytes += object(3 * REF) + object(3 * REF) / 3;
+        return bytes;
+    }
+
+    /**
+     * A ThreadSafeWordToReviewMap, without the Reviews it points to: per word a hash map node, the word
+     * and a skip-list map; per frequency a skip-list node and a skip-list set; per posting a skip-list node
+     * @param m WordToReviewMap
+     * @return long estimated size
+     */
+    static long wordToReviewMap(WordToReviewMap m) {
+        // skip-list Node (key, val, next) plus on average 1/3 of an Index (node, down, right)
+        long skipNode = object(3 * REF) + object(3 * REF) / 3;
+        // ConcurrentSkipListMap: head, comparator, 4 view refs, adder, plus its head Index
+        long skipMap = object(7 * REF) + object(3 * REF);
+
+        long bytes = array(Integer.highestOneBit(Math.max(1, m.wtrMap.size() * 4 / 3)) * 2L, REF);
+        for (Map.Entry<String, Map<Integer, Set<Review>>> word : m.wtrMap.entrySet()) {
+            // ConcurrentHashMap.Node: hash, key, val, next
+            bytes += object(4 + 3 * REF) + string(word.getKey()) + skipMap;
+            for (Map.Entry<Integer, Set<Review>> freq : word.getValue().entrySet()) {
+                // frequencies above 127 are not from the Integer cache
+                bytes += skipNode + object(REF) + skipMap + ((freq.getKey() > 127) ? object(4) : 0);
+                bytes += freq.getValue().size() * skipNode;
+            }
+        }
+        return bytes;
+    }
+}
@@ -11,7 +11,7 @@ package hotelreviewsdata;
 public record Hotel(String name, long id, double latitude, double longitude, Address address) {
 
     @Override
-    public synchronized String toString() {
+    public String toString() {
         return String.format("%s: %d\n%s", name, id, address);
     }
 }
@@ -15,14 +15,39 @@ import java.util.stream.Stream;
 
 /**
  * Class that handles the main data structures of this project
- * map is a HashMap that organizes Hotels and Reviews by hotel id
+ * hrMap is a LongKeyedMap that organizes Hotels and Reviews by hotel id
  * wordToReviewMap is a wrapper on a HashMap that organizes Reviews by the words in their text
  */
 public class HotelReviewsMap {
-    protected final Map<Long, Map.Entry<Hotel, Set<Review>>> hrMap;
+    protected final LongKeyedMap<HotelEntry> hrMap;
 
     public HotelReviewsMap() {
-        hrMap = new TreeMap<>(Comparator.comparing(a -> Long.toString(a)));
+        hrMap = new LongKeyedMap<>();
+    }
+
+    /**
+     * A hotel's map value: the Hotel, once the hotels file has been read, its Reviews and their rating totals
+     */
+    protected static class HotelEntry {
+        private volatile Hotel hotel;
+        private final Set<Review> reviews;
+        private final RatingAggregate ratings = new RatingAggregate();
+
+        HotelEntry(Set<Review> reviews) {
+            this.reviews = reviews;
+        }
+
+        Hotel hotel() { return hotel; }
+        Set<Review> reviews() { return reviews; }
+        RatingAggregate ratings() { return ratings; }
+    }
+
+    /**
+     * Makes the sorted set holding one hotel's Reviews; subclasses override it for concurrent access
+     * @return empty Set of Reviews ordered by Review.compareTo
+     */
+    protected Set<Review> newReviewSet() {
+        return new TreeSet<>();
     }
 
     /**
@@ -68,13 +93,19 @@ public class HotelReviewsMap {
             JsonObject o = e.getAsJsonObject();
             long hotelId = o.get("id").getAsInt();
             Hotel hotel = gson.fromJson(o, Hotel.class);
-            hrMap.compute(hotelId, (k, v) ->
-                (v != null && v.getValue() != null) ?
-                    new AbstractMap.SimpleEntry<>(hotel, v.getValue()) :
-                    new AbstractMap.SimpleEntry<>(hotel, new TreeSet<>()));
+            addHotel(hotelId, hotel);
         }
     }
 
+    /**
+     * Sets the Hotel under its hotel id, creating the hotel's entry if needed
+     * @param hotelId long map key
+     * @param hotel Hotel to set
+     */
+    protected void addHotel(long hotelId, Hotel hotel) {
+        hrMap.computeIfAbsent(hotelId, k -> new HotelEntry(newReviewSet())).hotel = hotel;
+    }
+
     /**
      * Helper function used in constructor to find and open reviews json files
      * @param dirStream DirectoryStream opened on the directory containing reviews json files
@@ -99,22 +130,83 @@ public class HotelReviewsMap {
      */
     protected void addReviews(Path path) {
         try (BufferedReader br = new BufferedReader(new FileReader(path.toString()))) {
-            JsonArray jArr = JsonParser.parseReader(br).getAsJsonObject().get("reviewDetails").getAsJsonObject().get("reviewCollection").getAsJsonObject().getAsJsonArray("review");
-            Gson gson = new GsonBuilder().registerTypeAdapter(Review.class, new ReviewDeserializer()).create();
-            for (JsonElement e : jArr) {
-                JsonObject o = e.getAsJsonObject();
-                long hotelId = o.get("hotelId").getAsLong();
-                Review review = gson.fromJson(o, Review.class);
-
-                hrMap.computeIfAbsent(hotelId, k ->
-                        new AbstractMap.SimpleEntry<>(null, new TreeSet<>()));
-                hrMap.get(hotelId).getValue().add(review);
-            }
+            ReviewStreamReader.read(br, this::addReview);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Adds one Review under its hotel id, creating the hotel's entry if needed, and counts its rating
+     * @param review Review to add
+     * @return boolean true if the hotel did not already hold an equal Review
+     */
+    protected boolean addReview(Review review) {
+        HotelEntry e = hrMap.computeIfAbsent(review.hotelId(), k -> new HotelEntry(newReviewSet()));
+        if (!e.reviews.add(review)) return false;
+
+        e.ratings.add(review.ratingOverall());
+        return true;
+    }
+
+    /**
+     * Finds a hotel's Review by review id
+     * @param hotelId long hotel id
+     * @param reviewId ReviewId review id
+     * @return Review, or null if the hotel holds no Review with that id
+     */
+    public Review findReview(long hotelId, ReviewId reviewId) {
+        HotelEntry e = hrMap.get(hotelId);
+        if (e == null) return null;
+
+        // reviews are ordered by date first, so finding one by id alone is a scan of the hotel's reviews
+        for (Review r : e.reviews) {
+            if (r.reviewId().equals(reviewId))
+                return r;
+        }
+        return null;
+    }
+
+    /**
+     * Swaps the Review with the same hotel and review id for an edited one, and moves its rating
+     * @param updated Review edited copy
+     * @return Review that was replaced, or null if there was none (updated is not added)
+     */
+    protected Review replaceReview(Review updated) {
+        HotelEntry e = hrMap.get(updated.hotelId());
+        if (e == null) return null;
+
+        synchronized (e) {
+            Review old = findReview(updated.hotelId(), updated.reviewId());
+            if (old == null || !e.reviews.remove(old)) return null;
+
+            if (e.reviews.add(updated))
+                e.ratings.replace(old.ratingOverall(), updated.ratingOverall());
+            else
+                e.ratings.remove(old.ratingOverall());
+            return old;
+        }
+    }
+
+    /**
+     * Removes a hotel's Review by review id, and uncounts its rating
+     * @param hotelId long hotel id
+     * @param reviewId ReviewId review id
+     * @return Review removed, or null if there was none
+     */
+    protected Review removeReview(long hotelId, ReviewId reviewId) {
+        HotelEntry e = hrMap.get(hotelId);
+        if (e == null) return null;
+
+        synchronized (e) {
+            Review old = findReview(hotelId, reviewId);
+            if (old == null || !e.reviews.remove(old)) return null;
+
+            e.ratings.remove(old.ratingOverall());
+            return old;
+        }
+    }
+
     /**
      * Map function that checks if a key exists in map
      * @param hotelId long map key
@@ -130,7 +222,7 @@ public class HotelReviewsMap {
      * @return Hotel value associated with provided key
      */
     public Hotel findHotel(long hotelId) {
-        return hrMap.get(hotelId).getKey();
+        return hrMap.get(hotelId).hotel;
     }
 
     /**
@@ -139,6 +231,16 @@ public class HotelReviewsMap {
      * @return Review values associated with provided key; how to use the data structure delegated to consumers
      */
     public Stream<Review> findReviews(long hotelId) {
-        return hrMap.get(hotelId).getValue().stream();
+        return hrMap.get(hotelId).reviews.stream();
+    }
+
+    /**
+     * Access to a hotel's running rating totals
+     * @param hotelId long map key
+     * @return RatingAggregate of the hotel's Reviews, or null if the hotel is not in the map
+     */
+    public RatingAggregate findRatings(long hotelId) {
+        HotelEntry e = hrMap.get(hotelId);
+        return (e == null) ? null : e.ratings;
     }
 }
@@ -1,8 +1,19 @@
 package hotelreviewsdata;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 
 /** Main class. Parse .json files containing hotel and review data,
@@ -10,11 +21,23 @@ import java.util.Map;
  *
  * Usage:
  * ./HotelSearch -hotels [hotels.json] -reviews [review_directory]
+ *   optional: -threads [parser threads] -readers [reader threads] -indexers [indexer threads]
+ *             -queue [ingestion queue capacity] -batch [reviews per batch] -buffer [MB of files read ahead]
+ *             -output [output_file.txt]
+ *             -snapshot [snapshot_file, or none] -watch [true to keep merging new review files]
+ *             -reindex [min ms between search index rebuilds]
  *
  * Command-line queries:
  *   find [hotel_id]          - find information on the given hotel
  *   findReviews [hotel_id]   - find reviews on the given hotel
+ *   ratings [hotel_id]       - average rating and star histogram of the given hotel
  *   findWord [word]          - find reviews that contain the given word
+ *   search [query]           - find reviews matching an AND / OR / NOT query of words, "quoted phrases"
+ *                              and word near/N word, e.g. "free breakfast" AND NOT noisy
+ *   searchHotel [hotel_id] [query] - the same, within one hotel's reviews
+ *   rank [query]             - best 10 reviews for free-text words, by BM25 score
+ *   memory                   - compare review heap footprint of the maps and a columnar store
+ *   postings                 - compare footprint and findWord latency of the word map and a PostingsIndex
  *   q to quit
  *   h for help
  */
@@ -22,6 +45,13 @@ public class HotelSearch {
     private ThreadSafeHotelReviewsMap hrMap;
     private ThreadSafeWordToReviewMap wtrMap;
     private Map<String, String> argsMap;
+    private long initStartMillis;
+    // bumped whenever reviews are merged, edited or removed, so the postings index is rebuilt on a later use
+    private final AtomicLong reviewsVersion = new AtomicLong();
+    private PostingsIndex postings;
+    private long postingsVersion;
+    private long postingsBuiltNanos;
+    private Bm25Ranker ranker;
 
     public HotelSearch() {
         parseArgs(new String[]{});
@@ -39,12 +69,20 @@ public class HotelSearch {
         argsMap.put("-hotels", "input/hotels/hotels.json");
         argsMap.put("-reviews", "input/reviews");
         argsMap.put("-threads", "4");
+        argsMap.put("-readers", "1");
+        argsMap.put("-indexers", "1");
+        argsMap.put("-queue", "64");
+        argsMap.put("-batch", "256");
+        argsMap.put("-buffer", "64");
         argsMap.put("-output", "output/out.txt");
+        argsMap.put("-snapshot", "output/dataset.snapshot");
+        argsMap.put("-watch", "false");
+        argsMap.put("-reindex", "1000");
 
         for (int i = 0; i < args.length; i+=2) {
             String arg = args[i].toLowerCase().trim();
 
-            if (!argsMap.containsKey(arg)) {
+            if (!argsMap.containsKey(arg) || i + 1 >= args.length) {
                 UserIO.printUsage();
                 System.exit(0);
             }
@@ -54,19 +92,174 @@ public class HotelSearch {
     }
 
     /**
-     * Factory function that facilitates building the major data structures
+     * Factory function that facilitates building the major data structures. Loads them from the
+     * dataset snapshot when it matches the current input, otherwise builds them and writes a new snapshot
      */
     public HotelSearch init() {
+        initStartMillis = System.currentTimeMillis();
         String hotelsFileString = argsMap.get("-hotels");
         String reviewsDirString = argsMap.get("-reviews");
         int numThreads = Integer.parseInt(argsMap.get("-threads"));
+        IngestionPipeline.Config ingestion = new IngestionPipeline.Config(
+                Integer.parseInt(argsMap.get("-readers")),
+                numThreads,
+                Integer.parseInt(argsMap.get("-indexers")),
+                Integer.parseInt(argsMap.get("-queue")),
+                Integer.parseInt(argsMap.get("-batch")),
+                Long.parseLong(argsMap.get("-buffer")) << 20);
+
+        String snapshotString = argsMap.get("-snapshot");
+        Long checksum = null;
+        if (!snapshotString.equalsIgnoreCase("none")) {
+            try {
+                checksum = DatasetSnapshot.inputChecksum(hotelsFileString, reviewsDirString);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("Could not fingerprint input, skipping dataset snapshot");
+            }
+        }
+
+        if (checksum != null) {
+            hrMap = new ThreadSafeHotelReviewsMap(ingestion);
+            wtrMap = new ThreadSafeWordToReviewMap(numThreads);
+            if (DatasetSnapshot.load(Paths.get(snapshotString), checksum, hrMap, wtrMap))
+                return this;
+        }
 
-        hrMap = new ThreadSafeHotelReviewsMap(numThreads).init(hotelsFileString, reviewsDirString);
+        hrMap = new ThreadSafeHotelReviewsMap(ingestion).init(hotelsFileString, reviewsDirString);
         wtrMap = new ThreadSafeWordToReviewMap(numThreads).init(hrMap);
 
+        if (checksum != null)
+            DatasetSnapshot.save(Paths.get(snapshotString), checksum, hrMap, wtrMap);
+
         return this;
     }
 
+    /**
+     * Starts merging reviews from review files added to or changed in the reviews directory after init
+     * into the live maps; see ReviewsDirWatcher
+     * @param rescanIntervalMs long time between full rescans of the reviews directory
+     * @param settleMs long time a file must hold still before it is read
+     * @param listener Consumer given each file's newly added and edited Reviews, on the watcher thread
+     * @return the started ReviewsDirWatcher
+     * @throws IOException if the reviews directory cannot be watched
+     */
+    public ReviewsDirWatcher watch(long rescanIntervalMs, long settleMs, Consumer<List<Review>> listener) throws IOException {
+        ReviewsDirWatcher watcher = new ReviewsDirWatcher(Paths.get(argsMap.get("-reviews")), hrMap, wtrMap,
+                initStartMillis, rescanIntervalMs, settleMs, reviews -> {
+                    reviewsVersion.incrementAndGet();
+                    listener.accept(reviews);
+                });
+        watcher.start();
+        return watcher;
+    }
+
+    /**
+     * Adds a Review written outside the reviews directory (such as through the website) to both maps
+     * @param review Review to add
+     * @return boolean true if its hotel did not already hold a Review with that id
+     */
+    public boolean addReview(Review review) {
+        if (!hrMap.addReview(review)) return false;
+
+        wtrMap.addReviews(List.of(review));
+        reviewsVersion.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Edits a Review in both maps, moving its rating in the hotel's totals
+     * @param hotelId long hotel id
+     * @param reviewId ReviewId review id
+     * @param title String new title
+     * @param text String new text
+     * @param rating Integer new rating, or null to keep the current one
+     * @return boolean true if the hotel held a Review with that id
+     */
+    public boolean editReview(long hotelId, ReviewId reviewId, String title, String text, Integer rating) {
+        Review old = hrMap.findReview(hotelId, reviewId);
+        if (old == null) return false;
+
+        Review updated = new Review(hotelId, reviewId, (rating == null) ? old.ratingOverall() : rating,
+                title, text, old.username(), old.datePosted());
+        old = hrMap.replaceReview(updated);
+        if (old == null) return false;
+
+        wtrMap.removeReviews(List.of(old));
+        wtrMap.addReviews(List.of(updated));
+        reviewsVersion.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes a Review from both maps, and its rating from the hotel's totals
+     * @param hotelId long hotel id
+     * @param reviewId ReviewId review id
+     * @return boolean true if the hotel held a Review with that id
+     */
+    public boolean removeReview(long hotelId, ReviewId reviewId) {
+        Review old = hrMap.removeReview(hotelId, reviewId);
+        if (old == null) return false;
+
+        wtrMap.removeReviews(List.of(old));
+        reviewsVersion.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Count of changes to the maps since init; changes whenever reviews are added, edited or removed
+     * @return long version of the review data
+     */
+    public long reviewsVersion() {
+        return reviewsVersion.get();
+    }
+
+    /**
+     * postingsIndex(long), at most one rebuild per -reindex milliseconds
+     * @return PostingsIndex
+     */
+    public PostingsIndex postingsIndex() {
+        return postingsIndex(Long.parseLong(argsMap.get("-reindex")));
+    }
+
+    /**
+     * PostingsIndex over the reviews, built on first use. Once reviews changed, it is rebuilt by the first call
+     * at least minIntervalMs after the last build finished, so a burst of changes costs one rebuild; until then
+     * the old index is returned, missing (at most) the changes of the last minIntervalMs plus one build time
+     * @param minIntervalMs long least time between rebuilds, 0 to rebuild on every call after a change
+     * @return PostingsIndex
+     */
+    public synchronized PostingsIndex postingsIndex(long minIntervalMs) {
+        long version = reviewsVersion.get();
+        if (postings == null || (postingsVersion != version
+                && System.nanoTime() - postingsBuiltNanos >= TimeUnit.MILLISECONDS.toNanos(minIntervalMs))) {
+            postings = PostingsIndex.of(hrMap);
+            postingsVersion = version;
+            postingsBuiltNanos = System.nanoTime();
+        }
+        return postings;
+    }
+
+    /**
+     * ranker(long), at most one rebuild per -reindex milliseconds
+     * @return Bm25Ranker
+     */
+    public Bm25Ranker ranker() {
+        return ranker(Long.parseLong(argsMap.get("-reindex")));
+    }
+
+    /**
+     * Bm25Ranker over postingsIndex(minIntervalMs), rebuilt along with it
+     * @param minIntervalMs long least time between rebuilds, 0 to rebuild on every call after a change
+     * @return Bm25Ranker
+     */
+    public synchronized Bm25Ranker ranker(long minIntervalMs) {
+        PostingsIndex index = postingsIndex(minIntervalMs);
+        if (ranker == null || ranker.index() != index)
+            ranker = new Bm25Ranker(index);
+        return ranker;
+    }
+
     /**
      * Prints all Hotels and Reviews to a file
      */
@@ -78,16 +271,24 @@ public class HotelSearch {
     /**
      * Main. Parses command-line args, delegates file opening and object construction from json files,
      * and manages terminal i/o
-     * @param args -hotels [hotels.json] -reviews [review_directory]
+     * @param args -hotels [hotels.json] -reviews [review_directory], plus optional flag / value pairs
      */
     public static void main(String[] args) {
-        if (!(args.length == 0 || args.length == 2 || args.length == 4 || args.length == 6 || args.length == 8)) {
+        if (args.length % 2 != 0) {
             UserIO.printUsage();
             System.exit(0);
         }
 
         HotelSearch hotelSearch = new HotelSearch(args).init();
         hotelSearch.printToFile();
+        if (Boolean.parseBoolean(hotelSearch.argsMap.get("-watch"))) {
+            try {
+                hotelSearch.watch(30000, 1000, reviews -> {});
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("Could not watch reviews directory, new review files will not be picked up");
+            }
+        }
 
         UserIO cli = new UserIO(hotelSearch);
         cli.run();
@@ -116,7 +317,7 @@ public class HotelSearch {
      * @return unmodifiable List of Longs containing all hotel ids
      */
     public List<Long> returnAllHotelIds() {
-        return hrMap.hrMap.keySet().stream().toList();
+        return Collections.unmodifiableList(hrMap.hrMap.keysInStringOrder());
     }
 
     /**
@@ -132,19 +333,27 @@ public class HotelSearch {
     }
 
     /**
-     * Function to facilitate website hotel search
+     * Function to facilitate website hotel search; reads the hotel's running rating totals
      * @param id long hotel id
+     * @return Double average rating, or null if the hotel has no reviews
      */
     public Double getHotelRating(long id) {
-        List<Review> reviews = returnReviews(id);
-        if (reviews == null || reviews.isEmpty()) {
-            return null;
-        }
-
-        int n = reviews.size();
-        int sum = reviews.stream().map(Review::ratingOverall).reduce(0, Integer::sum);
+        RatingAggregate ratings = hrMap.findRatings(id);
+        return (ratings == null) ? null : ratings.average();
+    }
 
-        return (double)sum / (double)n;
+    /**
+     * Function to facilitate the ratings [hotel_id] query
+     * @param id long hotel id
+     */
+    public void printRatings(long id) {
+        RatingAggregate ratings = hrMap.findRatings(id);
+        if (ratings == null || ratings.count() == 0) {
+            System.out.println("No reviews for that hotel");
+            return;
+        }
+        System.out.printf("Average rating: %.1f from %d reviews%n", ratings.average(), ratings.count());
+        System.out.println(ratings);
     }
 
     /**
@@ -164,6 +373,88 @@ public class HotelSearch {
         return "expedia.com/" + h.address().city().replace(" ", "-") + "-Hotels-" + hotelName + ".h" + h.id() +  ".Hotel-Information";
     }
 
+    /**
+     * Function to facilitate the memory query: copies the reviews into a ColumnarReviewStore and prints
+     * its heap footprint next to that of the same reviews in the hotel map. Both sides are layout estimates
+     * (see HeapEstimate); the measured heap growth while building the store is printed as a cross-check
+     */
+    public void printMemoryReport() {
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long usedBefore = rt.totalMemory() - rt.freeMemory();
+        long start = System.nanoTime();
+        ColumnarReviewStore store = ColumnarReviewStore.of(hrMap);
+        long buildMs = (System.nanoTime() - start) / 1_000_000;
+        System.gc();
+        long measured = rt.totalMemory() - rt.freeMemory() - usedBefore;
+
+        long mapBytes = 0;
+        for (HotelReviewsMap.HotelEntry e : hrMap.hrMap.values()) {
+            for (Review r : e.reviews())
+                mapBytes += HeapEstimate.review(r);
+        }
+        long storeBytes = store.heapBytes();
+        int n = Math.max(1, store.size());
+
+        System.out.println("Review memory for " + store.size() + " reviews");
+        System.out.printf("  hotel map (objects):   %,14d bytes  %,8d bytes/review%n", mapBytes, mapBytes / n);
+        System.out.printf("  columnar store:        %,14d bytes  %,8d bytes/review%n", storeBytes, storeBytes / n);
+        System.out.printf("    text arena %,d bytes, %d distinct usernames%n", store.arenaBytes(), store.usernameCount());
+        System.out.printf("  ratio: %.2fx smaller; store built in %d ms, measured heap growth %,d bytes%n",
+                (double) mapBytes / Math.max(1, storeBytes), buildMs, measured);
+    }
+
+    /**
+     * Function to facilitate the postings query: builds a PostingsIndex from the reviews and prints its heap
+     * footprint and findWord latency next to those of the word map. Latency is the mean time to list every
+     * review of a term, over the most used terms and over a fixed random sample of terms, after a warm-up pass
+     */
+    public void printPostingsReport() {
+        long start = System.nanoTime();
+        PostingsIndex index = PostingsIndex.of(hrMap);
+        long buildMs = (System.nanoTime() - start) / 1_000_000;
+
+        long mapBytes = HeapEstimate.wordToReviewMap(wtrMap);
+        long indexBytes = index.heapBytes();
+        long postings = Math.max(1, index.postingCount());
+
+        System.out.printf("Word index for %d reviews, %d terms, %d postings%n", index.size(), index.termCount(), postings);
+        System.out.printf("  word map (trees):      %,14d bytes  %6.1f bytes/posting%n", mapBytes, (double) mapBytes / postings);
+        System.out.printf("  postings index:        %,14d bytes  %6.1f bytes/posting%n", indexBytes, (double) indexBytes / postings);
+        System.out.printf("    of which term positions %,d bytes, %.1f bytes/posting (the word map has none)%n",
+                index.positionBytes(), (double) index.positionBytes() / postings);
+        System.out.printf("  ratio: %.2fx smaller; index built in %d ms%n", (double) mapBytes / Math.max(1, indexBytes), buildMs);
+
+        List<String> terms = new ArrayList<>(index.terms());
+        if (terms.isEmpty()) return;
+        terms.sort(Comparator.comparingInt((String t) -> index.docFreq(index.termId(t))).reversed());
+        List<String> top = terms.subList(0, Math.min(10, terms.size()));
+        List<String> sample = new ArrayList<>(terms);
+        Collections.shuffle(sample, new Random(42));
+        sample = sample.subList(0, Math.min(1000, sample.size()));
+
+        System.out.println("  findWord latency, mean per query:");
+        System.out.printf("    %d most used terms:  word map %8.1f us  postings index %8.1f us%n", top.size(),
+                findWordMicros(top, w -> wtrMap.findWord(w)), findWordMicros(top, index::findWord));
+        System.out.printf("    %d random terms:   word map %8.1f us  postings index %8.1f us%n", sample.size(),
+                findWordMicros(sample, w -> wtrMap.findWord(w)), findWordMicros(sample, index::findWord));
+    }
+
+    private static double findWordMicros(List<String> words, Function<String, Stream<Review>> findWord) {
+        long sink = 0;
+        for (String w : words)
+            sink += findWord.apply(w).count();
+
+        int rounds = 5;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (String w : words)
+                sink += findWord.apply(w).toList().size();
+        }
+        double micros = (System.nanoTime() - start) / 1e3 / ((double) rounds * words.size());
+        return (sink < 0) ? -1 : micros;
+    }
+
     /**
      * Function to facilitate the findReviews [hotel_id] query
      * @param id long hotel id
@@ -201,14 +492,16 @@ public class HotelSearch {
     /**
      * Function to facilitate the findReviews [hotel_id] server query
      * @param id long hotel id
+     * @param num int most reviews to return
      */
     public List<Review> returnReviews(long id, int num) {
         if (!hrMap.containsKey(id)) return null;
 
-        List<Review> reviews = hrMap.findReviews(id).toList();
+        // only the first num are collected, and a hotel with fewer reviews gives them all
+        List<Review> reviews = hrMap.findReviews(id).limit(num).toList();
         if (reviews.isEmpty()) return null;
 
-        return reviews.subList(0, num);
+        return reviews;
     }
 
     /**
@@ -232,6 +525,67 @@ public class HotelSearch {
         }
     }
 
+    /**
+     * Function to facilitate the search [query] and searchHotel [hotel_id] [query] queries
+     * @param query String AND / OR / NOT word query; see BooleanQuery
+     * @param hotelId long hotel id to search within, or BooleanQuery.ANY_HOTEL
+     */
+    public void printSearch(String query, long hotelId) {
+        BooleanQuery q;
+        try {
+            q = BooleanQuery.parse(query);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (hotelId != BooleanQuery.ANY_HOTEL && !hrMap.containsKey(hotelId)) {
+            System.out.println("No hotel matches that id");
+            return;
+        }
+
+        PostingsIndex index = postingsIndex();
+        long start = System.nanoTime();
+        int[] docs = q.evaluate(index, hotelId);
+        double ms = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("Finding reviews matching %s: %d found in %.2f ms%n", q, docs.length, ms);
+        for (int i = 0; i < Math.min(20, docs.length); i++) {
+            Review r = index.review(docs[i]);
+            System.out.println("--------------------");
+            System.out.printf("Hotel %d, %s on %s: %s%n", r.hotelId(), r.username(), r.datePosted(), q.snippet(r.text(), 200));
+        }
+        if (docs.length > 20)
+            System.out.println("... and " + (docs.length - 20) + " more");
+    }
+
+    /**
+     * Function to facilitate the rank [query] query
+     * @param query String free-text query
+     */
+    public void printRanked(String query) {
+        List<String> words;
+        try {
+            words = Bm25Ranker.queryTerms(query);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        Bm25Ranker r = ranker();
+        long start = System.nanoTime();
+        List<Bm25Ranker.Hit> hits = r.topK(words, BooleanQuery.ANY_HOTEL, 10);
+        double ms = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("Best reviews for %s, found in %.2f ms%n", words, ms);
+        if (hits.isEmpty())
+            System.out.println("No reviews use those words");
+        for (Bm25Ranker.Hit h : hits) {
+            System.out.println("--------------------");
+            System.out.printf("Score: %.3f%n", h.score());
+            System.out.println(r.index().review(h.doc()));
+        }
+    }
+
     /**
      * Function to facilitate the findWord [word] server query
      * @param word word
@@ -239,9 +593,10 @@ public class HotelSearch {
     public List<Review> returnWord(String word, int num) {
         if (!wtrMap.containsKey(word)) return null;
 
-        List<Review> reviews = wtrMap.findWord(word).toList();
+        // only the first num are collected, not the word's whole list
+        List<Review> reviews = wtrMap.findWord(word).limit(num).toList();
         if (reviews.isEmpty()) return null;
 
-        return reviews.subList(0, num);
+        return reviews;
     }
 }
@@ -0,0 +1,466 @@
+package hotelreviewsdata;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+
+/**
+ * Staged pipeline for loading a directory of reviews json files:
+ *
+ *   walk (1 thread) -> paths -> read (readers) -> file buffers -> parse (parsers) -> review batches -> index (indexers)
+ *
+ * Every queue is bounded, so a stage that falls behind blocks the stages feeding it (backpressure)
+ * instead of letting work pile up in memory. Each stage records time spent working, starved (waiting
+ * on its input queue) and blocked (waiting on its output queue), plus the peak depth of its output queue,
+ * which shows whether disk, json parsing or indexing is the bottleneck.
+ *
+ * Memory held by a run: readers reserve a file's size from a budget of bufferBytes before reading it, and
+ * it is given back once the file is parsed and its reviews queued, so at most bufferBytes of files (a file
+ * larger than the budget is read only when nothing else is held) and the parsed Reviews of those files are
+ * held between the read and index stages; a file's Reviews are held until it has parsed whole, so a broken
+ * file adds none. On top of that, the batch queue holds up to queueSize batches of batchSize Reviews.
+ */
+public class IngestionPipeline {
+    // end-of-input markers, compared by identity
+    private static final Path END_PATH = Paths.get("");
+    private static final FileBuffer END_FILE = new FileBuffer(END_PATH, new byte[0], 0);
+    private static final List<Review> END_BATCH = Collections.emptyList();
+
+    private final Config config;
+    private final BlockingQueue<Path> pathQueue;
+    private final BlockingQueue<FileBuffer> fileQueue;
+    private final BlockingQueue<List<Review>> batchQueue;
+    private final ByteBudget buffered;
+
+    private final StageStats walk;
+    private final StageStats read;
+    private final StageStats parse;
+    private final StageStats index;
+    private final Map<String, ParseStats> parseStats = new ConcurrentHashMap<>();
+
+    public IngestionPipeline(Config config) {
+        this.config = config;
+        pathQueue = new ArrayBlockingQueue<>(config.queueSize());
+        fileQueue = new ArrayBlockingQueue<>(config.queueSize());
+        batchQueue = new ArrayBlockingQueue<>(config.queueSize());
+        buffered = new ByteBudget(config.bufferBytes());
+
+        walk = new StageStats("walk", 1, pathQueue);
+        read = new StageStats("read", config.readers(), fileQueue);
+        parse = new StageStats("parse", config.parsers(), batchQueue);
+        index = new StageStats("index", config.indexers(), null);
+    }
+
+    /**
+     * Record for pipeline settings
+     * @param readers int threads reading files from disk
+     * @param parsers int threads parsing json
+     * @param indexers int threads handing review batches to the indexer
+     * @param queueSize int capacity of each queue between stages
+     * @param batchSize int reviews per batch handed to the indexer
+     * @param bufferBytes long bytes of files that may be read but not yet parsed
+     */
+    public record Config(int readers, int parsers, int indexers, int queueSize, int batchSize, long bufferBytes) {
+        public static final long DEFAULT_BUFFER_BYTES = 64L << 20;
+
+        public Config {
+            readers = Math.max(1, readers);
+            parsers = Math.max(1, parsers);
+            indexers = Math.max(1, indexers);
+            queueSize = Math.max(1, queueSize);
+            batchSize = Math.max(1, batchSize);
+            bufferBytes = Math.max(1, bufferBytes);
+        }
+
+        public Config(int readers, int parsers, int indexers, int queueSize, int batchSize) {
+            this(readers, parsers, indexers, queueSize, batchSize, DEFAULT_BUFFER_BYTES);
+        }
+    }
+
+    /**
+     * Loads every reviews json file under reviewsDir, blocking until all are indexed
+     * @param reviewsDir Path of directory holding reviews json files, searched recursively
+     * @param indexer Consumer given each batch of parsed reviews; called from the index threads
+     * @throws IOException if reviewsDir can't be walked
+     */
+    public void run(Path reviewsDir, Consumer<List<Review>> indexer) throws IOException {
+        if (!Files.isDirectory(reviewsDir))
+            throw new IOException("Not a directory: " + reviewsDir);
+
+        long start = System.nanoTime();
+        List<Thread> readers = startStage(read, this::readLoop);
+        List<Thread> parsers = startStage(parse, this::parseLoop);
+        List<Thread> indexers = startStage(index, () -> indexLoop(indexer));
+
+        IOException walkFailure = null;
+        try {
+            try {
+                walkLoop(reviewsDir);
+            } catch (IOException | UncheckedIOException e) {
+                walkFailure = (e instanceof UncheckedIOException u) ? u.getCause() : (IOException) e;
+            }
+
+            // shut stages down in order, once everything upstream has been drained
+            finishStage(readers, pathQueue, END_PATH);
+            finishStage(parsers, fileQueue, END_FILE);
+            finishStage(indexers, batchQueue, END_BATCH);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            readers.forEach(Thread::interrupt);
+            parsers.forEach(Thread::interrupt);
+            indexers.forEach(Thread::interrupt);
+        }
+
+        printStats(System.nanoTime() - start);
+        if (walkFailure != null) throw walkFailure;
+    }
+
+    private List<Thread> startStage(StageStats stage, Runnable loop) {
+        List<Thread> threads = new ArrayList<>(stage.threads);
+        for (int i = 1; i <= stage.threads; i++) {
+            Thread t = new Thread(loop, "ingest-" + stage.name + "-" + i);
+            t.setDaemon(true);
+            t.start();
+            threads.add(t);
+        }
+        return threads;
+    }
+
+    private <T> void finishStage(List<Thread> threads, BlockingQueue<T> input, T end) throws InterruptedException {
+        for (int i = 0; i < threads.size(); i++)
+            input.put(end);
+        for (Thread t : threads)
+            t.join();
+    }
+
+    private void walkLoop(Path reviewsDir) throws IOException, InterruptedException {
+        try (Stream<Path> paths = Files.walk(reviewsDir)) {
+            Iterator<Path> it = paths.iterator();
+            while (it.hasNext()) {
+                long t0 = System.nanoTime();
+                Path p = it.next();
+                if (!p.toString().endsWith(".json") || !Files.isRegularFile(p)) {
+                    walk.busyNanos.addAndGet(System.nanoTime() - t0);
+                    continue;
+                }
+                long t1 = System.nanoTime();
+                walk.busyNanos.addAndGet(t1 - t0);
+                walk.items.incrementAndGet();
+
+                pathQueue.put(p);
+                walk.blocked(t1);
+            }
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (true) {
+                long t0 = System.nanoTime();
+                Path p = pathQueue.take();
+                if (p == END_PATH) return;
+                long t1 = System.nanoTime();
+                read.starvedNanos.addAndGet(t1 - t0);
+
+                long reserved;
+                try {
+                    reserved = buffered.acquire(Files.size(p));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.out.println("Could not read reviews file " + p);
+                    read.busyNanos.addAndGet(System.nanoTime() - t1);
+                    continue;
+                }
+                // time waiting for room in the byte budget is backpressure, as blocked on the queue is
+                long t2 = System.nanoTime();
+                read.blockedNanos.addAndGet(t2 - t1);
+
+                byte[] bytes;
+                try {
+                    bytes = Files.readAllBytes(p);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.out.println("Could not read reviews file " + p);
+                    buffered.release(reserved);
+                    continue;
+                } finally {
+                    read.busyNanos.addAndGet(System.nanoTime() - t2);
+                }
+                read.items.incrementAndGet();
+                read.bytes.addAndGet(bytes.length);
+
+                long t3 = System.nanoTime();
+                fileQueue.put(new FileBuffer(p, bytes, reserved));
+                read.blocked(t3);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void parseLoop() {
+        ParseStats worker = parseStats.computeIfAbsent(Thread.currentThread().getName(), k -> new ParseStats());
+        Batcher batcher = new Batcher();
+        try {
+            while (true) {
+                long t0 = System.nanoTime();
+                FileBuffer fb = fileQueue.take();
+                if (fb == END_FILE) break;
+                long t1 = System.nanoTime();
+                parse.starvedNanos.addAndGet(t1 - t0);
+
+                long blockedBefore = batcher.blockedNanos;
+                // a file's reviews are only queued once all of it parsed, so a broken file adds nothing
+                List<Review> parsed = new ArrayList<>();
+                int count = 0;
+                try (InputStreamReader in = new InputStreamReader(new ByteArrayInputStream(fb.bytes()), StandardCharsets.UTF_8)) {
+                    ReviewStreamReader.read(in, parsed::add);
+                    count = parsed.size();
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                    System.out.println("Could not parse reviews file " + fb.path() + ", skipping its "
+                            + parsed.size() + " reviews parsed before the error");
+                }
+                try {
+                    if (count > 0)
+                        parsed.forEach(batcher);
+                } finally {
+                    buffered.release(fb.reserved());
+                }
+
+                long busy = System.nanoTime() - t1 - (batcher.blockedNanos - blockedBefore);
+                parse.busyNanos.addAndGet(busy);
+                parse.items.incrementAndGet();
+                parse.bytes.addAndGet(fb.bytes().length);
+                worker.record(fb.bytes().length, count, busy);
+            }
+            batcher.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void indexLoop(Consumer<List<Review>> indexer) {
+        try {
+            while (true) {
+                long t0 = System.nanoTime();
+                List<Review> batch = batchQueue.take();
+                if (batch == END_BATCH) return;
+                long t1 = System.nanoTime();
+                index.starvedNanos.addAndGet(t1 - t0);
+
+                try {
+                    indexer.accept(batch);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                index.busyNanos.addAndGet(System.nanoTime() - t1);
+                index.items.addAndGet(batch.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void printStats(long wallNanos) {
+        System.out.printf("Ingestion finished in %.2fs%n", wallNanos / 1e9);
+        StageStats bottleneck = null;
+        for (StageStats s : getStageStats()) {
+            System.out.println("  " + s.toString(wallNanos));
+            if (bottleneck == null || s.utilization(wallNanos) > bottleneck.utilization(wallNanos))
+                bottleneck = s;
+        }
+        if (bottleneck != null)
+            System.out.println("  busiest stage: " + bottleneck.name);
+        parseStats.forEach((w, stats) -> System.out.println("  " + w + ": " + stats));
+    }
+
+    /**
+     * Per-stage counters of the last run, in pipeline order
+     * @return List of StageStats for walk, read, parse, index
+     */
+    public List<StageStats> getStageStats() {
+        return List.of(walk, read, parse, index);
+    }
+
+    /**
+     * Parse throughput of each parser thread of the last run
+     * @return Map of parser thread name to its ParseStats
+     */
+    public Map<String, ParseStats> getParseStats() {
+        return Collections.unmodifiableMap(parseStats);
+    }
+
+    /**
+     * Raw contents of one reviews json file, and the bytes of the budget reserved for it
+     */
+    private record FileBuffer(Path path, byte[] bytes, long reserved) {}
+
+    /**
+     * Bytes of files read and not yet parsed; readers wait for room before reading a file
+     */
+    private static class ByteBudget {
+        private final long capacity;
+        private long used;
+
+        ByteBudget(long capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Waits until bytes fit in the budget, then reserves them; a file larger than the whole budget
+         * reserves all of it, so it waits for every other file to be parsed
+         * @param bytes long file size
+         * @return long bytes reserved, to be released once the file is parsed
+         */
+        synchronized long acquire(long bytes) throws InterruptedException {
+            long n = Math.min(bytes, capacity);
+            while (used + n > capacity)
+                wait();
+            used += n;
+            return n;
+        }
+
+        synchronized void release(long bytes) {
+            used -= bytes;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Groups one parser's reviews into batches and queues each full batch for the indexer,
+     * counting time spent blocked on a full queue
+     */
+    private class Batcher implements Consumer<Review> {
+        private List<Review> batch = new ArrayList<>(config.batchSize());
+        private long blockedNanos;
+
+        @Override
+        public void accept(Review r) {
+            batch.add(r);
+            if (batch.size() == config.batchSize()) {
+                try {
+                    flush();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while queueing reviews", e);
+                }
+            }
+        }
+
+        void flush() throws InterruptedException {
+            if (batch.isEmpty()) return;
+
+            long t0 = System.nanoTime();
+            batchQueue.put(batch);
+            long blocked = parse.blocked(t0);
+            blockedNanos += blocked;
+            batch = new ArrayList<>(config.batchSize());
+        }
+    }
+
+    /**
+     * Counters of one pipeline stage; items are files for walk / read / parse and reviews for index
+     */
+    public static class StageStats {
+        private final String name;
+        private final int threads;
+        private final BlockingQueue<?> output;
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong starvedNanos = new AtomicLong();
+        private final AtomicLong blockedNanos = new AtomicLong();
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+        private StageStats(String name, int threads, BlockingQueue<?> output) {
+            this.name = name;
+            this.threads = threads;
+            this.output = output;
+        }
+
+        /**
+         * Records time blocked on a put to the output queue since t0, and the queue's depth after it
+         * @return long nanos blocked
+         */
+        private long blocked(long t0) {
+            long blocked = System.nanoTime() - t0;
+            blockedNanos.addAndGet(blocked);
+            maxQueueDepth.accumulateAndGet(output.size(), Math::max);
+            return blocked;
+        }
+
+        public String getName() { return name; }
+        public int getThreads() { return threads; }
+        public long getItems() { return items.get(); }
+        public long getBytes() { return bytes.get(); }
+        public long getBusyNanos() { return busyNanos.get(); }
+        public long getStarvedNanos() { return starvedNanos.get(); }
+        public long getBlockedNanos() { return blockedNanos.get(); }
+        public int getQueueDepth() { return (output == null) ? 0 : output.size(); }
+        public int getMaxQueueDepth() { return maxQueueDepth.get(); }
+
+        /**
+         * Fraction of the stage's thread time spent working
+         */
+        private double utilization(long wallNanos) {
+            return busyNanos.get() / Math.max(1.0, (double) wallNanos * threads);
+        }
+
+        private String toString(long wallNanos) {
+            double secs = Math.max(1e-9, wallNanos / 1e9);
+            return String.format("%-5s x%d: %d items (%.0f/s, %.2f MB/s), busy %.0f%%, starved %.2fs, blocked %.2fs, max queue %d",
+                    name, threads, items.get(), items.get() / secs, bytes.get() / 1e6 / secs, 100 * utilization(wallNanos),
+                    starvedNanos.get() / 1e9, blockedNanos.get() / 1e9, maxQueueDepth.get());
+        }
+    }
+
+    /**
+     * Parse throughput counters of one parser thread; rates are over the time it spent parsing
+     */
+    public static class ParseStats {
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong reviews = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        private void record(long fileBytes, int fileReviews, long nanos) {
+            files.incrementAndGet();
+            bytes.addAndGet(fileBytes);
+            reviews.addAndGet(fileReviews);
+            busyNanos.addAndGet(nanos);
+        }
+
+        public long getFiles() { return files.get(); }
+        public long getBytes() { return bytes.get(); }
+        public long getReviews() { return reviews.get(); }
+
+        private double seconds() {
+            return Math.max(1e-9, busyNanos.get() / 1e9);
+        }
+
+        public double filesPerSecond() { return files.get() / seconds(); }
+        public double megabytesPerSecond() { return bytes.get() / 1e6 / seconds(); }
+        public double reviewsPerSecond() { return reviews.get() / seconds(); }
+
+        @Override
+        public String toString() {
+            return String.format("%d files, %d reviews in %.2fs (%.1f files/s, %.2f MB/s, %.0f reviews/s)",
+                    files.get(), reviews.get(), busyNanos.get() / 1e9, filesPerSecond(), megabytesPerSecond(), reviewsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package hotelreviewsdata;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+
+/**
+ * Open-addressing hash map from primitive long keys to values, with linear probing.
+ * Lookups neither box the key nor allocate, and never lock: a slot's key is written before its value
+ * is published through an AtomicReferenceArray, so a reader that sees a value also sees its key.
+ * Inserts (and resizes, which publish a new table) are serialized on the map. There is no removal.
+ * @param <V> value type
+ */
+public class LongKeyedMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile Table<V> table;
+    private volatile int size;
+
+    public LongKeyedMap() {
+        this(MIN_CAPACITY);
+    }
+    public LongKeyedMap(int expectedSize) {
+        table = new Table<>(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Fixed-capacity slot arrays; a slot is empty while its value is null
+     */
+    private static class Table<V> {
+        final long[] keys;
+        final AtomicReferenceArray<V> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        // keep the load factor at or below 1/2
+        int n = MIN_CAPACITY;
+        while (n < expectedSize * 2L && n < (1 << 30))
+            n <<= 1;
+        return n;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Gets the value for key
+     * @param key long key
+     * @return V value, or null if key is absent
+     */
+    public V get(long key) {
+        Table<V> t = table;
+        for (int i = hash(key) & t.mask; ; i = (i + 1) & t.mask) {
+            V v = t.values.get(i);
+            if (v == null) return null;
+            if (t.keys[i] == key) return v;
+        }
+    }
+
+    /**
+     * Checks if key has a value
+     * @param key long key
+     * @return boolean key is present
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Gets the value for key, creating and inserting it first if key is absent;
+     * the function is called at most once per key
+     * @param key long key
+     * @param create LongFunction making the value for an absent key; must not return null
+     * @return V current value for key
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> create) {
+        V v = get(key);
+        if (v != null) return v;
+
+        synchronized (this) {
+            if ((v = get(key)) != null) return v;
+
+            v = Objects.requireNonNull(create.apply(key));
+            if ((size + 1) * 2L > table.keys.length)
+                resize();
+            insert(table, key, v);
+            size++;
+            return v;
+        }
+    }
+
+    private void insert(Table<V> t, long key, V v) {
+        int i = hash(key) & t.mask;
+        while (t.values.get(i) != null)
+            i = (i + 1) & t.mask;
+        t.keys[i] = key;
+        t.values.set(i, v);
+    }
+
+    private void resize() {
+        Table<V> old = table;
+        Table<V> t = new Table<>(old.keys.length * 2);
+        for (int i = 0; i < old.keys.length; i++) {
+            V v = old.values.get(i);
+            if (v != null)
+                insert(t, old.keys[i], v);
+        }
+        table = t;
+    }
+
+    /**
+     * Number of keys in the map
+     * @return int size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Snapshot of the keys, in no particular order
+     * @return long[] of keys
+     */
+    public long[] keys() {
+        Table<V> t = table;
+        long[] keys = new long[t.keys.length];
+        int n = 0;
+        for (int i = 0; i < t.keys.length; i++) {
+            if (t.values.get(i) != null)
+                keys[n++] = t.keys[i];
+        }
+        return Arrays.copyOf(keys, n);
+    }
+
+    /**
+     * Snapshot of the keys, sorted by their decimal String form ("10" before "9"); this boxes,
+     * so it is meant for occasional ordered walks such as printing, not lookups
+     * @return List of keys in lexicographic order
+     */
+    public List<Long> keysInStringOrder() {
+        List<Long> keys = new ArrayList<>(size);
+        for (long k : keys())
+            keys.add(k);
+        keys.sort(Comparator.comparing(a -> Long.toString(a)));
+        return keys;
+    }
+
+    /**
+     * Snapshot of the values, in no particular order
+     * @return List of values
+     */
+    public List<V> values() {
+        Table<V> t = table;
+        List<V> values = new ArrayList<>(size);
+        for (int i = 0; i < t.keys.length; i++) {
+            V v = t.values.get(i);
+            if (v != null)
+                values.add(v);
+        }
+        return values;
+    }
+}
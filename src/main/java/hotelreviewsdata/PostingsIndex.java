@@ -0,0 +1,566 @@
+package hotelreviewsdata;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+
+/**
+ * Immutable, compressed inverted index over the Reviews of a HotelReviewsMap, with the terms of WordToReviewMap.
+ * Every review gets a dense int doc id, in Review order (date posted, descending, then review id), and each
+ * term's postings are its ascending doc ids, stored as varint-encoded gaps, with a parallel varint stream
+ * of the review's term frequencies. All terms share one doc byte arena and one frequency byte arena,
+ * addressed by per-term offsets, so a posting costs about two bytes instead of a tree node and a boxed key.
+ *
+ * Postings are read with a Cursor, which decodes in place and allocates nothing; findWord keeps the
+ * WordToReviewMap order (frequency, descending, then date posted, descending). Unlike the tree sets,
+ * reviews of the same frequency posted the same day are all kept, in review id order.
+ *
+ * Every SKIP_INTERVAL-th posting of a term has a skip entry (the doc before it and its offsets in both arenas),
+ * so Cursor.advance can gallop over the skip entries and decode only the block holding its target. Each hotel's
+ * doc ids are also kept as a sorted int array, for hotel-filtered queries, and each review's length in terms,
+ * for ranking. Cursor.block and blockLastDoc expose the skip blocks, so a ranker can keep bounds per block.
+ *
+ * A third arena holds each posting's term positions (see Tokenizer.forEachPosition), freq of them per posting,
+ * as varint gaps from the previous position of the same posting. Cursors only decode them when asked
+ * (Cursor.nextPosition), so queries that don't need positions only pay for one add per posting.
+ */
+public class PostingsIndex {
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+    public static final int SKIP_INTERVAL = 64;
+
+    private final Review[] docs;
+    // number of terms in each doc, repeats included
+    private final int[] docLengths;
+    private final Map<String, Integer> termIds;
+    private final String[] terms;
+    private final int[] docFreqs;
+    private final byte[] docBytes;
+    private final byte[] freqBytes;
+    private final byte[] positionBytes;
+    // postings of term t span docBytes[docStarts[t], docStarts[t + 1]) and freqBytes[freqStarts[t], freqStarts[t + 1]),
+    // their positions start at positionBytes[positionStarts[t]]
+    private final int[] docStarts;
+    private final int[] freqStarts;
+    private final int[] positionStarts;
+    // skip entries of term t are [skipStarts[t], skipStarts[t + 1]); entry k resumes decoding after doc skipDocs[k]
+    private final int[] skipStarts;
+    private final int[] skipDocs;
+    private final int[] skipDocPos;
+    private final int[] skipFreqPos;
+    private final int[] skipPositionPos;
+    // hotel id -> ascending doc ids of its reviews
+    private final LongKeyedMap<int[]> hotelDocs;
+
+    private PostingsIndex(Review[] docs, int[] docLengths, Map<String, TermBuffer> buffers) {
+        this.docs = docs;
+        this.docLengths = docLengths;
+        terms = buffers.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+
+        long docTotal = 0, freqTotal = 0, positionTotal = 0;
+        int skipTotal = 0;
+        for (TermBuffer b : buffers.values()) {
+            docTotal += b.docs.size;
+            freqTotal += b.freqs.size;
+            positionTotal += b.positions.size;
+            skipTotal += b.skipCount;
+        }
+        if (docTotal > Integer.MAX_VALUE - 8 || freqTotal > Integer.MAX_VALUE - 8 || positionTotal > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Postings exceed the 2 GB arenas");
+
+        termIds = new HashMap<>(terms.length * 4 / 3 + 1);
+        docFreqs = new int[terms.length];
+        docBytes = new byte[(int) docTotal];
+        freqBytes = new byte[(int) freqTotal];
+        positionBytes = new byte[(int) positionTotal];
+        docStarts = new int[terms.length + 1];
+        freqStarts = new int[terms.length + 1];
+        positionStarts = new int[terms.length + 1];
+        skipStarts = new int[terms.length + 1];
+        skipDocs = new int[skipTotal];
+        skipDocPos = new int[skipTotal];
+        skipFreqPos = new int[skipTotal];
+        skipPositionPos = new int[skipTotal];
+        for (int t = 0; t < terms.length; t++) {
+            TermBuffer b = buffers.get(terms[t]);
+            termIds.put(terms[t], t);
+            docFreqs[t] = b.docFreq;
+            docStarts[t + 1] = b.docs.copyTo(docBytes, docStarts[t]);
+            freqStarts[t + 1] = b.freqs.copyTo(freqBytes, freqStarts[t]);
+            positionStarts[t + 1] = b.positions.copyTo(positionBytes, positionStarts[t]);
+
+            int k = skipStarts[t];
+            for (int i = 0; i < b.skipCount; i++, k++) {
+                skipDocs[k] = b.skipDocs[i];
+                skipDocPos[k] = docStarts[t] + b.skipDocPos[i];
+                skipFreqPos[k] = freqStarts[t] + b.skipFreqPos[i];
+                skipPositionPos[k] = positionStarts[t] + b.skipPositionPos[i];
+            }
+            skipStarts[t + 1] = k;
+        }
+
+        // docs are in Review order, so each hotel's reviews are collected already sorted by doc id
+        hotelDocs = new LongKeyedMap<>();
+        Map<Long, int[]> counts = new HashMap<>();
+        for (Review r : docs)
+            counts.computeIfAbsent(r.hotelId(), k -> new int[1])[0]++;
+        for (Map.Entry<Long, int[]> c : counts.entrySet())
+            hotelDocs.computeIfAbsent(c.getKey(), k -> new int[c.getValue()[0]]);
+        for (int doc = docs.length - 1; doc >= 0; doc--)
+            hotelDocs.get(docs[doc].hotelId())[--counts.get(docs[doc].hotelId())[0]] = doc;
+    }
+
+    /**
+     * Indexes every Review of mapIn
+     * @param mapIn HotelReviewsMap to index; should not be changing while this runs
+     * @return PostingsIndex over mapIn's Reviews
+     */
+    public static PostingsIndex of(HotelReviewsMap mapIn) {
+        List<Review> all = new ArrayList<>();
+        for (HotelReviewsMap.HotelEntry e : mapIn.hrMap.values())
+            all.addAll(e.reviews());
+        Review[] docs = all.toArray(new Review[0]);
+        Arrays.sort(docs);
+
+        // docs are visited in doc id order, so every term's postings are appended already sorted
+        Map<String, TermBuffer> buffers = new HashMap<>();
+        Map<String, Occurrences> occurrences = new HashMap<>();
+        int[] docLengths = new int[docs.length];
+        Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+        for (int doc = 0; doc < docs.length; doc++) {
+            occurrences.clear();
+            tokenizer.forEachPosition(docs[doc].text(),
+                    (t, position, start, end) -> occurrences.computeIfAbsent(t, k -> new Occurrences()).add(position));
+            for (Map.Entry<String, Occurrences> o : occurrences.entrySet()) {
+                buffers.computeIfAbsent(o.getKey(), k -> new TermBuffer()).add(doc, o.getValue());
+                docLengths[doc] += o.getValue().count;
+            }
+        }
+
+        return new PostingsIndex(docs, docLengths, buffers);
+    }
+
+    /**
+     * Positions of one term in the doc being indexed, ascending
+     */
+    private static class Occurrences {
+        int[] positions = new int[4];
+        int count;
+
+        void add(int position) {
+            if (count == positions.length)
+                positions = Arrays.copyOf(positions, count * 2);
+            positions[count++] = position;
+        }
+    }
+
+    /**
+     * One term's postings while building
+     */
+    private static class TermBuffer {
+        final VarintBuffer docs = new VarintBuffer();
+        final VarintBuffer freqs = new VarintBuffer();
+        final VarintBuffer positions = new VarintBuffer();
+        int lastDoc;
+        int docFreq;
+        int[] skipDocs, skipDocPos, skipFreqPos, skipPositionPos;
+        int skipCount;
+
+        void add(int doc, Occurrences o) {
+            if (docFreq > 0 && docFreq % SKIP_INTERVAL == 0) {
+                if (skipDocs == null || skipCount == skipDocs.length) {
+                    int n = (skipDocs == null) ? 4 : skipCount * 2;
+                    skipDocs = (skipDocs == null) ? new int[n] : Arrays.copyOf(skipDocs, n);
+                    skipDocPos = (skipDocPos == null) ? new int[n] : Arrays.copyOf(skipDocPos, n);
+                    skipFreqPos = (skipFreqPos == null) ? new int[n] : Arrays.copyOf(skipFreqPos, n);
+                    skipPositionPos = (skipPositionPos == null) ? new int[n] : Arrays.copyOf(skipPositionPos, n);
+                }
+                skipDocs[skipCount] = lastDoc;
+                skipDocPos[skipCount] = docs.size;
+                skipFreqPos[skipCount] = freqs.size;
+                skipPositionPos[skipCount] = positions.size;
+                skipCount++;
+            }
+            docs.write((docFreq == 0) ? doc : doc - lastDoc);
+            freqs.write(o.count);
+            for (int i = 0, prev = 0; i < o.count; prev = o.positions[i++])
+                positions.write(o.positions[i] - prev);
+            lastDoc = doc;
+            docFreq++;
+        }
+    }
+
+    /**
+     * Growable byte array of unsigned LEB128 varints: 7 bits per byte, high bit set on all but the last byte
+     */
+    private static class VarintBuffer {
+        byte[] bytes = new byte[8];
+        int size;
+
+        void write(int v) {
+            if (size + 5 > bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            while ((v & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[size++] = (byte) v;
+        }
+
+        int copyTo(byte[] dest, int offset) {
+            System.arraycopy(bytes, 0, dest, offset, size);
+            return offset + size;
+        }
+    }
+
+    /**
+     * Forward-only iterator over ascending doc ids
+     */
+    public interface DocIterator {
+        /**
+         * Advances to the next doc
+         * @return int next doc id, or NO_MORE_DOCS once exhausted
+         */
+        int nextDoc();
+
+        /**
+         * Advances to the first doc at or after target; does not move if already there
+         * @param target int doc id
+         * @return int current doc id afterwards, or NO_MORE_DOCS once exhausted
+         */
+        int advance(int target);
+
+        /** @return int current doc id; -1 before the first nextDoc, NO_MORE_DOCS at the end */
+        int doc();
+
+        /** @return int number of docs the iterator would visit, for ordering intersections */
+        int cost();
+    }
+
+    /**
+     * Reusable reader of one term's postings, in ascending doc id order. Decodes straight from the arenas,
+     * so iterating allocates nothing; reset it to read another term.
+     *
+     * Usage: for (int doc = c.nextDoc(); doc != NO_MORE_DOCS; doc = c.nextDoc()) { ... c.freq() ... }
+     */
+    public final class Cursor implements DocIterator {
+        private int docPos, docEnd, freqPos;
+        private int skipBase, skipPos, skipEnd;
+        // ordinal of the current posting within the term
+        private int ord;
+        private int doc, freq, cost;
+        // positions of earlier docs not decoded yet, and those of the current doc left to read
+        private int positionPos, positionsToSkip, positionsLeft, position;
+
+        private Cursor() {}
+
+        /**
+         * Positions the cursor before the first posting of a term
+         * @param termId int term id, or -1 for no postings
+         * @return this Cursor
+         */
+        public Cursor reset(int termId) {
+            doc = -1;
+            freq = 0;
+            ord = -1;
+            positionsToSkip = positionsLeft = 0;
+            if (termId < 0) {
+                docPos = docEnd = freqPos = positionPos = skipBase = skipPos = skipEnd = cost = 0;
+            } else {
+                docPos = docStarts[termId];
+                docEnd = docStarts[termId + 1];
+                freqPos = freqStarts[termId];
+                positionPos = positionStarts[termId];
+                skipBase = skipPos = skipStarts[termId];
+                skipEnd = skipStarts[termId + 1];
+                cost = docFreqs[termId];
+            }
+            return this;
+        }
+
+        @Override
+        public int nextDoc() {
+            if (docPos >= docEnd)
+                return doc = NO_MORE_DOCS;
+
+            int gap = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = docBytes[docPos++];
+                gap |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            int f = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = freqBytes[freqPos++];
+                f |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+
+            freq = f;
+            ord++;
+            positionsToSkip += positionsLeft;
+            positionsLeft = f;
+            position = 0;
+            return doc = (doc < 0) ? gap : doc + gap;
+        }
+
+        /**
+         * Gallops over the skip entries to the last block starting before target, then decodes from there
+         */
+        @Override
+        public int advance(int target) {
+            if (doc >= target) return doc;
+
+            // only gallop when target is past the current block; skip entries the cursor decoded through are passed over
+            skipPos = Math.max(skipPos, skipBase + block());
+            if (skipPos < skipEnd && skipDocs[skipPos] < target) {
+                int lo = skipPos, bound = 1;
+                while (lo + bound < skipEnd && skipDocs[lo + bound] < target)
+                    bound <<= 1;
+                // last entry before target is in [lo + bound / 2, min(lo + bound, skipEnd) - 1]
+                int l = lo + bound / 2, h = Math.min(lo + bound, skipEnd) - 1;
+                while (l < h) {
+                    int mid = (l + h + 1) >>> 1;
+                    if (skipDocs[mid] < target) l = mid;
+                    else h = mid - 1;
+                }
+                if (skipDocs[l] > doc) {
+                    doc = skipDocs[l];
+                    docPos = skipDocPos[l];
+                    freqPos = skipFreqPos[l];
+                    positionPos = skipPositionPos[l];
+                    positionsToSkip = positionsLeft = 0;
+                    ord = (l - skipBase + 1) * SKIP_INTERVAL - 1;
+                }
+                skipPos = l + 1;
+            }
+
+            while (doc < target)
+                nextDoc();
+            return doc;
+        }
+
+        @Override
+        public int doc() { return doc; }
+
+        @Override
+        public int cost() { return cost; }
+
+        /** @return int frequency of the term in the current doc */
+        public int freq() { return freq; }
+
+        /**
+         * Reads the next position of the term in the current doc; call at most freq() times per doc
+         * @return int position, ascending within the doc
+         */
+        public int nextPosition() {
+            // catch up on the docs passed without reading their positions: count varint terminators
+            for (; positionsToSkip > 0; positionsToSkip--) {
+                while (positionBytes[positionPos++] < 0);
+            }
+
+            int gap = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = positionBytes[positionPos++];
+                gap |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            positionsLeft--;
+            return position += gap;
+        }
+
+        /** @return int index, counted from the term's first, of the SKIP_INTERVAL-posting block holding the current doc */
+        public int block() { return ord / SKIP_INTERVAL; }
+
+        /** @return int last doc id of the current block, or NO_MORE_DOCS - 1 in the term's last block */
+        public int blockLastDoc() {
+            int k = skipBase + block();
+            return (k < skipEnd) ? skipDocs[k] : NO_MORE_DOCS - 1;
+        }
+    }
+
+    /**
+     * Iterator over a sorted int array of doc ids, galloping on advance
+     */
+    public static final class ArrayIterator implements DocIterator {
+        private final int[] ids;
+        private int i = -1;
+
+        public ArrayIterator(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public int nextDoc() {
+            return doc(++i);
+        }
+
+        @Override
+        public int advance(int target) {
+            if (doc() >= target) return doc();
+
+            int lo = Math.max(0, i), bound = 1;
+            while (lo + bound < ids.length && ids[lo + bound] < target)
+                bound <<= 1;
+            int idx = Arrays.binarySearch(ids, lo + bound / 2, Math.min(lo + bound + 1, ids.length), target);
+            return doc(i = (idx >= 0) ? idx : -idx - 1);
+        }
+
+        @Override
+        public int doc() {
+            return (i < 0) ? -1 : doc(i);
+        }
+
+        private int doc(int pos) {
+            if (pos >= ids.length) {
+                i = ids.length;
+                return NO_MORE_DOCS;
+            }
+            return ids[pos];
+        }
+
+        @Override
+        public int cost() { return ids.length; }
+    }
+
+    /**
+     * Makes a cursor over this index; one per thread, reused across terms
+     * @return new Cursor, positioned on no term
+     */
+    public Cursor cursor() {
+        return new Cursor().reset(-1);
+    }
+
+    /**
+     * Looks up a term's id
+     * @param word String term
+     * @return int term id, or -1 if no review uses the term
+     */
+    public int termId(String word) {
+        Integer t = termIds.get(word);
+        return (t == null) ? -1 : t;
+    }
+
+    /**
+     * Map function to check if a String is an indexed term
+     * @param word String to check against the index
+     * @return boolean if some review uses the term
+     */
+    public boolean containsKey(String word) {
+        return termIds.containsKey(word);
+    }
+
+    /**
+     * Reviews using word, ordered by word frequency (descending), then date posted (descending)
+     * @param word String indexed term
+     * @return Stream of Reviews, empty if no review uses the term
+     */
+    public Stream<Review> findWord(String word) {
+        int t = termId(word);
+        if (t < 0) return Stream.empty();
+
+        // counting sort by frequency, descending; postings come in doc id order, which is date order within a frequency
+        Cursor c = cursor().reset(t);
+        int maxFreq = 0;
+        for (int doc = c.nextDoc(); doc != NO_MORE_DOCS; doc = c.nextDoc())
+            maxFreq = Math.max(maxFreq, c.freq());
+
+        int[] starts = new int[maxFreq + 2];
+        c.reset(t);
+        for (int doc = c.nextDoc(); doc != NO_MORE_DOCS; doc = c.nextDoc())
+            starts[maxFreq - c.freq() + 1]++;
+        for (int i = 1; i < starts.length; i++)
+            starts[i] += starts[i - 1];
+
+        int[] ordered = new int[docFreqs[t]];
+        c.reset(t);
+        for (int doc = c.nextDoc(); doc != NO_MORE_DOCS; doc = c.nextDoc())
+            ordered[starts[maxFreq - c.freq()]++] = doc;
+        return Arrays.stream(ordered).mapToObj(doc -> docs[doc]);
+    }
+
+    /**
+     * Review with a doc id
+     * @param doc int doc id
+     * @return Review
+     */
+    public Review review(int doc) {
+        return docs[doc];
+    }
+
+    /**
+     * Number of terms in a review, repeats included, for length normalization when ranking
+     * @param doc int doc id
+     * @return int review length in terms
+     */
+    public int docLength(int doc) {
+        return docLengths[doc];
+    }
+
+    /**
+     * Doc ids of a hotel's reviews
+     * @param hotelId long hotel id
+     * @return int[] ascending doc ids, empty if the hotel has no reviews; do not modify
+     */
+    public int[] hotelDocs(long hotelId) {
+        int[] ids = hotelDocs.get(hotelId);
+        return (ids == null) ? new int[0] : ids;
+    }
+
+    /**
+     * Number of reviews using a term
+     * @param termId int term id
+     * @return int document frequency
+     */
+    public int docFreq(int termId) {
+        return docFreqs[termId];
+    }
+
+    /** @return long bytes of encoded term positions, included in heapBytes */
+    public long positionBytes() { return positionBytes.length; }
+
+    /** @return int number of indexed reviews */
+    public int size() { return docs.length; }
+
+    /** @return int number of distinct terms */
+    public int termCount() { return terms.length; }
+
+    /** @return long number of (term, review) postings */
+    public long postingCount() {
+        long n = 0;
+        for (int df : docFreqs)
+            n += df;
+        return n;
+    }
+
+    /**
+     * All terms, in ascending order; term ids are positions in this list
+     * @return unmodifiable List of terms
+     */
+    public List<String> terms() {
+        return Collections.unmodifiableList(Arrays.asList(terms));
+    }
+
+    /**
+     * Bytes held by the index itself, for a 64-bit JVM with compressed references; the Reviews are
+     * shared with the hotel map and only counted as references
+     * @return long estimated heap bytes
+     */
+    public long heapBytes() {
+        long bytes = HeapEstimate.array(docs.length, HeapEstimate.REF) + HeapEstimate.array(docLengths.length, 4)
+                + HeapEstimate.array(terms.length, HeapEstimate.REF)
+                + HeapEstimate.array(docFreqs.length, 4)
+                + HeapEstimate.array(docBytes.length, 1) + HeapEstimate.array(freqBytes.length, 1)
+                + HeapEstimate.array(positionBytes.length, 1)
+                + HeapEstimate.array(docStarts.length, 4) * 3
+                + HeapEstimate.array(skipStarts.length, 4) + HeapEstimate.array(skipDocs.length, 4) * 4;
+        for (int[] ids : hotelDocs.values())
+            bytes += HeapEstimate.array(ids.length, 4);
+        for (String t : terms)
+            bytes += HeapEstimate.string(t);
+        // termIds: table slot, HashMap.Node (hash, key, value, next) and Integer per term; the Strings are shared
+        bytes += HeapEstimate.array(Integer.highestOneBit(Math.max(1, termIds.size() * 4 / 3)) * 2L, HeapEstimate.REF)
+                + (long) termIds.size() * (HeapEstimate.object(4 + 3 * HeapEstimate.REF) + HeapEstimate.object(4));
+        return bytes;
+    }
+}
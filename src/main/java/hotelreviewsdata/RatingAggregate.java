@@ -0,0 +1,103 @@
+package hotelreviewsdata;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Running rating totals of one hotel: review count, rating sum and a star histogram, updated as Reviews are
+ * added, edited and removed so the average is read in O(1) instead of streaming the hotel's Reviews.
+ *
+ * Ratings are clamped to 0-5 stars; 0 is a review without a rating, which counts toward the average
+ * as it always has. Count and sum share one AtomicLong (count in the high 32 bits, sum in the low 32),
+ * so a reader never sees one updated without the other (good for 858 million five-star reviews per hotel);
+ * the histogram may trail them by one change. Only ratings that were added may be removed or replaced.
+ */
+public final class RatingAggregate {
+    public static final int MAX_STARS = 5;
+
+    private final AtomicLong countAndSum = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(MAX_STARS + 1);
+
+    /**
+     * Counts one rating
+     * @param rating int rating, clamped to 0-5
+     */
+    public void add(int rating) {
+        int stars = clamp(rating);
+        countAndSum.addAndGet((1L << 32) | stars);
+        histogram.incrementAndGet(stars);
+    }
+
+    /**
+     * Uncounts one rating that was added
+     * @param rating int rating, clamped to 0-5
+     */
+    public void remove(int rating) {
+        int stars = clamp(rating);
+        countAndSum.addAndGet(-((1L << 32) | stars));
+        histogram.decrementAndGet(stars);
+    }
+
+    /**
+     * Changes one counted rating, as when a review is edited; the count stays the same
+     * @param oldRating int rating that was added, clamped to 0-5
+     * @param newRating int rating replacing it, clamped to 0-5
+     */
+    public void replace(int oldRating, int newRating) {
+        int oldStars = clamp(oldRating), newStars = clamp(newRating);
+        if (oldStars == newStars) return;
+
+        countAndSum.addAndGet(newStars - oldStars);
+        histogram.decrementAndGet(oldStars);
+        histogram.incrementAndGet(newStars);
+    }
+
+    private static int clamp(int rating) {
+        return Math.max(0, Math.min(MAX_STARS, rating));
+    }
+
+    /**
+     * Number of ratings counted
+     * @return long count
+     */
+    public long count() {
+        return countAndSum.get() >>> 32;
+    }
+
+    /**
+     * Sum of ratings counted
+     * @return long sum
+     */
+    public long sum() {
+        return countAndSum.get() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Number of ratings with the given stars
+     * @param stars int 0-5
+     * @return long count of ratings with that many stars
+     */
+    public long stars(int stars) {
+        return histogram.get(stars);
+    }
+
+    /**
+     * Average rating, from one consistent read of count and sum
+     * @return Double average, or null if nothing was counted
+     */
+    public Double average() {
+        long cs = countAndSum.get();
+        long n = cs >>> 32;
+        return (n == 0) ? null : (double) (cs & 0xFFFFFFFFL) / (double) n;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = MAX_STARS; i >= 1; i--)
+            sb.append(i).append("*: ").append(stars(i)).append('\n');
+        sb.append("unrated: ").append(stars(0));
+        return sb.toString();
+    }
+}
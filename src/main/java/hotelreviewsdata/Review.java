@@ -1,26 +1,83 @@
 package hotelreviewsdata;
 
 import java.time.LocalDate;
+import java.util.Objects;
 
 
 /**
- * Record for a Review
- * @param hotelId long hotelId of the associated Hotel
- * @param reviewId review id; String representation of a 12-byte hexadecimal value
- * @param ratingOverall double user's rating of the hotel
- * @param title String title of the Review; often empty or very long, becoming a first chapter to Review.text
- * @param text String content of the Review
- * @param username String nickname of the user associated with the Review
- * @param datePosted LocalDate date the Review was posted
+ * Immutable Review. Every field is final and set in the constructor, so instances are safe to share
+ * between threads without locking. The order of compareTo (date posted, descending, then review id, ascending)
+ * is precomputed as a 128-bit key of two longs, and the hash is cached, so Set inserts and probes during
+ * ingestion and indexing compare primitives instead of walking LocalDates and ids.
  */
-public record Review(long hotelId, String reviewId, int ratingOverall, String title, String text, String username,
-                     LocalDate datePosted) implements Comparable<Review> {
+public final class Review implements Comparable<Review> {
+    // unsigned 32-bit date key for which a later date is smaller; a missing date sorts after every real one
+    private static final long NO_DATE_KEY = 0xFFFFFFFFL;
+
+    private final long hotelId;
+    private final ReviewId reviewId;
+    private final int ratingOverall;
+    private final String title;
+    private final String text;
+    private final String username;
+    // sortHigh: date key (32 bits), reviewId.high top 32 bits; sortLow: reviewId.high bottom 32 bits, reviewId.low
+    private final long sortHigh;
+    private final long sortLow;
+    private final int hash;
+
+    /**
+     * @param hotelId long hotelId of the associated Hotel
+     * @param reviewId ReviewId 96-bit review id
+     * @param ratingOverall int user's rating of the hotel
+     * @param title String title of the Review; often empty or very long, becoming a first chapter to Review.text
+     * @param text String content of the Review
+     * @param username String nickname of the user associated with the Review
+     * @param datePosted LocalDate date the Review was posted, may be null; its epoch day must fit in an int
+     */
+    public Review(long hotelId, ReviewId reviewId, int ratingOverall, String title, String text, String username,
+                  LocalDate datePosted) {
+        this.hotelId = hotelId;
+        this.reviewId = reviewId;
+        this.ratingOverall = ratingOverall;
+        this.title = title;
+        this.text = text;
+        this.username = username;
+
+        long dateKey = NO_DATE_KEY;
+        if (datePosted != null) {
+            long epochDay = datePosted.toEpochDay();
+            if (epochDay <= Integer.MIN_VALUE || epochDay > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Review date out of range: " + datePosted);
+            // flip the sign bit so unsigned order is date order, then invert for newest first
+            dateKey = ~((int) epochDay ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+        }
+        this.sortHigh = (dateKey << 32) | (reviewId.high() >>> 32);
+        this.sortLow = (reviewId.high() << 32) | (reviewId.low() & 0xFFFFFFFFL);
+        this.hash = reviewId.hashCode();
+    }
+
+    public long hotelId() { return hotelId; }
+    public ReviewId reviewId() { return reviewId; }
+    public int ratingOverall() { return ratingOverall; }
+    public String title() { return title; }
+    public String text() { return text; }
+    public String username() { return username; }
+
+    /**
+     * Date the Review was posted, decoded from the sort key
+     * @return LocalDate date posted, or null if unknown
+     */
+    public LocalDate datePosted() {
+        long dateKey = sortHigh >>> 32;
+        if (dateKey == NO_DATE_KEY) return null;
+        return LocalDate.ofEpochDay((~(int) dateKey) ^ Integer.MIN_VALUE);
+    }
 
     /**
      * Computes the content of the Review, including title and text if either exists
      * @return String concatenation of title and text
      */
-    public synchronized String fullText() {
+    public String fullText() {
         if ((title == null || title.isBlank()) && (text == null || text.isBlank())) {
             return "";
         }
@@ -41,13 +98,20 @@ public record Review(long hotelId, String reviewId, int ratingOverall, String ti
      * @return int to denote order of the two Reviews
      */
     @Override
-    public synchronized int compareTo(Review o) {
+    public int compareTo(Review o) {
         if (o == null) return 1;
 
-        int moreRecent = o.datePosted.compareTo(this.datePosted);
-        if (moreRecent != 0) return moreRecent;
+        int c = Long.compareUnsigned(sortHigh, o.sortHigh);
+        return (c != 0) ? c : Long.compareUnsigned(sortLow, o.sortLow);
+    }
 
-        return this.reviewId.compareTo(o.reviewId);
+    /**
+     * Orders Reviews by date posted only, descending; Reviews posted the same day compare equal
+     * @param o the other Review to be compared
+     * @return int to denote order of the two Reviews
+     */
+    public int compareDatePosted(Review o) {
+        return Long.compare(sortHigh >>> 32, o.sortHigh >>> 32);
     }
 
     /**
@@ -56,25 +120,35 @@ public record Review(long hotelId, String reviewId, int ratingOverall, String ti
      * @return boolean true if equivalent, false otherwise
      */
     @Override
-    public synchronized boolean equals(Object obj) {
+    public boolean equals(Object obj) {
         if (obj == this) return true;
-        if (obj == null || obj.getClass() != this.getClass()) return false;
-        var that = (Review) obj;
-        return this.reviewId.compareTo(that.reviewId) == 0;
+        if (!(obj instanceof Review that)) return false;
+        return this.hash == that.hash && this.reviewId.equals(that.reviewId);
+    }
+
+    /**
+     * Checks if two Reviews (usually of the same id) hold the same data, unlike equals, which only compares ids
+     * @param o the other Review
+     * @return boolean true if hotel, id, date, rating, title, text and username are all the same
+     */
+    public boolean sameContent(Review o) {
+        return sortHigh == o.sortHigh && sortLow == o.sortLow && hotelId == o.hotelId
+                && ratingOverall == o.ratingOverall && Objects.equals(title, o.title)
+                && Objects.equals(text, o.text) && Objects.equals(username, o.username);
     }
 
     /**
      * Returns a code to identify a Review object
-     * @return int hash of this Review's reviewId String
+     * @return int hash of this Review's reviewId, computed once
      */
     @Override
-    public synchronized int hashCode() {
-        return reviewId.hashCode();
+    public int hashCode() {
+        return hash;
     }
 
     @Override
-    public synchronized String toString() {
+    public String toString() {
         return String.format("Review by %s on %s\nRating: %d\nReviewId: %s\n%s\n%s",
-                username, datePosted, ratingOverall, reviewId, title, text);
+                username, datePosted(), ratingOverall, reviewId, title, text);
     }
 }
@@ -21,9 +21,13 @@ public class ReviewDeserializer implements JsonDeserializer<Review> {
             datePosted = LocalDate.parse(jObject.get("reviewSubmissionTime").getAsString(), DateTimeFormatter.ISO_DATE_TIME);
         }
 
+        ReviewId reviewId = (jObject.has("reviewId")) ? ReviewId.tryParse(jObject.get("reviewId").getAsString()) : null;
+        if (reviewId == null)
+            throw new JsonParseException("Review without a 24-hex-char reviewId");
+
         return new Review(
                 (jObject.has("hotelId")) ? jObject.get("hotelId").getAsLong() : 0,
-                (jObject.has("reviewId")) ? jObject.get("reviewId").getAsString() : "",
+                reviewId,
                 (jObject.has("ratingOverall")) ? jObject.get("ratingOverall").getAsInt() : 0,
                 (jObject.has("title")) ? jObject.get("title").getAsString() : "", // .replaceAll("[\r\n\t]", " ") : "",
                 (jObject.has("reviewText")) ? jObject.get("reviewText").getAsString() : "", // .replaceAll("[\r\n\t]", " ") : "",
@@ -0,0 +1,111 @@
+package hotelreviewsdata;
+
+import java.util.Random;
+
+
+/**
+ * Record for a 96-bit review id, the binary form of the 24-hex-char ids in the reviews json files,
+ * packed into a long and an int instead of a String. Ordered as unsigned numbers, which is the order of their
+ * lowercase hex Strings and of their BINARY(12) column values, so sorting is unchanged by the conversion.
+ * @param high long first 64 bits
+ * @param low int last 32 bits
+ */
+public record ReviewId(long high, int low) implements Comparable<ReviewId> {
+    public static final int BYTES = 12;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Parses a 24-hex-char review id, in either case
+     * @param hex String review id
+     * @return ReviewId of hex
+     * @throws IllegalArgumentException if hex is not 24 hex chars
+     */
+    public static ReviewId parse(String hex) {
+        ReviewId id = tryParse(hex);
+        if (id == null)
+            throw new IllegalArgumentException("Malformed review id '" + hex + "'");
+        return id;
+    }
+
+    /**
+     * Parses a 24-hex-char review id, in either case, such as one from a request parameter
+     * @param hex String review id, may be null
+     * @return ReviewId of hex, or null if hex is not 24 hex chars
+     */
+    public static ReviewId tryParse(String hex) {
+        if (hex == null || hex.length() != BYTES * 2) return null;
+
+        long high = 0;
+        int low = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            int d = Character.digit(hex.charAt(i), 16);
+            if (d < 0) return null;
+            if (i < 16)
+                high = (high << 4) | d;
+            else
+                low = (low << 4) | d;
+        }
+        return new ReviewId(high, low);
+    }
+
+    /**
+     * Reads a review id from its big-endian BINARY(12) form
+     * @param bytes byte[] of length 12
+     * @return ReviewId of bytes
+     * @throws IllegalArgumentException if bytes is not 12 bytes long
+     */
+    public static ReviewId fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length != BYTES)
+            throw new IllegalArgumentException("Review id must be " + BYTES + " bytes");
+
+        long high = 0;
+        int low = 0;
+        for (int i = 0; i < 8; i++)
+            high = (high << 8) | (bytes[i] & 0xff);
+        for (int i = 8; i < BYTES; i++)
+            low = (low << 8) | (bytes[i] & 0xff);
+        return new ReviewId(high, low);
+    }
+
+    /**
+     * Makes a new random review id
+     * @param r Random to draw from
+     * @return random ReviewId
+     */
+    public static ReviewId random(Random r) {
+        return new ReviewId(r.nextLong(), r.nextInt());
+    }
+
+    /**
+     * Big-endian BINARY(12) form of this id
+     * @return byte[] of length 12
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[BYTES];
+        for (int i = 7; i >= 0; i--)
+            bytes[i] = (byte) (high >>> ((7 - i) * 8));
+        for (int i = BYTES - 1; i >= 8; i--)
+            bytes[i] = (byte) (low >>> ((BYTES - 1 - i) * 8));
+        return bytes;
+    }
+
+    @Override
+    public int compareTo(ReviewId o) {
+        int c = Long.compareUnsigned(high, o.high);
+        return (c != 0) ? c : Integer.compareUnsigned(low, o.low);
+    }
+
+    /**
+     * 24 lowercase hex chars, the form used in json files, urls and responses
+     * @return String hex review id
+     */
+    @Override
+    public String toString() {
+        char[] c = new char[BYTES * 2];
+        for (int i = 15; i >= 0; i--)
+            c[i] = HEX[(int) (high >>> ((15 - i) * 4)) & 0xf];
+        for (int i = 23; i >= 16; i--)
+            c[i] = HEX[(low >>> ((23 - i) * 4)) & 0xf];
+        return new String(c);
+    }
+}
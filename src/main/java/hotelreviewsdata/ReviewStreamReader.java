@@ -0,0 +1,132 @@
+package hotelreviewsdata;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
+
+
+/**
+ * Streaming (pull-parser) reader for reviews json files. Walks straight to
+ * reviewDetails.reviewCollection.review and hands each Review to a consumer as soon as it is read,
+ * so only one review is held at a time instead of the whole file and its Gson tree.
+ * Field handling matches ReviewDeserializer, except that a review without a valid 24-hex-char reviewId
+ * is skipped (and counted in a message) rather than failing the file.
+ */
+public class ReviewStreamReader {
+
+    private ReviewStreamReader() {}
+
+    /**
+     * Reads every review in a reviews json file
+     * @param in Reader over a reviews json file; not closed
+     * @param sink Consumer given each Review, in file order
+     * @return int number of reviews read
+     * @throws IOException on read failure or malformed json
+     */
+    public static int read(Reader in, Consumer<Review> sink) throws IOException {
+        JsonReader jr = new JsonReader(in);
+        if (!enter(jr, "reviewDetails") || !enter(jr, "reviewCollection") || !enter(jr, "review"))
+            return 0;
+        if (jr.peek() != JsonToken.BEGIN_ARRAY) {
+            jr.skipValue();
+            return 0;
+        }
+
+        int count = 0, skipped = 0;
+        jr.beginArray();
+        while (jr.hasNext()) {
+            if (jr.peek() != JsonToken.BEGIN_OBJECT) {
+                jr.skipValue();
+                continue;
+            }
+
+            Review r = readReview(jr);
+            if (r == null) {
+                skipped++;
+                continue;
+            }
+            sink.accept(r);
+            count++;
+        }
+        jr.endArray();
+
+        if (skipped > 0)
+            System.out.println("Skipped " + skipped + " reviews without a valid reviewId");
+        return count;
+    }
+
+    /**
+     * Positions the reader on the value of member name of the object that comes next
+     * @return boolean false if the next value is not an object or has no such member
+     */
+    private static boolean enter(JsonReader jr, String name) throws IOException {
+        if (jr.peek() != JsonToken.BEGIN_OBJECT) return false;
+
+        jr.beginObject();
+        while (jr.hasNext()) {
+            if (jr.nextName().equals(name))
+                return true;
+            jr.skipValue();
+        }
+        return false;
+    }
+
+    /**
+     * Reads one review object
+     * @return Review, or null if it has no valid reviewId
+     */
+    private static Review readReview(JsonReader jr) throws IOException {
+        long hotelId = 0;
+        ReviewId reviewId = null;
+        int ratingOverall = 0;
+        String title = "";
+        String text = "";
+        String username = "Anonymous";
+        LocalDate datePosted = null;
+
+        jr.beginObject();
+        while (jr.hasNext()) {
+            String name = jr.nextName();
+            if (jr.peek() == JsonToken.NULL) {
+                jr.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "hotelId":
+                    hotelId = jr.nextLong();
+                    break;
+                case "reviewId":
+                    reviewId = ReviewId.tryParse(jr.nextString());
+                    break;
+                case "ratingOverall":
+                    ratingOverall = jr.nextInt();
+                    break;
+                case "title":
+                    title = jr.nextString();
+                    break;
+                case "reviewText":
+                    text = jr.nextString();
+                    break;
+                case "userNickname":
+                    String s = jr.nextString();
+                    if (!s.isBlank()) username = s;
+                    break;
+                case "reviewSubmissionTime":
+                    datePosted = LocalDate.parse(jr.nextString(), DateTimeFormatter.ISO_DATE_TIME);
+                    break;
+                default:
+                    jr.skipValue();
+            }
+        }
+        jr.endObject();
+
+        if (reviewId == null) return null;
+        return new Review(hotelId, reviewId, ratingOverall, title, text, username, datePosted);
+    }
+}
@@ -0,0 +1,356 @@
+package hotelreviewsdata;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+
+/**
+ * Watches a reviews directory (recursively) and merges reviews from new or changed json files into live maps
+ * while they are being read. Changes are noticed through a WatchService, with a periodic full rescan as a
+ * fallback for missed or overflowed events and for file systems that do not deliver them.
+ *
+ * A file is only read once its size and modification time have held still for settleMs, so files still
+ * being copied in are not parsed half-written. Each file is parsed in full before anything is merged; reviews
+ * already in the map (same hotel and review id) with the same content are skipped, edited ones replace the held
+ * Review and new ones are added, in the hotel map, then the word map, then both are handed to the listener.
+ * The files own the reviews they hold, so an edit in a file wins over one made elsewhere. Deleted files and
+ * reviews removed from a file are not reflected.
+ * All file bookkeeping is confined to the watcher thread.
+ */
+public class ReviewsDirWatcher {
+    private final Path dir;
+    private final ThreadSafeHotelReviewsMap hrMap;
+    private final ThreadSafeWordToReviewMap wtrMap;
+    private final Consumer<List<Review>> listener;
+    private final long baselineMillis;
+    private final long rescanIntervalMs;
+    private final long settleMs;
+
+    private final Map<Path, FileState> ingested = new HashMap<>();
+    private final Map<Path, Pending> pending = new HashMap<>();
+    private final Map<WatchKey, Path> watchKeys = new HashMap<>();
+    private final Set<Path> watchedDirs = new HashSet<>();
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean running;
+
+    private final AtomicLong filesIngested = new AtomicLong();
+    private final AtomicLong fileFailures = new AtomicLong();
+    private final AtomicLong reviewsAdded = new AtomicLong();
+    private final AtomicLong reviewsUpdated = new AtomicLong();
+    private final AtomicLong reviewsSkipped = new AtomicLong();
+    private final AtomicLong listenerFailures = new AtomicLong();
+    private final AtomicLong rescans = new AtomicLong();
+    private final AtomicLong lastLagMs = new AtomicLong();
+    private final AtomicLong maxLagMs = new AtomicLong();
+    private volatile int pendingFiles;
+
+    /**
+     * @param dir Path of the reviews directory
+     * @param hrMap live ThreadSafeHotelReviewsMap to merge reviews into
+     * @param wtrMap live ThreadSafeWordToReviewMap built from hrMap
+     * @param baselineMillis long epoch millis; files last modified before it are taken as already in the maps
+     * @param rescanIntervalMs long time between full rescans of dir
+     * @param settleMs long time a file's size and modification time must hold still before it is read
+     * @param listener Consumer given each file's newly added and edited Reviews, on the watcher thread
+     */
+    public ReviewsDirWatcher(Path dir, ThreadSafeHotelReviewsMap hrMap, ThreadSafeWordToReviewMap wtrMap,
+                             long baselineMillis, long rescanIntervalMs, long settleMs, Consumer<List<Review>> listener) {
+        this.dir = dir;
+        this.hrMap = hrMap;
+        this.wtrMap = wtrMap;
+        this.baselineMillis = baselineMillis;
+        this.rescanIntervalMs = Math.max(1, rescanIntervalMs);
+        this.settleMs = Math.max(0, settleMs);
+        this.listener = listener;
+    }
+
+    /**
+     * Size and modification time of a file when it was seen
+     */
+    private record FileState(long size, long modifiedMillis) {}
+
+    /**
+     * A file waiting to settle; detectedNanos is when the change was first noticed, for the lag metric
+     */
+    private static class Pending {
+        FileState state;
+        long changedNanos;
+        final long detectedNanos;
+
+        Pending(FileState state, long now) {
+            this.state = state;
+            this.changedNanos = now;
+            this.detectedNanos = now;
+        }
+    }
+
+    /**
+     * Registers dir, takes the baseline and starts the watcher thread
+     * @throws IOException if dir cannot be watched or listed
+     */
+    public synchronized void start() throws IOException {
+        if (running) return;
+
+        watchService = dir.getFileSystem().newWatchService();
+        register(dir);
+        for (Map.Entry<Path, FileState> e : listFiles(dir).entrySet()) {
+            if (e.getValue().modifiedMillis() < baselineMillis)
+                ingested.put(e.getKey(), e.getValue());
+            else
+                pending.put(e.getKey(), new Pending(e.getValue(), System.nanoTime()));
+        }
+
+        running = true;
+        thread = new Thread(this::run, "reviews-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Watching " + dir + " for new reviews");
+    }
+
+    /**
+     * Stops the watcher thread, waiting for a file being merged to finish
+     */
+    public synchronized void stop() {
+        if (!running) return;
+
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long nextRescan = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rescanIntervalMs);
+        long pollMs = Math.max(50, Math.min(settleMs, rescanIntervalMs));
+
+        while (running) {
+            try {
+                WatchKey key = watchService.poll(pollMs, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handleEvents(key);
+                    key = watchService.poll();
+                }
+
+                if (System.nanoTime() - nextRescan >= 0) {
+                    rescan();
+                    nextRescan = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rescanIntervalMs);
+                }
+
+                ingestSettled();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                break;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void handleEvents(WatchKey key) throws IOException {
+        Path parent = watchKeys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || parent == null) {
+                rescan();
+                continue;
+            }
+
+            Path child = parent.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                // files can land in a new directory before it is registered
+                register(child);
+                listFiles(child).forEach(this::observe);
+            } else if (event.kind() != ENTRY_DELETE && isReviewsFile(child)) {
+                FileState state = stat(child);
+                if (state != null)
+                    observe(child, state);
+            }
+        }
+        if (!key.reset() && watchKeys.remove(key) != null)
+            watchedDirs.remove(parent);
+    }
+
+    private void register(Path start) throws IOException {
+        try (Stream<Path> walk = Files.walk(start)) {
+            for (Path p : (Iterable<Path>) walk.filter(Files::isDirectory)::iterator) {
+                if (watchedDirs.add(p))
+                    watchKeys.put(p.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), p);
+            }
+        }
+    }
+
+    private void rescan() throws IOException {
+        rescans.incrementAndGet();
+        register(dir);
+        listFiles(dir).forEach(this::observe);
+    }
+
+    /**
+     * Queues path if it differs from what was last ingested, restarting its settle time if it changed again
+     */
+    private void observe(Path path, FileState state) {
+        if (state.equals(ingested.get(path))) {
+            pending.remove(path);
+            return;
+        }
+
+        long now = System.nanoTime();
+        Pending p = pending.get(path);
+        if (p == null) {
+            pending.put(path, new Pending(state, now));
+        } else if (!p.state.equals(state)) {
+            p.state = state;
+            p.changedNanos = now;
+        }
+    }
+
+    private void ingestSettled() {
+        long settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMs);
+        Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext() && running) {
+            Map.Entry<Path, Pending> e = it.next();
+            Pending p = e.getValue();
+            FileState state = stat(e.getKey());
+            if (state == null) {
+                it.remove();
+            } else if (!state.equals(p.state)) {
+                p.state = state;
+                p.changedNanos = System.nanoTime();
+            } else if (System.nanoTime() - p.changedNanos >= settleNanos) {
+                it.remove();
+                ingest(e.getKey(), p);
+            }
+        }
+        pendingFiles = pending.size();
+    }
+
+    /**
+     * Parses one settled file and merges its new and edited reviews; a file that fails to parse is not retried until it changes
+     */
+    private void ingest(Path path, Pending p) {
+        ingested.put(path, p.state);
+
+        List<Review> parsed = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            ReviewStreamReader.read(br, parsed::add);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            System.out.println("Could not read reviews file " + path);
+            fileFailures.incrementAndGet();
+            return;
+        }
+
+        // the held reviews of each hotel in the file, by id, so edits are found without scanning per review
+        Map<Long, Map<ReviewId, Review>> held = new HashMap<>();
+        List<Review> added = new ArrayList<>();
+        List<Review> replaced = new ArrayList<>();
+        List<Review> updated = new ArrayList<>();
+        for (Review r : parsed) {
+            Review old = held.computeIfAbsent(r.hotelId(), this::heldReviews).get(r.reviewId());
+            if (old == null) {
+                if (hrMap.addReview(r))
+                    added.add(r);
+            } else if (!old.sameContent(r)) {
+                old = hrMap.replaceReview(r);
+                if (old != null) {
+                    replaced.add(old);
+                    updated.add(r);
+                }
+            }
+        }
+        wtrMap.removeReviews(replaced);
+        wtrMap.addReviews(added);
+        wtrMap.addReviews(updated);
+        int skipped = parsed.size() - added.size() - updated.size();
+        filesIngested.incrementAndGet();
+        reviewsAdded.addAndGet(added.size());
+        reviewsUpdated.addAndGet(updated.size());
+        reviewsSkipped.addAndGet(skipped);
+
+        List<Review> changed = new ArrayList<>(added);
+        changed.addAll(updated);
+        if (!changed.isEmpty()) {
+            try {
+                listener.accept(Collections.unmodifiableList(changed));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                listenerFailures.incrementAndGet();
+            }
+        }
+
+        long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - p.detectedNanos);
+        lastLagMs.set(lag);
+        maxLagMs.accumulateAndGet(lag, Math::max);
+        System.out.printf("Ingested %s: %d new reviews, %d edited, %d unchanged, %d ms after it was detected%n",
+                path, added.size(), updated.size(), skipped, lag);
+    }
+
+    private Map<ReviewId, Review> heldReviews(long hotelId) {
+        Map<ReviewId, Review> byId = new HashMap<>();
+        if (hrMap.containsKey(hotelId))
+            hrMap.findReviews(hotelId).forEach(r -> byId.put(r.reviewId(), r));
+        return byId;
+    }
+
+    private static boolean isReviewsFile(Path path) {
+        return path.toString().endsWith(".json");
+    }
+
+    private static FileState stat(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return attrs.isRegularFile() ? new FileState(attrs.size(), attrs.lastModifiedTime().toMillis()) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Map<Path, FileState> listFiles(Path start) throws IOException {
+        Map<Path, FileState> files = new HashMap<>();
+        try (Stream<Path> walk = Files.walk(start)) {
+            for (Path p : (Iterable<Path>) walk.filter(ReviewsDirWatcher::isReviewsFile)::iterator) {
+                FileState state = stat(p);
+                if (state != null)
+                    files.put(p, state);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Counters since start: files ingested and failed, reviews added, updated and skipped as unchanged,
+     * listener failures, full rescans and files waiting to settle; lag is the time from noticing
+     * a file's change to its reviews being in both maps and passed to the listener
+     * @return Map of metric name to value
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        m.put("filesIngested", filesIngested.get());
+        m.put("fileFailures", fileFailures.get());
+        m.put("reviewsAdded", reviewsAdded.get());
+        m.put("reviewsUpdated", reviewsUpdated.get());
+        m.put("reviewsSkipped", reviewsSkipped.get());
+        m.put("listenerFailures", listenerFailures.get());
+        m.put("rescans", rescans.get());
+        m.put("pendingFiles", (long) pendingFiles);
+        m.put("lastLagMs", lastLagMs.get());
+        m.put("maxLagMs", maxLagMs.get());
+        return m;
+    }
+}
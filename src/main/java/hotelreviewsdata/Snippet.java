@@ -0,0 +1,31 @@
+package hotelreviewsdata;
+
+
+/**
+ * Excerpt of a review's text with the spans a query matched
+ * @param text String excerpt, with "..." where the review's text was cut
+ * @param starts int[] start of each matched span in text, ascending; spans do not overlap
+ * @param ends int[] end (exclusive) of each matched span in text
+ */
+public record Snippet(String text, int[] starts, int[] ends) {
+    /**
+     * Plain-text rendering with every matched span wrapped, e.g. marked("[", "]")
+     * @param open String put before each span
+     * @param close String put after each span
+     * @return String excerpt with marks; not escaped
+     */
+    public String marked(String open, String close) {
+        StringBuilder sb = new StringBuilder(text.length() + starts.length * (open.length() + close.length()));
+        int at = 0;
+        for (int i = 0; i < starts.length; i++) {
+            sb.append(text, at, starts[i]).append(open).append(text, starts[i], ends[i]).append(close);
+            at = ends[i];
+        }
+        return sb.append(text, at, text.length()).toString();
+    }
+
+    @Override
+    public String toString() {
+        return marked("[", "]");
+    }
+}
@@ -0,0 +1,30 @@
+package hotelreviewsdata;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Thread-safe set of the index terms seen so far, so every occurrence of a term shares one String.
+ * Tokenizers consult it only the first time they meet a term; later occurrences hit their own cache.
+ */
+public final class TermDictionary {
+    private final ConcurrentHashMap<String, String> terms = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the dictionary's copy of term, adding term if it is new
+     * @param term String term
+     * @return String equal to term, the same instance for every caller
+     */
+    public String intern(String term) {
+        String prev = terms.putIfAbsent(term, term);
+        return (prev == null) ? term : prev;
+    }
+
+    /**
+     * Number of distinct terms
+     * @return int size
+     */
+    public int size() {
+        return terms.size();
+    }
+}
@@ -1,36 +1,33 @@
 package hotelreviewsdata;
 
-import com.google.gson.*;
-
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Phaser;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 
 /**
- * Wrapper class to use multi-threading with HotelReviewsMap
+ * Wrapper class to use multi-threading with HotelReviewsMap. Hotels are held in a LongKeyedMap (lock-free reads)
+ * and each hotel's reviews in a ConcurrentSkipListSet, so index threads add reviews without a global lock
+ * and readers never block; findReviews streams are weakly consistent while ingestion is still running.
  */
 public class ThreadSafeHotelReviewsMap extends HotelReviewsMap {
-    private final ReentrantReadWriteLock lock;
-    private final ExecutorService threadPool;
-    private final Phaser phaser;
+    private final IngestionPipeline pipeline;
 
     public ThreadSafeHotelReviewsMap(int numThreads) {
+        this(new IngestionPipeline.Config(1, numThreads, 1, 64, 256));
+    }
+    public ThreadSafeHotelReviewsMap(IngestionPipeline.Config config) {
         super();
-        lock = new ReentrantReadWriteLock();
-        threadPool = Executors.newFixedThreadPool(numThreads);
-        phaser = new Phaser(1);
+        pipeline = new IngestionPipeline(config);
+    }
+
+    @Override
+    protected Set<Review> newReviewSet() {
+        return new ConcurrentSkipListSet<>();
     }
 
     /**
@@ -42,8 +39,8 @@ public class ThreadSafeHotelReviewsMap extends HotelReviewsMap {
      */
     public ThreadSafeHotelReviewsMap init(String hotelsFileString, String reviewsDirString) {
         if (reviewsDirString != null) {
-            try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(Paths.get(reviewsDirString))) {
-                this.threadSafeReviewDirSift(dirStream);
+            try {
+                pipeline.run(Paths.get(reviewsDirString), this::addParsedReviews);
             } catch (IOException e) {
                 e.printStackTrace();
                 System.out.println("\nCould not open reviews directory " + reviewsDirString);
@@ -54,12 +51,7 @@ public class ThreadSafeHotelReviewsMap extends HotelReviewsMap {
 
         if (hotelsFileString != null) {
             try (BufferedReader br = new BufferedReader(new FileReader(hotelsFileString))) {
-                try {
-                    lock.writeLock().lock();
-                    this.parseHotelsFile(br);
-                } finally {
-                    lock.writeLock().unlock();
-                }
+                this.parseHotelsFile(br);
             } catch (IOException e) {
                 e.printStackTrace();
                 System.out.println("\nCould not open hotels file " + hotelsFileString);
@@ -68,49 +60,32 @@ public class ThreadSafeHotelReviewsMap extends HotelReviewsMap {
             }
         }
 
-        phaser.arriveAndDeregister();
-        int phase = phaser.getPhase();
-        phaser.awaitAdvance(phase);
-        threadPool.shutdownNow();
-
         return this;
     }
 
     /**
-     * Helper function used in constructor to find and open reviews json files
-     * @param dirStream DirectoryStream opened on the directory containing reviews json files
+     * Per-stage counters of the ingestion pipeline used by init
+     * @return List of IngestionPipeline.StageStats, in pipeline order
      */
-    protected void threadSafeReviewDirSift(DirectoryStream<Path> dirStream) {
-        for (Path path : dirStream) {
-            if (Files.isDirectory(path)) {
-                try (DirectoryStream<Path> recDirStream = Files.newDirectoryStream(path)) {
-                    threadSafeReviewDirSift(recDirStream);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            } else if (path.toString().endsWith(".json")) {
-                threadPool.submit(new ReviewFileParser(path));
-            }
-        }
+    public List<IngestionPipeline.StageStats> getStageStats() {
+        return pipeline.getStageStats();
+    }
+
+    /**
+     * Review parsing throughput of each parser thread used by init
+     * @return Map of parser thread name to its IngestionPipeline.ParseStats
+     */
+    public Map<String, IngestionPipeline.ParseStats> getParseStats() {
+        return pipeline.getParseStats();
     }
 
     /**
-     * Function to add reviews from a ReviewFileParser thread into the hrMap
+     * Function to add reviews from an IngestionPipeline index thread into the hrMap
      *
-     * @param reviews Set of reviews from a ReviewFileParser
+     * @param reviews batch of parsed reviews
      */
-    private void addParsedReviews(Set<Review> reviews) {
-        try {
-            lock.writeLock().lock();
-            reviews.forEach(r -> {
-                long hotelId = r.hotelId();
-                hrMap.computeIfAbsent(hotelId, k ->
-                        new AbstractMap.SimpleEntry<>(null, new TreeSet<>()));
-                hrMap.get(hotelId).getValue().add(r);
-            });
-        } finally {
-            lock.writeLock().unlock();
-        }
+    private void addParsedReviews(List<Review> reviews) {
+        reviews.forEach(this::addReview);
     }
 
     /**
@@ -119,124 +94,26 @@ public class ThreadSafeHotelReviewsMap extends HotelReviewsMap {
      */
     public void printToFile(String outFilename) {
         try (FileWriter writer = new FileWriter(outFilename)) {
-            try {
-                lock.readLock().lock();
-                for (Map.Entry<Long, Map.Entry<Hotel, Set<Review>>> e : hrMap.entrySet()) {
-                    if (e == null) continue;
+            for (long hotelId : hrMap.keysInStringOrder()) {
+                HotelEntry e = hrMap.get(hotelId);
 
-                    if (e.getValue().getKey() != null) {
-                        writer.write("\n********************\n");
-                        writer.write(e.getValue().getKey().toString());
-                        writer.write("\n");
-                    }
+                if (e.hotel() != null) {
+                    writer.write("\n********************\n");
+                    writer.write(e.hotel().toString());
+                    writer.write("\n");
+                }
 
-                    if (e.getValue().getValue() != null && e.getValue().getValue().size() > 0) {
-                        for (Review r : e.getValue().getValue()) {
-                            if (r == null) continue;
+                for (Review r : e.reviews()) {
+                    if (r == null) continue;
 
-                            writer.write("--------------------\n");
-                            writer.write(r.toString());
-                            writer.write("\n");
-                        }
-                    }
+                    writer.write("--------------------\n");
+                    writer.write(r.toString());
+                    writer.write("\n");
                 }
-            } finally {
-                lock.readLock().unlock();
             }
         } catch (IOException e) {
             System.out.println("Failed to open output file");
             e.printStackTrace();
         }
     }
-
-    /**
-     * Map function that checks if a key exists in map
-     *
-     * @param hotelId long map key
-     * @return boolean true if key exists, false otherwise
-     */
-    @Override
-    public boolean containsKey(long hotelId) {
-        boolean r;
-        try {
-            lock.readLock().lock();
-            r = super.containsKey(hotelId);
-        } finally {
-            lock.readLock().unlock();
-        }
-        return r;
-    }
-
-    /**
-     * Access to map Hotel values
-     *
-     * @param hotelId long map key
-     * @return Hotel value associated with provided key
-     */
-    @Override
-    public Hotel findHotel(long hotelId) {
-        Hotel r;
-        try {
-            lock.readLock().lock();
-            r =  super.findHotel(hotelId);
-        } finally {
-            lock.readLock().unlock();
-        }
-        return r;
-    }
-
-    /**
-     * Access to map Review values; first sorts by date posted (descending), then review id (ascending)
-     *
-     * @param hotelId long map key
-     * @return Review values associated with provided key; how to use the data structure delegated to consumers
-     */
-    @Override
-    public Stream<Review> findReviews(long hotelId) {
-        Stream<Review> r;
-        try {
-            lock.readLock().lock();
-            r =  super.findReviews(hotelId);
-        } finally {
-            lock.readLock().unlock();
-        }
-        return r;
-    }
-
-    /**
-     * Inner class defining the work to submit to a Thread
-     */
-    private class ReviewFileParser implements Runnable {
-        private final Path p;
-
-        public ReviewFileParser(Path p) {
-            phaser.register();
-            this.p = p;
-        }
-
-        @Override
-        public void run() {
-            try {
-                String s = Files.readString(p);
-
-                Set<Review> reviews = new HashSet<>();
-                Gson gson = new GsonBuilder().registerTypeAdapter(Review.class, new ReviewDeserializer()).create();
-
-                JsonArray jArr = JsonParser.parseString(s).getAsJsonObject()
-                        .get("reviewDetails").getAsJsonObject()
-                        .get("reviewCollection").getAsJsonObject()
-                        .getAsJsonArray("review");
-                for (JsonElement e : jArr) {
-                    JsonObject o = e.getAsJsonObject();
-                    reviews.add(gson.fromJson(o, Review.class));
-                }
-
-                addParsedReviews(reviews);
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                phaser.arriveAndDeregister();
-            }
-        }
-    }
 }
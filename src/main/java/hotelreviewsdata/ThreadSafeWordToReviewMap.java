@@ -1,29 +1,36 @@
 package hotelreviewsdata;
 
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Phaser;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Stream;
+import java.util.concurrent.*;
 
 
 /**
- * Wrapper class to use multi-threading with WordToReviewMap
+ * Wrapper class to use multi-threading with WordToReviewMap. Words are held in a ConcurrentHashMap and
+ * their frequencies and Reviews in concurrent skip lists, so parser threads and later addReviews calls
+ * insert without a global lock and readers never block; findWord streams are weakly consistent
+ * while reviews are being added.
  */
 public class ThreadSafeWordToReviewMap extends WordToReviewMap
 {
-    private final ReentrantReadWriteLock lock;
     private final ExecutorService threadPool;
     private final Phaser phaser;
 
     public ThreadSafeWordToReviewMap(int numThreads) {
-        super();
-        lock = new ReentrantReadWriteLock();
+        super(new ConcurrentHashMap<>());
         threadPool = Executors.newFixedThreadPool(numThreads);
         phaser = new Phaser(1);
     }
 
+    @Override
+    protected Map<Integer, Set<Review>> newFrequencyMap() {
+        return new ConcurrentSkipListMap<>((a, b) -> b - a);
+    }
+
+    @Override
+    protected Set<Review> newReviewSet() {
+        return new ConcurrentSkipListSet<>(Review::compareDatePosted);
+    }
+
     /**
      * Maps all words in every Review to Reviews that contain them
      * and respective word frequency within each review
@@ -32,11 +39,9 @@ public class ThreadSafeWordToReviewMap extends WordToReviewMap
      */
     public ThreadSafeWordToReviewMap init(HotelReviewsMap mapIn) {
         List<Set<Review>> reviewsList = new ArrayList<>(8);
-        for (Map.Entry<Hotel, Set<Review>> e : mapIn.hrMap.values()) {
-            if (e == null) continue;
-
-            Set<Review> s = e.getValue();
-            if (s == null || s.size() == 0) continue;
+        for (HotelReviewsMap.HotelEntry e : mapIn.hrMap.values()) {
+            Set<Review> s = e.reviews();
+            if (s == null || s.isEmpty()) continue;
 
             reviewsList.add(s);
             if (reviewsList.size() == 8) {
@@ -62,56 +67,10 @@ public class ThreadSafeWordToReviewMap extends WordToReviewMap
      * @param interMap intermediate map from a ReviewsParser
      */
     private void addParsedReviews(Map<String, Map<Review, Integer>> interMap) {
-        try {
-            lock.writeLock().lock();
-            for (Map.Entry<String, Map<Review, Integer>> word : interMap.entrySet()) {
-                Map<Integer, Set<Review>> m = wtrMap.computeIfAbsent(word.getKey(), k ->
-                        new TreeMap<>((a, b) -> b - a));
-
-                for (Map.Entry<Review, Integer> e : word.getValue().entrySet()) {
-                    m.computeIfAbsent(e.getValue(), k -> new TreeSet<>((r1, r2) ->
-                            r2.datePosted().compareTo(r1.datePosted()))).add(e.getKey());
-                }
-            }
-        } finally {
-            lock.writeLock().unlock();
-        }
-    }
-
-    /**
-     * Map function to check if a String is already a key
-     *
-     * @param word String to check against the map
-     * @return boolean if the key exists
-     */
-    @Override
-    public boolean containsKey(String word) {
-        boolean r;
-        try {
-            lock.readLock().lock();
-            r = super.containsKey(word);
-        } finally {
-            lock.readLock().unlock();
-        }
-        return r;
-    }
-
-    /**
-     * Access to wordToReviewMap Review values; first sorts by word frequency (descending), then date posted (descending)
-     *
-     * @param word String key in wordToReviewMap
-     * @return Stream of Reviews; how to use the data structure delegated to consumers
-     */
-    @Override
-    public Stream<Review> findWord(String word) {
-        Stream<Review> r;
-        try {
-            lock.readLock().lock();
-            r = super.findWord(word);
-        } finally {
-            lock.readLock().unlock();
+        for (Map.Entry<String, Map<Review, Integer>> word : interMap.entrySet()) {
+            for (Map.Entry<Review, Integer> e : word.getValue().entrySet())
+                addWord(word.getKey(), e.getValue(), e.getKey());
         }
-        return r;
     }
 
     /**
@@ -129,17 +88,11 @@ public class ThreadSafeWordToReviewMap extends WordToReviewMap
         public void run() {
             try {
                 Map<String, Map<Review, Integer>> interMap = new HashMap<>();
+                Tokenizer tokenizer = new Tokenizer(termDictionary);
 
                 for (Set<Review> s : reviews) {
-                    for (Review r : s) {
-                        String[] tokens = r.text().replaceAll("[^a-zA-Z' ]", " ").toLowerCase().split("\\s+");
-                        for (String t : tokens) {
-                            if (t.isBlank() || t.length() < 3 || stopWords.contains(t)) continue;
-
-                            interMap.computeIfAbsent(t, k -> new HashMap<>());
-                            interMap.get(t).merge(r, 1, Integer::sum);
-                        }
-                    }
+                    for (Review r : s)
+                        tokenizer.forEachTerm(r.text(), t -> interMap.computeIfAbsent(t, k -> new HashMap<>()).merge(r, 1, Integer::sum));
                 }
 
                 addParsedReviews(interMap);
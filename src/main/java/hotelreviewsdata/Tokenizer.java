@@ -0,0 +1,145 @@
+package hotelreviewsdata;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+
+/**
+ * Single-pass tokenizer for review text. Terms are maximal runs of ASCII letters and apostrophes, lowercased,
+ * at least 3 chars long and not stop words, the same terms as splitting on a "[^a-zA-Z' ]" replaceAll.
+ *
+ * Each run is lowercased into a reusable buffer while its hash is computed. Short runs and stop words
+ * (an immutable hash table) are dropped before any String exists, and other runs are looked up
+ * in a per-tokenizer cache of terms from the shared TermDictionary, so a term's String is made once per
+ * tokenizer rather than once per occurrence. Not thread-safe: use one Tokenizer per thread.
+ *
+ * forEachPosition also reports each term's position, the index of its run among all runs of the text,
+ * dropped ones included, so "close to the airport" has close at 0 and airport at 3: phrases keep their gaps.
+ */
+public final class Tokenizer {
+    private static final int MIN_LENGTH = 3;
+    private static final String[] STOP_TABLE = table(WordToReviewMap.stopWords.toArray(new String[0]));
+
+    private final TermDictionary dictionary;
+    private char[] buf = new char[64];
+    private String[] cache = new String[1024];
+    private int cached;
+
+    /**
+     * Receives the terms of a text with where they are
+     */
+    @FunctionalInterface
+    public interface PositionConsumer {
+        /**
+         * @param term String dictionary term
+         * @param position int index of the term's run among all runs of the text
+         * @param start int index of the run's first char in the text
+         * @param end int index after the run's last char
+         */
+        void accept(String term, int position, int start, int end);
+    }
+
+    public Tokenizer(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Open-addressing table of words, with linear probing on String.hashCode, at most half full
+     */
+    private static String[] table(String[] words) {
+        String[] t = new String[Integer.highestOneBit(Math.max(1, words.length) * 4)];
+        for (String w : words)
+            put(t, w);
+        return t;
+    }
+
+    private static void put(String[] t, String w) {
+        int mask = t.length - 1;
+        int i = mix(w.hashCode()) & mask;
+        while (t[i] != null)
+            i = (i + 1) & mask;
+        t[i] = w;
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static String find(String[] t, char[] buf, int len, int hash) {
+        int mask = t.length - 1;
+        for (int i = mix(hash) & mask; t[i] != null; i = (i + 1) & mask) {
+            String s = t[i];
+            if (s.hashCode() == hash && s.length() == len && matches(s, buf, len))
+                return s;
+        }
+        return null;
+    }
+
+    private static boolean matches(String s, char[] buf, int len) {
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) != buf[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Passes every term of text, in order and repeats included, to action
+     * @param text String review text, may be null
+     * @param action Consumer given each term, a dictionary String
+     */
+    public void forEachTerm(String text, Consumer<String> action) {
+        tokenize(text, action, null);
+    }
+
+    /**
+     * Passes every term of text, in order and repeats included, to action, with its position and char offsets
+     * @param text String review text, may be null
+     * @param action PositionConsumer given each term
+     */
+    public void forEachPosition(String text, PositionConsumer action) {
+        tokenize(text, null, action);
+    }
+
+    private void tokenize(String text, Consumer<String> terms, PositionConsumer positions) {
+        if (text == null) return;
+
+        int len = 0, hash = 0, position = 0;
+        for (int i = 0, n = text.length(); i <= n; i++) {
+            char c = (i < n) ? text.charAt(i) : ' ';
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            if ((c >= 'a' && c <= 'z') || c == '\'') {
+                if (len == buf.length)
+                    buf = Arrays.copyOf(buf, len * 2);
+                buf[len++] = c;
+                hash = 31 * hash + c;
+                continue;
+            }
+
+            if (len == 0) continue;
+            if (len >= MIN_LENGTH && find(STOP_TABLE, buf, len, hash) == null) {
+                if (terms != null) terms.accept(term(len, hash));
+                else positions.accept(term(len, hash), position, i - len, i);
+            }
+            position++;
+            len = 0;
+            hash = 0;
+        }
+    }
+
+    private String term(int len, int hash) {
+        String t = find(cache, buf, len, hash);
+        if (t != null) return t;
+
+        t = dictionary.intern(new String(buf, 0, len));
+        if (++cached * 2 > cache.length) {
+            String[] old = cache;
+            cache = new String[old.length * 2];
+            for (String s : old) {
+                if (s != null) put(cache, s);
+            }
+        }
+        put(cache, t);
+        return t;
+    }
+}
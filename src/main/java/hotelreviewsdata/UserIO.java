@@ -28,9 +28,33 @@ public class UserIO {
 
                 if (line.compareTo("q") == 0) break;
                 if (line.compareTo("h") == 0) { printQueries(); continue; }
+                if (line.compareTo("memory") == 0) { hotelSearch.printMemoryReport(); continue; }
+                if (line.compareTo("postings") == 0) { hotelSearch.printPostingsReport(); continue; }
 
                 String[] tokens = line.split("\\s+");
 
+                if (tokens[0].compareTo("search") == 0 && tokens.length > 1) {
+                    hotelSearch.printSearch(line.substring(tokens[0].length()), BooleanQuery.ANY_HOTEL);
+                    continue;
+                }
+                if (tokens[0].compareTo("rank") == 0 && tokens.length > 1) {
+                    hotelSearch.printRanked(line.substring(tokens[0].length()));
+                    continue;
+                }
+                if (tokens[0].compareTo("searchhotel") == 0 && tokens.length > 2) {
+                    long id;
+                    try {
+                        id = Long.parseLong(tokens[1]);
+                    } catch (NumberFormatException e) {
+                        e.printStackTrace();
+                        printInvalidQuery(line);
+                        continue;
+                    }
+
+                    hotelSearch.printSearch(line.split("\\s+", 3)[2], id);
+                    continue;
+                }
+
                 if (tokens.length != 2) { printInvalidQuery(line); continue; }
 
                 if (tokens[0].compareTo("find") == 0) {
@@ -59,6 +83,19 @@ public class UserIO {
                     hotelSearch.printReviews(id);
                 }
 
+                if (tokens[0].compareTo("ratings") == 0) {
+                    int id;
+                    try {
+                        id = Integer.parseInt(tokens[1]);
+                    } catch (NumberFormatException e) {
+                        e.printStackTrace();
+                        printInvalidQuery(line);
+                        continue;
+                    }
+
+                    hotelSearch.printRatings(id);
+                }
+
                 if (tokens[0].compareTo("findword") == 0) {
                     hotelSearch.printWord(tokens[1]);
                 }
@@ -84,6 +121,24 @@ public class UserIO {
                     Usage
                 -------------
                 ./HotelSearch -hotels [hotels.json] -reviews [review_directory] -threads [num_threads] -output [output_file.txt]
+                
+                    Ingestion tuning (optional)
+                -------------------------------
+                -readers [num_threads]     threads reading review files from disk (default 1)
+                -threads [num_threads]     threads parsing review json (default 4)
+                -indexers [num_threads]    threads adding parsed reviews to the map (default 1)
+                -queue [capacity]          capacity of each queue between stages (default 64)
+                -batch [num_reviews]       reviews per batch handed to the indexers (default 256)
+                -buffer [megabytes]        review files read but not yet parsed, at most (default 64)
+                
+                    Startup snapshot (optional)
+                -------------------------------
+                -snapshot [snapshot_file]  binary copy of the parsed data, reused while the input is unchanged
+                                           (default output/dataset.snapshot, "none" to disable)
+                -watch [true|false]        keep merging review files added to the reviews directory (default false)
+                -reindex [milliseconds]    least time between search index rebuilds after reviews are merged;
+                                           search and rank miss at most this much (plus one rebuild)
+                                           of the newest reviews (default 1000)
                 """);
     }
 
@@ -96,7 +151,14 @@ public class UserIO {
                 --------------------
                 find [hotel_id]
                 findReviews [hotel_id]
+                ratings [hotel_id]
                 findWord [word]
+                search [query]             e.g. pool AND breakfast OR spa NOT noisy
+                                           or "free breakfast" OR pool near/5 spa
+                searchHotel [hotel_id] [query]
+                rank [query]               e.g. quiet room near the beach
+                memory
+                postings
                 q to quit
                 """);
     }
@@ -13,9 +13,14 @@ public class WordToReviewMap {
     protected static final Set<String> stopWords = Stream.of("i", "me", "my", "myself", "we", "our", "ours", "ourselves", "you", "your", "yours", "yourself", "yourselves", "he", "him", "his", "himself", "she", "her", "hers", "herself", "it", "its", "itself", "they", "them", "their", "theirs", "themselves", "what", "which", "who", "whom", "this", "that", "these", "those", "am", "is", "are", "was", "were", "be", "been", "being", "have", "has", "had", "having", "do", "does", "did", "doing", "a", "an", "the", "and", "but", "if", "or", "because", "as", "until", "while", "of", "at", "by", "for", "with", "about", "against", "between", "into", "through", "during", "before", "after", "above", "below", "to", "from", "up", "down", "in", "out", "on", "off", "over", "under", "again", "further", "then", "once", "here", "there", "when", "where", "why", "how", "all", "any", "both", "each", "few", "more", "most", "other", "some", "such", "no", "nor", "not", "only", "own", "same", "so", "than", "too", "very", "s", "t", "can", "will", "just", "don", "should", "now")
             .collect(Collectors.toCollection(HashSet::new));
     protected final Map<String, Map<Integer, Set<Review>>> wtrMap;
+    // shared by every Tokenizer of this map, so each word is one String
+    protected final TermDictionary termDictionary = new TermDictionary();
 
     public WordToReviewMap() {
-        wtrMap = new HashMap<>();
+        this(new HashMap<>());
+    }
+    protected WordToReviewMap(Map<String, Map<Integer, Set<Review>>> wtrMap) {
+        this.wtrMap = wtrMap;
     }
 
     /**
@@ -24,10 +29,8 @@ public class WordToReviewMap {
      * @param mapIn Map data structure to pull objects from
      */
     public WordToReviewMap build(HotelReviewsMap mapIn) {
-        for (Map.Entry<Hotel, Set<Review>> e : mapIn.hrMap.values()) {
-            if (e == null) continue;
-
-            Set<Review> s = e.getValue();
+        for (HotelReviewsMap.HotelEntry e : mapIn.hrMap.values()) {
+            Set<Review> s = e.reviews();
             if (s == null || s.size() == 0) continue;
 
             parseReviews(s);
@@ -36,32 +39,76 @@ public class WordToReviewMap {
         return this;
     }
 
+    /**
+     * Adds Reviews that were not indexed yet, such as ones merged into the hrMap after build
+     * @param reviews Collection of new Reviews
+     */
+    public void addReviews(Collection<Review> reviews) {
+        parseReviews(reviews);
+    }
+
+    /**
+     * Unindexes Reviews that were removed from the hrMap, or replaced there by edited copies
+     * @param reviews Collection of Reviews as they were indexed
+     */
+    public void removeReviews(Collection<Review> reviews) {
+        Tokenizer tokenizer = new Tokenizer(termDictionary);
+        for (Review r : reviews) {
+            Map<String, Integer> counts = new HashMap<>();
+            tokenizer.forEachTerm(r.text(), t -> counts.merge(t, 1, Integer::sum));
+
+            for (Map.Entry<String, Integer> e : counts.entrySet()) {
+                Map<Integer, Set<Review>> frequencies = wtrMap.get(e.getKey());
+                Set<Review> s = (frequencies == null) ? null : frequencies.get(e.getValue());
+                // the sets compare by date only, so the Review held for that date may be another one
+                if (s instanceof NavigableSet<Review> ns && r.equals(ns.ceiling(r)))
+                    ns.remove(r);
+            }
+        }
+    }
+
     /**
      * Function to parse reviews from an hrMap into the wtrMap
-     * @param reviews Set of reviews pulled from an hrMap
+     * @param reviews Collection of reviews pulled from an hrMap
      */
-    private void parseReviews(Set<Review> reviews) {
+    private void parseReviews(Collection<Review> reviews) {
         Map<String, Map<Review, Integer>> interMap = new HashMap<>();
+        Tokenizer tokenizer = new Tokenizer(termDictionary);
 
-            for (Review r : reviews) {
-                String[] tokens = r.text().replaceAll("[^a-zA-Z' ]", " ").toLowerCase().split("\\s+");
-                for (String t : tokens) {
-                    if (t.isBlank() || t.length() < 3 || stopWords.contains(t)) continue;
+        for (Review r : reviews)
+            tokenizer.forEachTerm(r.text(), t -> interMap.computeIfAbsent(t, k -> new HashMap<>()).merge(r, 1, Integer::sum));
 
-                    interMap.computeIfAbsent(t, k -> new HashMap<>());
-                    interMap.get(t).merge(r, 1, Integer::sum);
-                }
-            }
+        for (Map.Entry<String, Map<Review, Integer>> word : interMap.entrySet()) {
+            for (Map.Entry<Review, Integer> e : word.getValue().entrySet())
+                addWord(word.getKey(), e.getValue(), e.getKey());
+        }
+    }
 
-            for (Map.Entry<String, Map<Review, Integer>> word : interMap.entrySet()) {
-                Map<Integer, Set<Review>> m = wtrMap.computeIfAbsent(word.getKey(), k ->
-                        new TreeMap<>((a, b) -> b - a));
+    /**
+     * Records that review uses word frequency times
+     * @param word String word
+     * @param frequency int number of times review uses word
+     * @param review Review using word
+     */
+    protected void addWord(String word, int frequency, Review review) {
+        wtrMap.computeIfAbsent(word, k -> newFrequencyMap())
+                .computeIfAbsent(frequency, k -> newReviewSet()).add(review);
+    }
 
-                for (Map.Entry<Review, Integer> e : word.getValue().entrySet()) {
-                    m.computeIfAbsent(e.getValue(), k -> new TreeSet<>((r1, r2) ->
-                            r2.datePosted().compareTo(r1.datePosted()))).add(e.getKey());
-                }
-            }
+    /**
+     * Makes the map from frequency to Reviews held for one word; subclasses override it for concurrent access
+     * @return empty Map ordered by frequency, descending
+     */
+    protected Map<Integer, Set<Review>> newFrequencyMap() {
+        return new TreeMap<>((a, b) -> b - a);
+    }
+
+    /**
+     * Makes the set of Reviews using a word at one frequency; subclasses override it for concurrent access
+     * @return empty Set of Reviews ordered by date posted, descending
+     */
+    protected Set<Review> newReviewSet() {
+        return new TreeSet<>(Review::compareDatePosted);
     }
 
     /**
@@ -0,0 +1,488 @@
+package hotelreviewsdata;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+
+/**
+ * Timings of the data structure changes, each next to the structure it replaced (rebuilt here as a baseline),
+ * on the reviews of a dataset. Kept with the tests, out of the main jar; run from the test classpath with
+ *   java -cp target/classes:target/test-classes:[dependencies] hotelreviewsdata.Benchmarks [name] -hotels [hotels.json] -reviews [review_directory]
+ * where name is one benchmark or all of them if left out, and the other arguments are HotelSearch's. Benchmarks:
+ *   contention - reads and adds of reviews by 1 to N threads on a ThreadSafeHotelReviewsMap, against a TreeMap
+ *                of TreeSets behind one ReentrantReadWriteLock
+ *   lookups    - LongKeyedMap.get against the TreeMap<Long, V> ordered by Long.toString it replaced (and a
+ *                HashMap<Long, V> for reference), on the hotel ids and on a larger random key set, a tenth missing
+ *   reviews    - ThreadSafeWordToReviewMap.init's indexing by 1 to N threads, then single-threaded sorting,
+ *                set inserts and probes, of Reviews against the former Review record, which compared LocalDates
+ *                then ids and synchronized compareTo, equals and hashCode
+ *   tokenizer  - Tokenizer.forEachTerm over review text, against the regex replace / lowercase / split it replaced
+ *
+ * Timings are wall clock after a warm-up round, so they vary from run to run and only the ratios mean much;
+ * thread scaling needs as many cores as threads.
+ */
+public class Benchmarks {
+    public static final List<String> NAMES = List.of("contention", "lookups", "reviews", "tokenizer");
+    private static final long ROUND_MS = 500;
+    // out of 100 map operations, how many add a review
+    private static final int WRITE_PERCENT = 10;
+
+    private final List<Review> reviews;
+    private final long[] hotelIds;
+
+    /**
+     * @param reviews List of Reviews to run on, at least one
+     */
+    public Benchmarks(List<Review> reviews) {
+        this.reviews = reviews;
+        this.hotelIds = reviews.stream().mapToLong(Review::hotelId).distinct().toArray();
+    }
+
+    public static void main(String[] args) {
+        String name = (args.length % 2 == 1) ? args[0] : "all";
+        HotelSearch hs = new HotelSearch((args.length % 2 == 1) ? Arrays.copyOfRange(args, 1, args.length) : args).init();
+
+        List<Review> reviews = new ArrayList<>();
+        for (long hotelId : hs.returnAllHotelIds()) {
+            List<Review> hotelReviews = hs.returnReviews(hotelId);
+            if (hotelReviews != null)
+                reviews.addAll(hotelReviews);
+        }
+        if (reviews.isEmpty()) {
+            System.out.println("No reviews loaded to benchmark with");
+            return;
+        }
+
+        if (!new Benchmarks(reviews).run(name))
+            System.out.println("No benchmark named '" + name + "'; valid names: all, " + String.join(", ", NAMES));
+    }
+
+    /**
+     * Runs one benchmark, or all of them
+     * @param name String benchmark name, or "all"
+     * @return boolean false if there is no benchmark of that name
+     */
+    public boolean run(String name) {
+        switch (name) {
+            case "all" -> NAMES.forEach(this::run);
+            case "contention" -> contention();
+            case "lookups" -> lookups();
+            case "reviews" -> reviewKeys();
+            case "tokenizer" -> tokenizer();
+            default -> { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * One hotel map under test: reads a hotel's newest reviews, adds a review
+     */
+    private interface ReviewStore {
+        int readNewest(long hotelId, int n);
+        void add(Review review);
+    }
+
+    /**
+     * The hotel map as it was: every read and write takes one lock over a TreeMap of TreeSets
+     */
+    private static class LockedReviewStore implements ReviewStore {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Set<Review>> map = new TreeMap<>();
+
+        @Override
+        public int readNewest(long hotelId, int n) {
+            try {
+                lock.readLock().lock();
+                int sum = 0;
+                for (Review r : map.get(hotelId)) {
+                    if (n-- == 0) break;
+                    sum += r.ratingOverall();
+                }
+                return sum;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void add(Review review) {
+            try {
+                lock.writeLock().lock();
+                map.computeIfAbsent(review.hotelId(), k -> new TreeSet<>()).add(review);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static class ConcurrentReviewStore implements ReviewStore {
+        private final ThreadSafeHotelReviewsMap map = new ThreadSafeHotelReviewsMap(1);
+
+        @Override
+        public int readNewest(long hotelId, int n) {
+            return map.findReviews(hotelId).limit(n).mapToInt(Review::ratingOverall).sum();
+        }
+
+        @Override
+        public void add(Review review) {
+            map.addReview(review);
+        }
+    }
+
+    /**
+     * Function to facilitate bench contention: for 1, 2, 4 ... threads (up to at least 4 and the core count),
+     * every thread reads the 10 newest reviews of random hotels, and adds a copy of a random review under a
+     * new id for WRITE_PERCENT of its operations; prints the operations per second of both maps
+     */
+    private void contention() {
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        System.out.printf("Hotel map contention, %d%% writes, %d hotels, %d ms per run (%d cores)%n",
+                WRITE_PERCENT, hotelIds.length, ROUND_MS, Runtime.getRuntime().availableProcessors());
+        System.out.println("  threads   locked TreeMap ops/s   concurrent map ops/s");
+
+        opsPerSecond(seeded(new LockedReviewStore()), 1);
+        opsPerSecond(seeded(new ConcurrentReviewStore()), 1);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double locked = opsPerSecond(seeded(new LockedReviewStore()), threads);
+            double concurrent = opsPerSecond(seeded(new ConcurrentReviewStore()), threads);
+            System.out.printf("  %7d   %,20.0f   %,20.0f%n", threads, locked, concurrent);
+        }
+    }
+
+    private ReviewStore seeded(ReviewStore store) {
+        reviews.forEach(store::add);
+        return store;
+    }
+
+    private double opsPerSecond(ReviewStore store, int threads) {
+        AtomicLong ops = new AtomicLong();
+        long end = System.nanoTime() + ROUND_MS * 1_000_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0, sink = 0;
+                while ((done & 63) != 0 || System.nanoTime() < end) {
+                    if (random.nextInt(100) < WRITE_PERCENT) {
+                        Review r = reviews.get(random.nextInt(reviews.size()));
+                        store.add(new Review(r.hotelId(), ReviewId.random(random), r.ratingOverall(), r.title(),
+                                r.text(), r.username(), r.datePosted()));
+                    } else {
+                        sink += store.readNewest(hotelIds[random.nextInt(hotelIds.length)], 10);
+                    }
+                    done++;
+                }
+                ops.addAndGet((sink < 0) ? 0 : done);
+            }, "bench-" + i);
+            workers.add(t);
+            t.start();
+        }
+
+        for (Thread t : workers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+        return ops.get() * 1000.0 / ROUND_MS;
+    }
+
+    /**
+     * Function to facilitate bench lookups: fills a LongKeyedMap, the TreeMap with the Long.toString order the
+     * hotel map used before it, and a HashMap with the same keys, then times get over a fixed random list of
+     * keys, 90% present, 10% absent; prints the best round's mean nanoseconds per lookup. The TreeMap, which
+     * formats both longs on every comparison, is timed on the first 1/64 of the list so a run stays short
+     */
+    private void lookups() {
+        System.out.println("Hotel id lookups, mean per get");
+        System.out.println("  keys   TreeMap(Long::toString)   HashMap<Long, V>   LongKeyedMap");
+        Random random = new Random(42);
+        long[] randomKeys = random.longs(100_000).toArray();
+        for (long[] keys : new long[][]{hotelIds, randomKeys}) {
+            LongKeyedMap<Object> longMap = new LongKeyedMap<>();
+            Map<Long, Object> treeMap = new TreeMap<>(Comparator.comparing(a -> Long.toString(a)));
+            Map<Long, Object> hashMap = new HashMap<>();
+            for (long k : keys) {
+                longMap.computeIfAbsent(k, x -> new Object());
+                treeMap.put(k, longMap.get(k));
+                hashMap.put(k, longMap.get(k));
+            }
+
+            long[] probes = new long[1 << 20];
+            for (int i = 0; i < probes.length; i++)
+                probes[i] = (random.nextInt(10) == 0) ? random.nextLong() : keys[random.nextInt(keys.length)];
+            long[] treeProbes = Arrays.copyOf(probes, probes.length / 64);
+
+            // best of a few rounds, the first of which warms up
+            double treeNanos = Double.MAX_VALUE, hashNanos = Double.MAX_VALUE, longNanos = Double.MAX_VALUE;
+            for (int round = 0; round < 4; round++) {
+                treeNanos = Math.min(treeNanos, lookupNanos(treeProbes, treeMap::get));
+                hashNanos = Math.min(hashNanos, lookupNanos(probes, hashMap::get));
+                longNanos = Math.min(longNanos, lookupNanos(probes, longMap::get));
+            }
+            System.out.printf("  %,7d %19.1f ns %15.1f ns %11.1f ns%n", keys.length, treeNanos, hashNanos, longNanos);
+        }
+    }
+
+    private static double lookupNanos(long[] probes, LongFunction<Object> get) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < 5; round++) {
+            for (long k : probes)
+                if (get.apply(k) != null) found++;
+        }
+        double nanos = (double) (System.nanoTime() - start) / (5.0 * probes.length);
+        return (found < 0) ? -1 : nanos;
+    }
+
+    /**
+     * The Review set key as it was: a record ordered by LocalDate, descending, then ReviewId, with
+     * synchronized compareTo, equals and hashCode
+     */
+    private record RecordReview(ReviewId reviewId, LocalDate datePosted, String text) implements Comparable<RecordReview> {
+        @Override
+        public synchronized int compareTo(RecordReview o) {
+            int moreRecent = o.datePosted.compareTo(this.datePosted);
+            if (moreRecent != 0) return moreRecent;
+            return this.reviewId.compareTo(o.reviewId);
+        }
+
+        @Override
+        public synchronized boolean equals(Object obj) {
+            if (obj == null || obj.getClass() != this.getClass()) return false;
+            var that = (RecordReview) obj;
+            return this.reviewId.equals(that.reviewId);
+        }
+
+        @Override
+        public synchronized int hashCode() {
+            return reviewId.hashCode();
+        }
+    }
+
+    /**
+     * Function to facilitate bench reviews: times sorting all the reviews, adding them to a TreeSet (as the
+     * hotel map does) and to a HashSet, and probing the HashSet with each, for Reviews and for RecordReviews
+     * of the same ids and dates; prints the best round's mean nanoseconds per review
+     */
+    private void reviewKeys() {
+        List<Review> dated = reviews.stream().filter(r -> r.datePosted() != null).toList();
+        List<RecordReview> records = dated.stream().map(r -> new RecordReview(r.reviewId(), r.datePosted(), r.text())).toList();
+        indexing(dated, records);
+
+        System.out.printf("Review keys, %d reviews, mean per review%n", dated.size());
+        System.out.println("  operation        record Review   Review");
+
+        printKeyTimes("sort", dated, records, list -> {
+            Object[] a = list.toArray();
+            Arrays.sort(a);
+            return a.length;
+        });
+        printKeyTimes("TreeSet add", dated, records, list -> addAll(TreeSet::new, list).size());
+        printKeyTimes("HashSet add", dated, records, list -> addAll(HashSet::new, list).size());
+        Set<Review> reviewSet = new HashSet<>(dated);
+        Set<RecordReview> recordSet = new HashSet<>(records);
+        printKeyTimes("HashSet probe", dated, records, list -> {
+            Set<?> set = (list == records) ? recordSet : reviewSet;
+            int found = 0;
+            for (Object x : list)
+                if (set.contains(x)) found++;
+            return found;
+        });
+    }
+
+    /**
+     * Prints, for 1, 2, 4 ... threads (up to at least 4 and the core count), the best of two runs of indexing
+     * up to 25,000 of the reviews, whole hotels at a time, as ThreadSafeWordToReviewMap.init does: with
+     * RecordReviews and with Reviews through indexSeconds, and with Reviews through init itself, which
+     * shows indexSeconds does the same work
+     */
+    private void indexing(List<Review> dated, List<RecordReview> records) {
+        int n = Math.min(dated.size(), 25_000);
+        while (n < dated.size() && dated.get(n).hotelId() == dated.get(n - 1).hotelId())
+            n++;
+        List<List<Review>> reviewHotels = byHotel(dated.subList(0, n), Review::hotelId);
+        // records.get(i) is a copy of dated.get(i), so a hotel's records are the same index range
+        List<List<RecordReview>> recordHotels = new ArrayList<>();
+        int from = 0;
+        for (List<Review> hotel : reviewHotels) {
+            recordHotels.add(records.subList(from, from + hotel.size()));
+            from += hotel.size();
+        }
+        ThreadSafeHotelReviewsMap map = new ThreadSafeHotelReviewsMap(1);
+        dated.subList(0, n).forEach(map::addReview);
+
+        Comparator<RecordReview> recordByDate = (r1, r2) -> r2.datePosted().compareTo(r1.datePosted());
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        System.out.printf("Word index build, %d reviews of %d hotels, best of 2 runs (%d cores)%n",
+                n, reviewHotels.size(), Runtime.getRuntime().availableProcessors());
+        System.out.println("  threads   record Review   Review   Review (init)");
+
+        indexSeconds(recordHotels, RecordReview::text, recordByDate, 1);
+        indexSeconds(reviewHotels, Review::text, Review::compareDatePosted, 1);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double record = Double.MAX_VALUE, review = Double.MAX_VALUE, init = Double.MAX_VALUE;
+            for (int round = 0; round < 2; round++) {
+                record = Math.min(record, indexSeconds(recordHotels, RecordReview::text, recordByDate, threads));
+                review = Math.min(review, indexSeconds(reviewHotels, Review::text, Review::compareDatePosted, threads));
+                long start = System.nanoTime();
+                new ThreadSafeWordToReviewMap(threads).init(map);
+                init = Math.min(init, (System.nanoTime() - start) / 1e9);
+            }
+            System.out.printf("  %7d %13.0f ms %6.0f ms %11.0f ms%n", threads, record * 1000, review * 1000, init * 1000);
+        }
+    }
+
+    /**
+     * Splits reviews listed hotel by hotel into one list per hotel
+     */
+    private static <R> List<List<R>> byHotel(List<R> reviews, Function<R, Long> hotelId) {
+        List<List<R>> hotels = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= reviews.size(); i++) {
+            if (i == reviews.size() || !hotelId.apply(reviews.get(i)).equals(hotelId.apply(reviews.get(start)))) {
+                hotels.add(reviews.subList(start, i));
+                start = i;
+            }
+        }
+        return hotels;
+    }
+
+    /**
+     * ThreadSafeWordToReviewMap.init's work for either review type: a pool of threads each tokenizes the reviews
+     * of 8 hotels into a local word -> review -> count HashMap, then adds them to shared concurrent skip lists
+     * of word -> count -> reviews by date
+     * @return double seconds taken
+     */
+    private static <R> double indexSeconds(List<List<R>> hotels, Function<R, String> text, Comparator<R> byDate, int threads) {
+        Map<String, Map<Integer, Set<R>>> words = new ConcurrentHashMap<>();
+        TermDictionary dictionary = new TermDictionary();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < hotels.size(); i += 8) {
+            List<List<R>> group = hotels.subList(i, Math.min(hotels.size(), i + 8));
+            tasks.add(pool.submit(() -> {
+                Map<String, Map<R, Integer>> counts = new HashMap<>();
+                Tokenizer tokenizer = new Tokenizer(dictionary);
+                for (List<R> reviews : group) {
+                    for (R r : reviews)
+                        tokenizer.forEachTerm(text.apply(r), t -> counts.computeIfAbsent(t, k -> new HashMap<>()).merge(r, 1, Integer::sum));
+                }
+                counts.forEach((word, byReview) -> byReview.forEach((r, n) ->
+                        words.computeIfAbsent(word, k -> new ConcurrentSkipListMap<>((a, b) -> b - a))
+                                .computeIfAbsent(n, k -> new ConcurrentSkipListSet<>(byDate)).add(r)));
+            }));
+        }
+        try {
+            for (Future<?> task : tasks)
+                task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static <T> Set<T> addAll(Supplier<Set<T>> newSet, Collection<T> items) {
+        Set<T> set = newSet.get();
+        for (T item : items)
+            set.add(item);
+        return set;
+    }
+
+    /**
+     * Prints one line of bench reviews: the best of a few rounds, the first of which warms up, for each kind
+     */
+    private static void printKeyTimes(String operation, List<Review> reviews, List<RecordReview> records,
+                                      Function<List<?>, Integer> op) {
+        double recordNanos = Double.MAX_VALUE, reviewNanos = Double.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < 4; round++) {
+            long start = System.nanoTime();
+            sink += op.apply(records);
+            recordNanos = Math.min(recordNanos, (double) (System.nanoTime() - start) / Math.max(1, records.size()));
+
+            start = System.nanoTime();
+            sink += op.apply(reviews);
+            reviewNanos = Math.min(reviewNanos, (double) (System.nanoTime() - start) / Math.max(1, reviews.size()));
+        }
+        if (sink >= 0)
+            System.out.printf("  %-13s %11.1f ns %8.1f ns%n", operation, recordNanos, reviewNanos);
+    }
+
+    /**
+     * Review text split into index terms as it was, by regexes and a stop word Set
+     */
+    private static void regexTerms(String text, Consumer<String> action) {
+        String[] tokens = text.replaceAll("[^a-zA-Z' ]", " ").toLowerCase().split("\\s+");
+        for (String t : tokens) {
+            if (t.isBlank() || t.length() < 3 || WordToReviewMap.stopWords.contains(t)) continue;
+
+            action.accept(t);
+        }
+    }
+
+    /**
+     * Function to facilitate bench tokenizer: splits the text of up to 20,000 reviews into terms both ways,
+     * counting the terms; prints the best round's terms and megabytes of text per second
+     */
+    private void tokenizer() {
+        List<String> texts = reviews.stream().map(Review::text).filter(t -> t != null).limit(20_000).toList();
+        long chars = texts.stream().mapToLong(String::length).sum();
+        Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+
+        double regexSeconds = Double.MAX_VALUE, tokenizerSeconds = Double.MAX_VALUE;
+        long[] regexTerms = new long[1], tokenizerTerms = new long[1];
+        for (int round = 0; round < 3; round++) {
+            regexTerms[0] = tokenizerTerms[0] = 0;
+            long start = System.nanoTime();
+            for (String t : texts)
+                regexTerms(t, w -> regexTerms[0]++);
+            regexSeconds = Math.min(regexSeconds, (System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            for (String t : texts)
+                tokenizer.forEachTerm(t, w -> tokenizerTerms[0]++);
+            tokenizerSeconds = Math.min(tokenizerSeconds, (System.nanoTime() - start) / 1e9);
+        }
+
+        System.out.printf("Tokenizing %d reviews, %,d chars%n", texts.size(), chars);
+        System.out.println("                 terms    terms/s      MB/s");
+        System.out.printf("  regex     %,11d %,10.0f %9.1f%n", regexTerms[0], regexTerms[0] / regexSeconds, chars / regexSeconds / 1e6);
+        System.out.printf("  Tokenizer %,11d %,10.0f %9.1f%n", tokenizerTerms[0], tokenizerTerms[0] / tokenizerSeconds, chars / tokenizerSeconds / 1e6);
+        if (regexTerms[0] != tokenizerTerms[0])
+            System.out.println("  term counts differ: the two splits disagree on this text");
+    }
+}
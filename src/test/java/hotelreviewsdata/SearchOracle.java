@@ -0,0 +1,509 @@
+package hotelreviewsdata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+
+/**
+ * Brute-force oracle for the search code, used by SearchOracleTest. Every expectation is recomputed from the
+ * reviews' text with a Tokenizer, never read from the structures under check, and queries are drawn from a
+ * seeded Random, so a run can be repeated exactly. Checks:
+ *   postings  - every term's decoded doc ids and frequencies, doc frequencies and review lengths
+ *   advance   - Cursor.advance (interleaved with nextDoc) to random targets against a binary search
+ *   boolean   - random AND / OR / NOT queries, some within one hotel, against each review's set of words
+ *   blocks    - Cursor.block and blockLastDoc, which the ranker's block bounds rely on, after nextDoc and advance
+ *   bm25      - Bm25Ranker.topK of random queries, some within one hotel, against every review's score
+ *               computed from its own word counts; scores are compared rank by rank, as ties may order either way
+ *   positions - Cursor.nextPosition against each review's term positions, with some docs' positions read
+ *               only in part or not at all and some docs passed over by advance
+ *   phrases   - "phrase" and word near/N word queries cut from random reviews, some within one hotel,
+ *               against each review's term positions
+ *
+ * The first few mismatches are printed; checks() and failures() count them all.
+ */
+class SearchOracle {
+    private static final int MAX_PRINTED = 5;
+
+    private final PostingsIndex index;
+    private final Random random;
+    // terms by doc frequency, descending, so queries can mix common and rare words
+    private final List<String> termsByFreq;
+    private long checks;
+    private long failures;
+
+    /**
+     * @param index PostingsIndex to check
+     * @param seed long seed of the random terms and queries
+     */
+    SearchOracle(PostingsIndex index, long seed) {
+        this.index = index;
+        this.random = new Random(seed);
+        termsByFreq = new ArrayList<>(index.terms());
+        termsByFreq.sort(Comparator.comparingInt((String t) -> index.docFreq(index.termId(t))).reversed());
+    }
+
+    /** @return long comparisons made so far */
+    long checks() { return checks; }
+
+    /** @return long comparisons that mismatched so far */
+    long failures() { return failures; }
+
+    private void check(boolean ok, String format, Object... args) {
+        checks++;
+        if (ok) return;
+        if (failures++ < MAX_PRINTED)
+            System.out.println("    mismatch: " + String.format(format, args));
+    }
+
+    /**
+     * Walks the reviews in doc id order with one cursor per term: each term a review uses must be that
+     * cursor's next posting, with the review's count as freq, and every cursor must end with its last review
+     */
+    void checkPostings() {
+        PostingsIndex.Cursor[] cursors = new PostingsIndex.Cursor[index.termCount()];
+        int[] docFreqs = new int[index.termCount()];
+        Map<String, Integer> counts = new HashMap<>();
+        Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+
+        for (int doc = 0; doc < index.size(); doc++) {
+            counts.clear();
+            tokenizer.forEachTerm(index.review(doc).text(), w -> counts.merge(w, 1, Integer::sum));
+
+            int length = 0;
+            for (Map.Entry<String, Integer> e : counts.entrySet()) {
+                length += e.getValue();
+                int t = index.termId(e.getKey());
+                check(t >= 0, "term '%s' of doc %d is not indexed", e.getKey(), doc);
+                if (t < 0) continue;
+
+                if (cursors[t] == null)
+                    cursors[t] = index.cursor().reset(t);
+                int got = cursors[t].nextDoc();
+                docFreqs[t]++;
+                check(got == doc && cursors[t].freq() == e.getValue(), "term '%s': posting %d is doc %d freq %d, expected doc %d freq %d",
+                        e.getKey(), docFreqs[t], got, cursors[t].freq(), doc, e.getValue());
+            }
+            check(index.docLength(doc) == length, "doc %d has length %d, expected %d", doc, index.docLength(doc), length);
+        }
+
+        for (int t = 0; t < cursors.length; t++) {
+            check(cursors[t] != null && cursors[t].nextDoc() == PostingsIndex.NO_MORE_DOCS,
+                    "term %d has postings after its last review", t);
+            check(index.docFreq(t) == docFreqs[t], "term %d has doc freq %d, expected %d", t, index.docFreq(t), docFreqs[t]);
+        }
+    }
+
+    /**
+     * Decodes a term's doc ids with nextDoc only, which checkPostings covers
+     */
+    private int[] decode(int termId) {
+        int[] docs = new int[index.docFreq(termId)];
+        PostingsIndex.Cursor c = index.cursor().reset(termId);
+        for (int i = 0; i < docs.length; i++)
+            docs[i] = c.nextDoc();
+        return docs;
+    }
+
+    /**
+     * Moves cursors of random terms by advance, to targets a few docs or many skip blocks ahead, and by nextDoc
+     */
+    void checkAdvance(int queries) {
+        if (index.termCount() == 0) return;
+
+        for (int q = 0; q < queries; q++) {
+            int t = random.nextInt(index.termCount());
+            int[] docs = decode(t);
+            int gap = Math.max(1, index.size() / docs.length);
+            PostingsIndex.Cursor c = index.cursor().reset(t);
+
+            int target = 0;
+            while (true) {
+                target += (random.nextInt(4) == 0) ? random.nextInt(gap * PostingsIndex.SKIP_INTERVAL * 4) : random.nextInt(gap * 2);
+                int got = c.advance(target);
+                int i = Arrays.binarySearch(docs, target);
+                if (i < 0) i = -i - 1;
+                int expected = (i < docs.length) ? docs[i] : PostingsIndex.NO_MORE_DOCS;
+                check(got == expected, "term %d: advance(%d) gave %d, expected %d", t, target, got, expected);
+                if (got != expected || got == PostingsIndex.NO_MORE_DOCS) break;
+
+                if (random.nextBoolean()) {
+                    got = c.nextDoc();
+                    expected = (i + 1 < docs.length) ? docs[i + 1] : PostingsIndex.NO_MORE_DOCS;
+                    check(got == expected, "term %d: nextDoc after %d gave %d, expected %d", t, docs[i], got, expected);
+                    if (got != expected || got == PostingsIndex.NO_MORE_DOCS) break;
+                }
+                target = c.doc();
+            }
+        }
+    }
+
+    /**
+     * A random term among the top most used; now and then a word no review uses
+     */
+    private String randomTerm(int top) {
+        if (termsByFreq.isEmpty() || random.nextInt(50) == 0) return "zzqxj";
+        return termsByFreq.get(random.nextInt(Math.min(top, termsByFreq.size())));
+    }
+
+    private long randomHotel() {
+        if (index.size() == 0 || random.nextBoolean()) return BooleanQuery.ANY_HOTEL;
+        return index.review(random.nextInt(index.size())).hotelId();
+    }
+
+    /**
+     * One OR'd part of a generated boolean query
+     */
+    private record Clause(List<String> required, List<String> excluded) {
+        boolean matches(Set<String> words) {
+            return words.containsAll(required) && excluded.stream().noneMatch(words::contains);
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" AND ", required) + (excluded.isEmpty() ? "" : " NOT " + String.join(" NOT ", excluded));
+        }
+    }
+
+    /**
+     * Evaluates random queries of 1-3 clauses, each of 1-3 required words and up to 2 excluded ones, then walks
+     * the reviews once, comparing each query's results in doc id order with the reviews whose words match it
+     */
+    void checkBooleanQueries(int queries) {
+        List<List<Clause>> parsed = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        long[] hotels = new long[queries];
+        int[][] results = new int[queries][];
+        for (int q = 0; q < queries; q++) {
+            List<Clause> clauses = new ArrayList<>();
+            for (int c = 1 + random.nextInt(3); c > 0; c--) {
+                List<String> required = new ArrayList<>(), excluded = new ArrayList<>();
+                for (int w = 1 + random.nextInt(3); w > 0; w--)
+                    required.add(randomTerm((w == 1) ? 50 : 3000));
+                for (int w = random.nextInt(3); w > 0; w--)
+                    excluded.add(randomTerm(500));
+                clauses.add(new Clause(required, excluded));
+            }
+            String text = String.join(" OR ", clauses.stream().map(Clause::toString).toList());
+            parsed.add(clauses);
+            texts.add(text);
+            hotels[q] = randomHotel();
+            results[q] = BooleanQuery.parse(text).evaluate(index, hotels[q]);
+        }
+
+        // at[q]: results of query q checked so far; a query stops being checked at its first mismatch
+        int[] at = new int[queries];
+        boolean[] failed = new boolean[queries];
+        Set<String> words = new HashSet<>();
+        Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+        for (int doc = 0; doc < index.size(); doc++) {
+            Review r = index.review(doc);
+            words.clear();
+            tokenizer.forEachTerm(r.text(), words::add);
+
+            for (int q = 0; q < queries; q++) {
+                if (failed[q]) continue;
+                boolean expected = (hotels[q] == BooleanQuery.ANY_HOTEL || hotels[q] == r.hotelId())
+                        && parsed.get(q).stream().anyMatch(c -> c.matches(words));
+                boolean got = at[q] < results[q].length && results[q][at[q]] == doc;
+                if (got) at[q]++;
+                if (expected != got) {
+                    failed[q] = true;
+                    check(false, "'%s' in hotel %d: doc %d %s", texts.get(q), hotels[q], doc,
+                            expected ? "is missing" : "should not match");
+                }
+            }
+        }
+        for (int q = 0; q < queries; q++) {
+            if (!failed[q])
+                check(at[q] == results[q].length, "'%s' in hotel %d: results out of order", texts.get(q), hotels[q]);
+        }
+    }
+
+    /**
+     * Moves cursors of random terms by nextDoc and advance, checking at every doc the index of its block and
+     * the block's last doc: the SKIP_INTERVAL-th posting of the block, or NO_MORE_DOCS - 1 in the last block
+     */
+    void checkBlocks(int queries) {
+        if (index.termCount() == 0) return;
+
+        for (int q = 0; q < queries; q++) {
+            int t = (q % 2 == 0) ? index.termId(randomTerm(100)) : random.nextInt(index.termCount());
+            if (t < 0) continue;
+            int[] docs = decode(t);
+            int gap = Math.max(1, index.size() / docs.length);
+            PostingsIndex.Cursor c = index.cursor().reset(t);
+
+            int doc = c.nextDoc();
+            while (doc != PostingsIndex.NO_MORE_DOCS) {
+                int i = Arrays.binarySearch(docs, doc);
+                int block = i / PostingsIndex.SKIP_INTERVAL;
+                int end = (block + 1) * PostingsIndex.SKIP_INTERVAL;
+                int lastDoc = (end < docs.length) ? docs[end - 1] : PostingsIndex.NO_MORE_DOCS - 1;
+                check(i >= 0 && c.block() == block && c.blockLastDoc() == lastDoc,
+                        "term %d at doc %d (posting %d): block %d last doc %d, expected block %d last doc %d",
+                        t, doc, i, c.block(), c.blockLastDoc(), block, lastDoc);
+                if (i < 0) break;
+
+                doc = random.nextBoolean() ? c.nextDoc() : c.advance(doc + 1 + random.nextInt(gap * PostingsIndex.SKIP_INTERVAL));
+            }
+        }
+    }
+
+    /**
+     * Ranks random queries of 1-4 words, for k of 1, 10 or 100, then scores every review against every query
+     * from its tokenized word counts (doc frequencies and average length recounted the same way, norms rounded
+     * to float as the ranker stores them). Each query's hits must score what their reviews score, and rank by
+     * rank must score the same as the k best reviews, within rounding of the summation order
+     */
+    void checkTopK(int queries) {
+        Bm25Ranker ranker = new Bm25Ranker(index);
+        Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+        int n = index.size();
+
+        // first pass: review lengths and doc frequencies
+        int[] lengths = new int[n];
+        Map<String, Integer> docFreqs = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        long total = 0;
+        for (int doc = 0; doc < n; doc++) {
+            counts.clear();
+            tokenizer.forEachTerm(index.review(doc).text(), w -> counts.merge(w, 1, Integer::sum));
+            for (Map.Entry<String, Integer> e : counts.entrySet()) {
+                lengths[doc] += e.getValue();
+                docFreqs.merge(e.getKey(), 1, Integer::sum);
+            }
+            total += lengths[doc];
+        }
+        double avg = (n == 0) ? 1 : Math.max(1, (double) total / n);
+
+        List<List<String>> words = new ArrayList<>();
+        long[] hotels = new long[queries];
+        List<List<Bm25Ranker.Hit>> results = new ArrayList<>();
+        // per query: hit doc -> the score the ranker gave it
+        List<Map<Integer, Double>> hitScores = new ArrayList<>();
+        List<PriorityQueue<Double>> best = new ArrayList<>();
+        int[] ks = new int[queries];
+        double[][] idfs = new double[queries][];
+        for (int q = 0; q < queries; q++) {
+            List<String> query = new ArrayList<>();
+            for (int w = 1 + random.nextInt(4); w > 0; w--)
+                query.add(randomTerm(random.nextBoolean() ? 20 : 5000));
+            List<String> terms = Bm25Ranker.queryTerms(String.join(" ", query));
+            hotels[q] = randomHotel();
+            ks[q] = new int[]{1, 10, 100}[random.nextInt(3)];
+            idfs[q] = new double[terms.size()];
+            for (int i = 0; i < terms.size(); i++) {
+                double df = docFreqs.getOrDefault(terms.get(i), 0);
+                idfs[q][i] = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+            }
+
+            List<Bm25Ranker.Hit> hits = ranker.topK(terms, hotels[q], ks[q]);
+            Map<Integer, Double> scores = new HashMap<>();
+            hits.forEach(h -> scores.put(h.doc(), h.score()));
+            words.add(terms);
+            results.add(hits);
+            hitScores.add(scores);
+            best.add(new PriorityQueue<>());
+        }
+
+        // second pass: every review's score for every query, keeping each query's k best
+        for (int doc = 0; doc < n; doc++) {
+            Review r = index.review(doc);
+            counts.clear();
+            tokenizer.forEachTerm(r.text(), w -> counts.merge(w, 1, Integer::sum));
+            float norm = (float) (Bm25Ranker.K1 * (1 - Bm25Ranker.B + Bm25Ranker.B * lengths[doc] / avg));
+
+            for (int q = 0; q < queries; q++) {
+                if (hotels[q] != BooleanQuery.ANY_HOTEL && hotels[q] != r.hotelId()) continue;
+
+                double score = 0;
+                boolean matched = false;
+                List<String> terms = words.get(q);
+                for (int i = 0; i < terms.size(); i++) {
+                    Integer tf = counts.get(terms.get(i));
+                    if (tf == null) continue;
+                    score += idfs[q][i] * tf * (Bm25Ranker.K1 + 1) / (tf + norm);
+                    matched = true;
+                }
+                if (!matched) continue;
+
+                Double got = hitScores.get(q).get(doc);
+                if (got != null)
+                    check(close(got, score), "'%s' in hotel %d: doc %d scored %f, expected %f",
+                            String.join(" ", words.get(q)), hotels[q], doc, got, score);
+                PriorityQueue<Double> top = best.get(q);
+                top.add(score);
+                if (top.size() > ks[q]) top.poll();
+            }
+        }
+
+        for (int q = 0; q < queries; q++) {
+            List<Double> expected = new ArrayList<>(best.get(q));
+            expected.sort(Comparator.reverseOrder());
+            List<Bm25Ranker.Hit> hits = results.get(q);
+            String query = String.join(" ", words.get(q));
+            check(hits.size() == expected.size(), "'%s' in hotel %d, k %d: %d hits, expected %d",
+                    query, hotels[q], ks[q], hits.size(), expected.size());
+
+            for (int i = 0; i < Math.min(hits.size(), expected.size()); i++) {
+                if (!close(hits.get(i).score(), expected.get(i))) {
+                    check(false, "'%s' in hotel %d, k %d: rank %d scored %f, expected %f",
+                            query, hotels[q], ks[q], i + 1, hits.get(i).score(), expected.get(i));
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean close(double a, double b) {
+        return Math.abs(a - b) <= 1e-9 * Math.max(1, Math.abs(b));
+    }
+
+    /**
+     * Term positions of a review's text
+     * @return Map of term to its positions, ascending
+     */
+    private static Map<String, List<Integer>> positions(Tokenizer tokenizer, String text) {
+        Map<String, List<Integer>> positions = new HashMap<>();
+        tokenizer.forEachPosition(text, (t, position, start, end) -> positions.computeIfAbsent(t, k -> new ArrayList<>()).add(position));
+        return positions;
+    }
+
+    /**
+     * Walks the reviews in doc id order with one cursor per term. Half the postings are passed over, so the
+     * cursor skips them by advance or nextDoc without reading their positions; at the others the cursor reads
+     * all, some or none of the positions, and those it reads must be the review's first positions of the term
+     */
+    void checkPositions() {
+        PostingsIndex.Cursor[] cursors = new PostingsIndex.Cursor[index.termCount()];
+        Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+
+        for (int doc = 0; doc < index.size(); doc++) {
+            for (Map.Entry<String, List<Integer>> e : positions(tokenizer, index.review(doc).text()).entrySet()) {
+                int t = index.termId(e.getKey());
+                if (t < 0 || random.nextBoolean()) continue;
+
+                if (cursors[t] == null)
+                    cursors[t] = index.cursor().reset(t);
+                PostingsIndex.Cursor c = cursors[t];
+                int got = c.doc();
+                if (random.nextBoolean()) {
+                    got = c.advance(doc);
+                } else {
+                    while (got < doc) got = c.nextDoc();
+                }
+                if (got != doc) continue;
+
+                List<Integer> expected = e.getValue();
+                int read = switch (random.nextInt(3)) {
+                    case 0 -> 0;
+                    case 1 -> random.nextInt(expected.size() + 1);
+                    default -> expected.size();
+                };
+                for (int i = 0; i < read; i++) {
+                    int position = c.nextPosition();
+                    check(position == expected.get(i), "term '%s' in doc %d: position %d is %d, expected %d",
+                            e.getKey(), doc, i, position, expected.get(i));
+                    if (position != expected.get(i)) break;
+                }
+            }
+        }
+    }
+
+    /**
+     * A "phrase" or near/N query cut from a random review, with its terms and their places in the phrase
+     */
+    private record PhraseQuery(String text, List<String> terms, List<Integer> offsets, int near, long hotelId) {
+        boolean matches(Map<String, List<Integer>> positions) {
+            List<Integer> first = positions.get(terms.get(0));
+            if (first == null) return false;
+
+            if (near > 0) {
+                List<Integer> last = positions.get(terms.get(terms.size() - 1));
+                if (last == null) return false;
+                for (int x : first)
+                    for (int y : last)
+                        if (x != y && Math.abs(x - y) <= near) return true;
+                return false;
+            }
+
+            for (int x : first) {
+                boolean all = true;
+                for (int i = 1; all && i < terms.size(); i++) {
+                    List<Integer> ps = positions.get(terms.get(i));
+                    all = ps != null && ps.contains(x + offsets.get(i) - offsets.get(0));
+                }
+                if (all) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Cuts 2-3 words out of random reviews as a quoted phrase, or joins the first and last of their terms
+     * with near/N, then compares each query's results with the reviews whose term positions match it,
+     * in one pass over the reviews. Cuts with fewer than two terms, or that do not parse, are skipped
+     */
+    void checkPhrases(int queries) {
+        if (index.size() == 0) return;
+        Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+        List<PhraseQuery> parsed = new ArrayList<>();
+        List<int[]> results = new ArrayList<>();
+
+        for (int q = 0; q < queries; q++) {
+            Review r = index.review(random.nextInt(index.size()));
+            String[] raw = (r.text() == null) ? new String[0] : r.text().split("\\s+");
+            if (raw.length < 5) continue;
+            int start = random.nextInt(raw.length - 3);
+            String phrase = String.join(" ", Arrays.copyOfRange(raw, start, start + 2 + random.nextInt(2))).replace("\"", "");
+
+            List<String> terms = new ArrayList<>();
+            List<Integer> offsets = new ArrayList<>();
+            tokenizer.forEachPosition(phrase, (t, position, s, e) -> { terms.add(t); offsets.add(position); });
+            if (terms.size() < 2) continue;
+
+            int near = (random.nextInt(3) == 0) ? 1 + random.nextInt(6) : 0;
+            String text = (near > 0) ? terms.get(0) + " near/" + near + " " + terms.get(terms.size() - 1) : "\"" + phrase + "\"";
+            long hotelId = random.nextBoolean() ? BooleanQuery.ANY_HOTEL : r.hotelId();
+            try {
+                results.add(BooleanQuery.parse(text).evaluate(index, hotelId));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            parsed.add(new PhraseQuery(text, terms, offsets, near, hotelId));
+        }
+
+        int[] at = new int[parsed.size()];
+        boolean[] failed = new boolean[parsed.size()];
+        for (int doc = 0; doc < index.size(); doc++) {
+            Review r = index.review(doc);
+            Map<String, List<Integer>> positions = positions(tokenizer, r.text());
+
+            for (int q = 0; q < parsed.size(); q++) {
+                PhraseQuery pq = parsed.get(q);
+                if (failed[q]) continue;
+                boolean expected = (pq.hotelId() == BooleanQuery.ANY_HOTEL || pq.hotelId() == r.hotelId()) && pq.matches(positions);
+                int[] got = results.get(q);
+                boolean hit = at[q] < got.length && got[at[q]] == doc;
+                if (hit) at[q]++;
+                if (expected != hit) {
+                    failed[q] = true;
+                    check(false, "%s in hotel %d: doc %d %s", pq.text(), pq.hotelId(), doc,
+                            expected ? "is missing" : "should not match");
+                }
+            }
+        }
+        for (int q = 0; q < parsed.size(); q++) {
+            if (!failed[q])
+                check(at[q] == results.get(q).length, "%s in hotel %d: results out of order", parsed.get(q).text(), parsed.get(q).hotelId());
+        }
+    }
+}
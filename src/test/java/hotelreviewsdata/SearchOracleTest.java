@@ -0,0 +1,76 @@
+package hotelreviewsdata;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Checks the PostingsIndex, BooleanQuery and Bm25Ranker against SearchOracle's brute-force answers,
+ * on seeded random reviews
+ */
+public class SearchOracleTest {
+    private static final int QUERIES = 300;
+    private static PostingsIndex index;
+    private SearchOracle oracle;
+
+    @BeforeClass
+    public static void buildIndex() {
+        index = PostingsIndex.of(SyntheticReviews.map(20_000, 50, 42));
+    }
+
+    @Before
+    public void newOracle() {
+        oracle = new SearchOracle(index, 42);
+    }
+
+    private void assertNoMismatches() {
+        assertTrue("nothing was checked", oracle.checks() > 0);
+        assertEquals("mismatches (the first are printed) of " + oracle.checks() + " checks", 0, oracle.failures());
+    }
+
+    @Test
+    public void postingsMatchReviewText() {
+        oracle.checkPostings();
+        assertNoMismatches();
+    }
+
+    @Test
+    public void advanceFindsFirstDocAtOrAfterTarget() {
+        oracle.checkAdvance(QUERIES);
+        assertNoMismatches();
+    }
+
+    @Test
+    public void booleanQueriesMatchBruteForce() {
+        oracle.checkBooleanQueries(QUERIES);
+        assertNoMismatches();
+    }
+
+    @Test
+    public void skipBlocksMatchDecodedPostings() {
+        oracle.checkBlocks(QUERIES);
+        assertNoMismatches();
+    }
+
+    @Test
+    public void bm25TopKMatchesBruteForceScores() {
+        oracle.checkTopK(QUERIES);
+        assertNoMismatches();
+    }
+
+    @Test
+    public void positionsMatchReviewText() {
+        oracle.checkPositions();
+        assertNoMismatches();
+    }
+
+    @Test
+    public void phraseAndNearQueriesMatchBruteForce() {
+        oracle.checkPhrases(QUERIES);
+        assertNoMismatches();
+    }
+}
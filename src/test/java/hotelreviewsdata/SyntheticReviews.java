@@ -0,0 +1,63 @@
+package hotelreviewsdata;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+
+/**
+ * Seeded random reviews for tests. Words come from a made-up vocabulary, skewed so a few words are in most
+ * reviews (long postings lists with many skip blocks) and most are rare, mixed with stop words, short words,
+ * capitals and punctuation that the Tokenizer has to drop or split off
+ */
+final class SyntheticReviews {
+    private static final String[] SYLLABLES = {"ach", "air", "ak", "an", "be", "bre", "clo", "ee", "fa", "ff",
+            "king", "ni", "ol", "par", "po", "sta", "view", "wi"};
+    private static final String[] FILLER = {"the", "and", "not", "a", "of", "to", "is", "it", "ok", "we"};
+    private static final String[] PUNCTUATION = {"", "", "", "", ",", ".", "!", "'s", "-"};
+
+    private SyntheticReviews() {}
+
+    /**
+     * Builds a HotelReviewsMap of random reviews
+     * @param reviews int number of reviews
+     * @param hotels int number of hotels, ids 1 to hotels
+     * @param seed long seed, so the same arguments always give the same reviews
+     * @return HotelReviewsMap holding the reviews
+     */
+    static HotelReviewsMap map(int reviews, int hotels, long seed) {
+        Random random = new Random(seed);
+        List<String> vocabulary = vocabulary(random, 4000);
+        HotelReviewsMap map = new HotelReviewsMap();
+        LocalDate first = LocalDate.of(2015, 1, 1);
+
+        for (int i = 0; i < reviews; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 5 + random.nextInt(60); w > 0; w--) {
+                String word = (random.nextInt(5) == 0) ? FILLER[random.nextInt(FILLER.length)]
+                        : vocabulary.get((int) (vocabulary.size() * Math.pow(random.nextDouble(), 3)));
+                if (random.nextInt(10) == 0)
+                    word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                text.append(word).append(PUNCTUATION[random.nextInt(PUNCTUATION.length)]).append(' ');
+            }
+            map.addReview(new Review(1 + random.nextInt(hotels), ReviewId.random(random), 1 + random.nextInt(5),
+                    "Title " + i, text.toString().trim(), "user" + random.nextInt(1000),
+                    first.plusDays(random.nextInt(2000))));
+        }
+        return map;
+    }
+
+    private static List<String> vocabulary(Random random, int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            for (int s = 2 + random.nextInt(3); s > 0; s--)
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            words.add(word.toString());
+        }
+        return new ArrayList<>(words);
+    }
+}
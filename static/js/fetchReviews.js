@@ -1,18 +1,16 @@
-
-async function fetchNextReviews() {
+async function fetchReviews(cursor, dir) {
     let hotelid = document.getElementById('hotelid').value;
-    let offset = document.getElementById('offset').value;
-    let res = await fetch(`/reviewdata?id=${hotelid}&dir=next&offset=${offset}`, {method: 'get'});
+    let res = await fetch(`/reviewdata?id=${hotelid}&dir=${dir}&cursor=${cursor}`, {method: 'get'});
     let json = await res.json();
 
     // check if error or reviews
     if (json.Error) {
-        document.getElementById('reviews_table').innerHTML = `<tr class="text-muted"><td>${json.error}</td></tr>`;
+        document.getElementById('reviews_table').innerHTML = `<tr class="text-muted"><td>${json.Error}</td></tr>`;
         return;
     }
 
     let total_reviews = parseInt(json.len);
-    if (total_reviews == 0) {
+    if (total_reviews == 0 || json.reviews.length == 0) {
         document.getElementById('reviews_table').innerHTML = `<tr class="text-muted"><td>'No reviews for hotel ${hotelid}'</td></tr>`;
         return;
     }
@@ -21,42 +19,16 @@ async function fetchNextReviews() {
     json.reviews.forEach(r => {s += `<tr><td>Review by <b>${r.username}</b> on ${r.dateposted}<br><b>Title</b>:<br>${r.title}<br><b>Body</b>:<br>${r.text}</tr></td>`});
     document.getElementById('reviews_table').innerHTML = s;
 
-    let rest = parseInt(offset, 10) + 10;
-    document.getElementById('offset').value = rest;
+    document.getElementById('next_cursor').value = json.next ? json.next : '';
+    document.getElementById('prev_cursor').value = json.prev ? json.prev : '';
+    document.getElementById('next_button').disabled = !json.next;
+    document.getElementById('prev_button').disabled = !json.prev;
+}
 
-    if (rest >= 20)
-        document.getElementById('prev_button').disabled = false;
-    if (rest >= total_reviews)
-        document.getElementById('next_button').disabled = true;
+async function fetchNextReviews() {
+    await fetchReviews(document.getElementById('next_cursor').value, 'next');
 }
 
 async function fetchPrevReviews() {
-    let hotelid = document.getElementById('hotelid').value;
-    let offset = document.getElementById('offset').value;
-    let res = await fetch(`/reviewdata?id=${hotelid}&dir=prev&offset=${offset}`, {method: 'get'});
-    let json = await res.json();
-
-    // check if error or reviews
-    if (json.error) {
-        document.getElementById('reviews_table').innerHTML = `<tr class="text-muted"><td>${json.error}</td></tr>`;
-        return;
-    }
-
-    let total_reviews = parseInt(json.len);
-    if (total_reviews == 0) {
-        document.getElementById('reviews_table').innerHTML = `<tr class="text-muted"><td>'No reviews for hotel ${hotelid}'</td></tr>`;
-        return;
-    }
-
-    let s = '';
-    json.reviews.forEach(r => {s += `<tr><td>Review by <b>${r.username}</b> on ${r.dateposted}<br><b>Title</b>:<br>${r.title}<br><b>Body</b>:<br>${r.text}</tr></td>`});
-    document.getElementById('reviews_table').innerHTML = s;
-
-    let rest = parseInt(offset, 10) - 10;
-    document.getElementById('offset').value = rest;
-
-    if (rest < total_reviews)
-        document.getElementById('next_button').disabled = false;
-    if (rest <= 10)
-        document.getElementById('prev_button').disabled = true;
+    await fetchReviews(document.getElementById('prev_cursor').value, 'prev');
 }